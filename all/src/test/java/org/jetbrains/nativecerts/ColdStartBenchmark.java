@@ -0,0 +1,361 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.nativecerts.fixtures.SyntheticCertificates;
+import org.jetbrains.nativecerts.linux.LinuxTrustedCertificatesUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures cold start: wall-clock time and allocated bytes up to the first result of
+ * {@link NativeTrustedCertificates#getCustomOsSpecificTrustedCertificates()} in fresh JVMs.
+ * Every run forks a new JVM which reads a synthetic {@code /etc/ssl/certs} tree,
+ * see {@link LinuxTrustedCertificatesUtil#SYSTEM_ROOT_PROPERTY}, so results don't depend on the host trust store.
+ * <p>
+ * Runs are repeated with an AppCDS archive recorded by a training run, if the JVM supports dynamic archives.
+ * Class path directories are packed into jars beforehand, since AppCDS does not archive classes from directories.
+ * Results may be compared with a baseline file, see {@link #findRegressions}.
+ * </p>
+ */
+public final class ColdStartBenchmark {
+    static final String DEFAULT = "default";
+    static final String APPCDS = "appcds";
+
+    private static final String RESULT_PREFIX = "cold-start-result ";
+
+    private final Path workDir;
+    private final Path systemRoot;
+    private final String classPath;
+
+    /**
+     * @param bundleCertificates    number of certificates in {@code /etc/ssl/certs/ca-certificates.crt}
+     * @param directoryCertificates number of files with one certificate each in {@code /etc/ssl/certs}
+     */
+    public ColdStartBenchmark(@NotNull Path workDir, int bundleCertificates, int directoryCertificates) throws IOException {
+        this.workDir = workDir;
+        systemRoot = workDir.resolve("root");
+        createSystemRoot(systemRoot, bundleCertificates, directoryCertificates);
+        classPath = packClassPath(getClassPath(), workDir.resolve("classpath")).stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    /**
+     * @return measurements without AppCDS and, if the JVM supports dynamic archives, with it
+     */
+    public List<Measurement> run(int iterations) throws Exception {
+        List<Measurement> result = new ArrayList<>();
+        result.add(run(DEFAULT, iterations, null));
+
+        Path archive = createAppCdsArchive();
+        if (archive != null) {
+            result.add(run(APPCDS, iterations, archive));
+        }
+        return result;
+    }
+
+    private Measurement run(@NotNull String name, int iterations, @Nullable Path archive) throws Exception {
+        List<String> options = new ArrayList<>();
+        if (archive != null) {
+            options.add("-XX:SharedArchiveFile=" + archive);
+        }
+
+        Measurement measurement = new Measurement(name, iterations);
+        for (int i = 0; i < iterations; i++) {
+            fork(options, measurement, i);
+        }
+        return measurement;
+    }
+
+    private @Nullable Path createAppCdsArchive() throws Exception {
+        if (Runtime.version().feature() < 13) {
+            // -XX:ArchiveClassesAtExit is available since JDK 13
+            return null;
+        }
+
+        Path archive = workDir.resolve("app.jsa");
+        fork(List.of("-XX:ArchiveClassesAtExit=" + archive), new Measurement("training", 1), 0);
+        return Files.isRegularFile(archive) ? archive : null;
+    }
+
+    private void fork(@NotNull List<String> options, @NotNull Measurement measurement, int iteration) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(classPath);
+        command.add("-D" + LinuxTrustedCertificatesUtil.SYSTEM_ROOT_PROPERTY + "=" + systemRoot);
+        command.addAll(options);
+        command.add(Child.class.getName());
+
+        Path log = workDir.resolve(measurement.name + "-" + iteration + ".log");
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(log.toFile());
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        String resultLine = null;
+        long wallNanos = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (resultLine == null && line.startsWith(RESULT_PREFIX)) {
+                    wallNanos = System.nanoTime() - start;
+                    resultLine = line;
+                }
+            }
+        }
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || resultLine == null) {
+            throw new IllegalStateException("Forked JVM failed with exit code " + exitCode + ", see " + log);
+        }
+
+        String[] values = resultLine.substring(RESULT_PREFIX.length()).split(" ");
+        measurement.certificates = Integer.parseInt(values[0]);
+        measurement.wallNanos[iteration] = wallNanos;
+        measurement.discoveryNanos[iteration] = Long.parseLong(values[1]);
+        measurement.allocatedBytes[iteration] = Long.parseLong(values[2]);
+    }
+
+    private static void createSystemRoot(@NotNull Path root, int bundleCertificates, int directoryCertificates) throws IOException {
+        Path certs = Files.createDirectories(root.resolve("etc/ssl/certs"));
+
+        StringBuilder bundle = new StringBuilder();
+        for (X509Certificate certificate : SyntheticCertificates.createAnchors("Cold Start Bundle Root", bundleCertificates)) {
+            bundle.append(toPem(certificate));
+        }
+        Files.writeString(certs.resolve("ca-certificates.crt"), bundle);
+
+        List<X509Certificate> anchors = SyntheticCertificates.createAnchors("Cold Start Directory Root", directoryCertificates);
+        for (int i = 0; i < anchors.size(); i++) {
+            Files.writeString(certs.resolve(String.format(Locale.ROOT, "cold-start-root-%05d.pem", i)), toPem(anchors.get(i)));
+        }
+    }
+
+    private static String toPem(@NotNull X509Certificate certificate) {
+        try {
+            return "-----BEGIN CERTIFICATE-----\n" +
+                    Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(certificate.getEncoded()) +
+                    "\n-----END CERTIFICATE-----\n";
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return class path of this JVM, a manifest-only jar (e.g. one created by surefire) is replaced by its {@code Class-Path}
+     */
+    private static List<Path> getClassPath() throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                result.add(Path.of(entry));
+            }
+        }
+
+        if (result.size() == 1 && Files.isRegularFile(result.get(0))) {
+            Path jar = result.get(0);
+            try (JarFile jarFile = new JarFile(jar.toFile())) {
+                Manifest manifest = jarFile.getManifest();
+                String manifestClassPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+                if (manifestClassPath != null) {
+                    result.clear();
+                    for (String url : manifestClassPath.split(" ")) {
+                        if (!url.isEmpty()) {
+                            result.add(Path.of(jar.toUri().resolve(url)));
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Path> packClassPath(@NotNull List<Path> classPath, @NotNull Path jarsDir) throws IOException {
+        Files.createDirectories(jarsDir);
+        List<Path> result = new ArrayList<>();
+        for (Path entry : classPath) {
+            if (!Files.isDirectory(entry)) {
+                if (Files.exists(entry)) {
+                    result.add(entry);
+                }
+                continue;
+            }
+
+            Path jar = jarsDir.resolve(result.size() + "-" + entry.getFileName() + ".jar");
+            try (OutputStream stream = Files.newOutputStream(jar);
+                 JarOutputStream jarStream = new JarOutputStream(stream);
+                 Stream<Path> files = Files.walk(entry)) {
+                for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+                    if (Files.isRegularFile(file)) {
+                        jarStream.putNextEntry(new JarEntry(entry.relativize(file).toString().replace(File.separatorChar, '/')));
+                        Files.copy(file, jarStream);
+                        jarStream.closeEntry();
+                    }
+                }
+            }
+            result.add(jar);
+        }
+        return result;
+    }
+
+    /**
+     * Baseline keys are {@code <measurement>.wallMillis}, {@code <measurement>.discoveryMillis} and
+     * {@code <measurement>.allocatedBytes}, medians are compared with them.
+     * Allowed relative increase is {@code tolerance.time} and {@code tolerance.allocation}.
+     * Measurements without baseline values are not checked.
+     *
+     * @return descriptions of metrics exceeding the baseline, an empty list if there are none
+     */
+    static List<String> findRegressions(@NotNull Properties baseline, @NotNull List<Measurement> measurements) {
+        double timeTolerance = Double.parseDouble(baseline.getProperty("tolerance.time", "0.5"));
+        double allocationTolerance = Double.parseDouble(baseline.getProperty("tolerance.allocation", "0.2"));
+
+        List<String> result = new ArrayList<>();
+        for (Measurement measurement : measurements) {
+            checkMetric(result, baseline, measurement.name + ".wallMillis", measurement.getWallMillis(), timeTolerance);
+            checkMetric(result, baseline, measurement.name + ".discoveryMillis", measurement.getDiscoveryMillis(), timeTolerance);
+            checkMetric(result, baseline, measurement.name + ".allocatedBytes", measurement.getAllocatedBytes(), allocationTolerance);
+        }
+        return result;
+    }
+
+    private static void checkMetric(@NotNull List<String> result, @NotNull Properties baseline, @NotNull String key, long value, double tolerance) {
+        String expected = baseline.getProperty(key);
+        if (expected == null) {
+            return;
+        }
+
+        long limit = (long) (Long.parseLong(expected) * (1 + tolerance));
+        if (value > limit) {
+            result.add(String.format(Locale.ROOT, "%s=%d exceeds baseline %s by more than %.0f%%", key, value, expected, tolerance * 100));
+        }
+    }
+
+    /**
+     * Writes medians of {@code measurements} to {@code baseline}, other keys are kept
+     */
+    static void updateBaseline(@NotNull Properties baseline, @NotNull List<Measurement> measurements) {
+        for (Measurement measurement : measurements) {
+            baseline.setProperty(measurement.name + ".wallMillis", Long.toString(measurement.getWallMillis()));
+            baseline.setProperty(measurement.name + ".discoveryMillis", Long.toString(measurement.getDiscoveryMillis()));
+            baseline.setProperty(measurement.name + ".allocatedBytes", Long.toString(measurement.getAllocatedBytes()));
+        }
+    }
+
+    public static final class Measurement {
+        final String name;
+        final long[] wallNanos;
+        final long[] discoveryNanos;
+        final long[] allocatedBytes;
+        int certificates;
+
+        Measurement(@NotNull String name, int iterations) {
+            this.name = name;
+            wallNanos = new long[iterations];
+            discoveryNanos = new long[iterations];
+            allocatedBytes = new long[iterations];
+        }
+
+        /**
+         * @return median time from the fork to the first result, including JVM startup
+         */
+        long getWallMillis() {
+            return DiscoveryProfiler.percentile(wallNanos, 50) / 1_000_000;
+        }
+
+        /**
+         * @return median time from {@code main} to the first result
+         */
+        long getDiscoveryMillis() {
+            return DiscoveryProfiler.percentile(discoveryNanos, 50) / 1_000_000;
+        }
+
+        /**
+         * @return median bytes allocated by all threads from {@code main} to the first result
+         */
+        long getAllocatedBytes() {
+            return DiscoveryProfiler.percentile(allocatedBytes, 50);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-8s certificates=%-6d wall p50=%6dms max=%6dms discovery p50=%6dms allocated p50=%8.1fKiB",
+                    name, certificates,
+                    getWallMillis(), DiscoveryProfiler.percentile(wallNanos, 100) / 1_000_000,
+                    getDiscoveryMillis(), getAllocatedBytes() / 1024.0);
+        }
+    }
+
+    /**
+     * Entry point of a forked JVM
+     */
+    public static final class Child {
+        public static void main(String[] args) throws Exception {
+            // management classes are loaded before the measurement
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long allocatedBefore = getAllocatedBytes(threads);
+            long start = System.nanoTime();
+
+            Collection<X509Certificate> certificates = NativeTrustedCertificates.getCustomOsSpecificTrustedCertificates();
+
+            long nanos = System.nanoTime() - start;
+            long allocated = getAllocatedBytes(threads) - allocatedBefore;
+            //noinspection UseOfSystemOutOrSystemErr
+            System.out.println(RESULT_PREFIX + certificates.size() + " " + nanos + " " + allocated);
+        }
+
+        /**
+         * @return bytes allocated by all threads including terminated ones on JDK 14 and later,
+         * otherwise by the current thread only
+         */
+        private static long getAllocatedBytes(@NotNull ThreadMXBean threads) throws Exception {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+            try {
+                Method total = com.sun.management.ThreadMXBean.class.getMethod("getTotalThreadAllocatedBytes");
+                return (long) total.invoke(bean);
+            } catch (NoSuchMethodException e) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+    }
+
+    /**
+     * Arguments: iterations per measurement (default 10), bundle certificates (default 150), directory certificates (default 150)
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int bundleCertificates = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        int directoryCertificates = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+
+        Path workDir = Files.createTempDirectory("cold-start-benchmark");
+        for (Measurement measurement : new ColdStartBenchmark(workDir, bundleCertificates, directoryCertificates).run(iterations)) {
+            //noinspection UseOfSystemOutOrSystemErr
+            System.out.println(measurement);
+        }
+    }
+}
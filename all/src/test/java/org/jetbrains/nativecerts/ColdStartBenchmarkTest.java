@@ -0,0 +1,97 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.isLinux;
+
+public class ColdStartBenchmarkTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void smoke() throws Exception {
+        Assume.assumeTrue(isLinux);
+
+        List<ColdStartBenchmark.Measurement> measurements = new ColdStartBenchmark(temporaryFolder.getRoot().toPath(), 5, 3).run(1);
+        Assert.assertEquals(ColdStartBenchmark.DEFAULT, measurements.get(0).name);
+        for (ColdStartBenchmark.Measurement measurement : measurements) {
+            Assert.assertEquals(measurement.toString(), 8, measurement.certificates);
+            Assert.assertTrue(measurement.toString(), measurement.wallNanos[0] >= measurement.discoveryNanos[0]);
+            Assert.assertTrue(measurement.toString(), measurement.allocatedBytes[0] > 0);
+        }
+    }
+
+    @Test
+    public void findRegressions() {
+        ColdStartBenchmark.Measurement measurement = new ColdStartBenchmark.Measurement(ColdStartBenchmark.DEFAULT, 3);
+        measurement.wallNanos[0] = measurement.wallNanos[1] = measurement.wallNanos[2] = 400_000_000;
+        measurement.discoveryNanos[0] = measurement.discoveryNanos[1] = 100_000_000;
+        measurement.discoveryNanos[2] = 900_000_000;
+        measurement.allocatedBytes[0] = measurement.allocatedBytes[1] = measurement.allocatedBytes[2] = 1300;
+
+        Properties baseline = new Properties();
+        baseline.setProperty("tolerance.time", "0.5");
+        baseline.setProperty("tolerance.allocation", "0.2");
+        baseline.setProperty("default.wallMillis", "200");
+        baseline.setProperty("default.discoveryMillis", "100");
+        baseline.setProperty("default.allocatedBytes", "1000");
+        baseline.setProperty("appcds.wallMillis", "1");
+
+        Assert.assertEquals(List.of(
+                "default.wallMillis=400 exceeds baseline 200 by more than 50%",
+                "default.allocatedBytes=1300 exceeds baseline 1000 by more than 20%"
+        ), ColdStartBenchmark.findRegressions(baseline, List.of(measurement)));
+
+        ColdStartBenchmark.updateBaseline(baseline, List.of(measurement));
+        Assert.assertEquals("400", baseline.getProperty("default.wallMillis"));
+        Assert.assertEquals("1", baseline.getProperty("appcds.wallMillis"));
+        Assert.assertTrue(ColdStartBenchmark.findRegressions(baseline, List.of(measurement)).isEmpty());
+    }
+
+    /**
+     * Run with {@code -Dcoldstart=true} to compare with {@code src/test/resources/cold-start-baseline.properties},
+     * add {@code -Dcoldstart.updateBaseline=true} to record the current results instead
+     */
+    @Test
+    public void coldStart() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("coldstart"));
+        Assume.assumeTrue(isLinux);
+
+        Path baselineFile = Path.of(System.getProperty("basedir", "."), "src/test/resources/cold-start-baseline.properties");
+        Properties baseline = new Properties();
+        try (InputStream stream = Files.newInputStream(baselineFile)) {
+            baseline.load(stream);
+        }
+
+        ColdStartBenchmark benchmark = new ColdStartBenchmark(temporaryFolder.getRoot().toPath(),
+                Integer.parseInt(baseline.getProperty("corpus.bundle")),
+                Integer.parseInt(baseline.getProperty("corpus.directory")));
+        List<ColdStartBenchmark.Measurement> measurements = benchmark.run(Integer.getInteger("coldstart.iterations", 10));
+        for (ColdStartBenchmark.Measurement measurement : measurements) {
+            //noinspection UseOfSystemOutOrSystemErr
+            System.out.println(measurement);
+        }
+
+        if (Boolean.getBoolean("coldstart.updateBaseline")) {
+            ColdStartBenchmark.updateBaseline(baseline, measurements);
+            try (OutputStream stream = Files.newOutputStream(baselineFile)) {
+                baseline.store(stream, "Cold start baseline, see ColdStartBenchmarkTest");
+            }
+            return;
+        }
+
+        List<String> regressions = ColdStartBenchmark.findRegressions(baseline, measurements);
+        Assert.assertTrue(String.join("\n", regressions), regressions.isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.fixtures.SyntheticCertificates;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures TLS handshakes against a local server whose certificate is issued by a generated CA.
+ * Client trust is a {@value NativeTrustedRootsProvider#KEY_STORE_TYPE} key store over a snapshot
+ * of the given anchors plus the generated CA, so results show how the trust set size affects handshakes.
+ * <p>
+ * Sessions are invalidated after every handshake, so each handshake validates the server chain.
+ * </p>
+ */
+public final class TlsHandshakeBenchmark implements Closeable {
+    private final X509Certificate caCertificate;
+    private final SSLServerSocket serverSocket;
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tls-benchmark-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TlsHandshakeBenchmark() throws Exception {
+        KeyPair caKeyPair = SyntheticCertificates.generateKeyPair();
+        caCertificate = SyntheticCertificates.createCaCertificate("Benchmark CA", caKeyPair);
+        KeyPair serverKeyPair = SyntheticCertificates.generateKeyPair();
+        X509Certificate serverCertificate = SyntheticCertificates.createCertificate(
+                "localhost", serverKeyPair, "Benchmark CA", caKeyPair, false, "localhost");
+
+        char[] password = "benchmark".toCharArray();
+        KeyStore serverKeyStore = KeyStore.getInstance("PKCS12");
+        serverKeyStore.load(null, null);
+        serverKeyStore.setKeyEntry("server", serverKeyPair.getPrivate(), password, new Certificate[]{serverCertificate, caCertificate});
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(serverKeyStore, password);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        serverExecutor.execute(this::acceptConnections);
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                serverExecutor.execute(() -> {
+                    try (SSLSocket sslSocket = (SSLSocket) socket) {
+                        sslSocket.setTcpNoDelay(true);
+                        sslSocket.startHandshake();
+                        // wait for the client to close the connection
+                        //noinspection ResultOfMethodCallIgnored
+                        sslSocket.getInputStream().read();
+                    } catch (IOException ignored) {
+                    }
+                });
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @param anchors trust anchors in addition to the generated CA
+     * @param warmup handshakes which are not measured
+     * @param handshakes measured sequential handshakes
+     */
+    public Result run(@NotNull String name, @NotNull Collection<X509Certificate> anchors, int warmup, int handshakes) throws Exception {
+        List<X509Certificate> trusted = new ArrayList<>(anchors);
+        trusted.add(caCertificate);
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(Map.of(name, trusted));
+        KeyStore trustStore = new KeyStore(new NativeRootsKeyStoreSpi(() -> snapshot), new NativeTrustedRootsProvider(), NativeTrustedRootsProvider.KEY_STORE_TYPE) {
+        };
+        trustStore.load(null, null);
+
+        long initStart = System.nanoTime();
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagerFactory.getTrustManagers(), null);
+        long initNanos = System.nanoTime() - initStart;
+
+        for (int i = 0; i < warmup; i++) {
+            handshake(clientContext);
+        }
+
+        long[] nanos = new long[handshakes];
+        long start = System.nanoTime();
+        for (int i = 0; i < handshakes; i++) {
+            long handshakeStart = System.nanoTime();
+            handshake(clientContext);
+            nanos[i] = System.nanoTime() - handshakeStart;
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        return new Result(name, snapshot.size(), initNanos, nanos, totalNanos);
+    }
+
+    private void handshake(SSLContext clientContext) throws IOException {
+        try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", serverSocket.getLocalPort())) {
+            socket.setTcpNoDelay(true);
+            SSLParameters parameters = socket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            socket.setSSLParameters(parameters);
+            socket.startHandshake();
+            // do not let the next handshake resume this session
+            socket.getSession().invalidate();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        serverExecutor.shutdownNow();
+        try {
+            serverExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class Result {
+        final String name;
+        final int anchors;
+        final long trustManagerInitNanos;
+        final long[] handshakeNanos;
+        final long totalNanos;
+
+        Result(String name, int anchors, long trustManagerInitNanos, long[] handshakeNanos, long totalNanos) {
+            this.name = name;
+            this.anchors = anchors;
+            this.trustManagerInitNanos = trustManagerInitNanos;
+            this.handshakeNanos = handshakeNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        double getHandshakesPerSecond() {
+            return handshakeNanos.length / (totalNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-24s anchors=%-6d init=%8.3fms p50=%7.3fms p90=%7.3fms p99=%7.3fms max=%7.3fms %8.1f handshakes/s",
+                    name, anchors, trustManagerInitNanos / 1e6,
+                    DiscoveryProfiler.percentile(handshakeNanos, 50) / 1e6,
+                    DiscoveryProfiler.percentile(handshakeNanos, 90) / 1e6,
+                    DiscoveryProfiler.percentile(handshakeNanos, 99) / 1e6,
+                    DiscoveryProfiler.percentile(handshakeNanos, 100) / 1e6,
+                    getHandshakesPerSecond());
+        }
+    }
+
+    /**
+     * Runs handshakes with roots discovered on this machine, then with them plus synthetic anchor sets.
+     * Arguments: comma-separated synthetic set sizes (default {@code 100,1000,10000,50000}) and handshakes per set (default 500)
+     */
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "100,1000,10000,50000";
+        int handshakes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        List<X509Certificate> nativeRoots = NativeTrustedCertificates.getCustomOsSpecificTrustedCertificatesSnapshot().getCertificates();
+        try (TlsHandshakeBenchmark benchmark = new TlsHandshakeBenchmark()) {
+            //noinspection UseOfSystemOutOrSystemErr
+            System.out.println(benchmark.run("native", nativeRoots, handshakes / 5, handshakes));
+            for (String size : sizes.split(",")) {
+                int count = Integer.parseInt(size.trim());
+                List<X509Certificate> anchors = new ArrayList<>(nativeRoots);
+                anchors.addAll(SyntheticCertificates.createAnchors("Synthetic Root", count));
+                //noinspection UseOfSystemOutOrSystemErr
+                System.out.println(benchmark.run("native+" + count, anchors, handshakes / 5, handshakes));
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.nativecerts.fixtures.SyntheticCertificates;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TlsHandshakeBenchmarkTest {
+    @Test
+    public void smoke() throws Exception {
+        try (TlsHandshakeBenchmark benchmark = new TlsHandshakeBenchmark()) {
+            TlsHandshakeBenchmark.Result result = benchmark.run("synthetic", SyntheticCertificates.createAnchors("Smoke Root", 100), 2, 5);
+            Assert.assertEquals(101, result.anchors);
+            Assert.assertEquals(5, result.handshakeNanos.length);
+            Assert.assertTrue(result.toString(), result.getHandshakesPerSecond() > 0);
+        }
+    }
+
+    /**
+     * Run with {@code -Dbenchmark=true}, optionally with {@code -Dbenchmark.sizes=100,1000} and {@code -Dbenchmark.handshakes=500}
+     */
+    @Test
+    public void benchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        TlsHandshakeBenchmark.main(new String[]{
+                System.getProperty("benchmark.sizes", "100,1000,10000,50000"),
+                System.getProperty("benchmark.handshakes", "500"),
+        });
+    }
+}
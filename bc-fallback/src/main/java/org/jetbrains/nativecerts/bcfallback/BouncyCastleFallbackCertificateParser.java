@@ -0,0 +1,17 @@
+package org.jetbrains.nativecerts.bcfallback;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.FallbackCertificateParser;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Parses certificates with BouncyCastle ASN.1 parser without loading the entire BouncyCastle provider
+ */
+public final class BouncyCastleFallbackCertificateParser implements FallbackCertificateParser {
+    @Override
+    public @NotNull X509Certificate parse(@NotNull byte[] bytes) throws CertificateException {
+        return LightweightX509Certificate.parse(bytes);
+    }
+}
@@ -0,0 +1,415 @@
+package org.jetbrains.nativecerts.bcfallback;
+
+import org.bouncycastle.asn1.ASN1BitString;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.jce.X509Principal;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Principal;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.X509Certificate;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fallback for certificates the standard X.509 parser rejects, e.g. ones with SM2 keys,
+ * see <a href="https://youtrack.jetbrains.com/issue/IDEA-318004">IDEA-318004</a>.
+ * <p>
+ * Decodes the certificate with BouncyCastle ASN.1 classes only, so the full {@code BouncyCastleProvider}
+ * with all its algorithms is never instantiated. A public key the JDK does not support is exposed as an opaque
+ * {@link PublicKey} with the original encoding, which is enough for a trust anchor.
+ * </p>
+ */
+final class LightweightX509Certificate extends X509Certificate {
+    private static final long serialVersionUID = 1L;
+
+    private static final String PEM_BEGIN = "-----BEGIN CERTIFICATE-----";
+    private static final String PEM_END = "-----END CERTIFICATE-----";
+
+    // decoded by this class or by X509Certificate methods from getExtensionValue
+    private static final Set<String> SUPPORTED_CRITICAL_EXTENSIONS = Set.of(
+            Extension.basicConstraints.getId(),
+            Extension.keyUsage.getId(),
+            Extension.extendedKeyUsage.getId(),
+            Extension.subjectAlternativeName.getId(),
+            Extension.issuerAlternativeName.getId()
+    );
+
+    private final byte[] encoded;
+    private final transient Certificate certificate;
+    private final transient PublicKey publicKey;
+
+    private LightweightX509Certificate(@NotNull byte[] encoded) throws CertificateException {
+        this.encoded = encoded;
+        try {
+            this.certificate = Certificate.getInstance(encoded);
+        } catch (RuntimeException e) {
+            throw new CertificateException("Unable to decode certificate: " + e.getMessage(), e);
+        }
+        this.publicKey = decodePublicKey(certificate.getSubjectPublicKeyInfo());
+    }
+
+    /**
+     * @param bytes DER or PEM encoding, same as accepted by {@link java.security.cert.CertificateFactory}
+     */
+    static LightweightX509Certificate parse(@NotNull byte[] bytes) throws CertificateException {
+        String text = new String(bytes, 0, Math.min(bytes.length, PEM_BEGIN.length()), StandardCharsets.US_ASCII);
+        if (!text.equals(PEM_BEGIN)) {
+            return new LightweightX509Certificate(bytes.clone());
+        }
+
+        String pem = new String(bytes, StandardCharsets.US_ASCII);
+        int end = pem.indexOf(PEM_END);
+        if (end < 0) {
+            throw new CertificateException("Non-closed '" + PEM_BEGIN + "' block");
+        }
+
+        try {
+            return new LightweightX509Certificate(Base64.getMimeDecoder().decode(pem.substring(PEM_BEGIN.length(), end)));
+        } catch (IllegalArgumentException e) {
+            throw new CertificateException("Invalid base64 content: " + e.getMessage(), e);
+        }
+    }
+
+    private static PublicKey decodePublicKey(@NotNull SubjectPublicKeyInfo info) throws CertificateException {
+        byte[] encodedKey;
+        try {
+            encodedKey = info.getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new CertificateException("Unable to encode public key: " + e.getMessage(), e);
+        }
+
+        String algorithm = new DefaultAlgorithmNameFinder().getAlgorithmName(info.getAlgorithm());
+        String keyAlgorithm = getKeyAlgorithm(info.getAlgorithm().getAlgorithm().getId(), algorithm);
+        try {
+            return KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(encodedKey));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // e.g. an EC key on a curve unknown to the JDK
+            return new OpaquePublicKey(keyAlgorithm, encodedKey);
+        }
+    }
+
+    private static String getKeyAlgorithm(@NotNull String oid, @NotNull String name) {
+        switch (oid) {
+            case "1.2.840.113549.1.1.1":
+                return "RSA";
+            case "1.2.840.10045.2.1":
+                return "EC";
+            case "1.2.840.10040.4.1":
+                return "DSA";
+            default:
+                return name;
+        }
+    }
+
+    @Override
+    public void checkValidity() throws CertificateExpiredException, CertificateNotYetValidException {
+        checkValidity(new Date());
+    }
+
+    @Override
+    public void checkValidity(Date date) throws CertificateExpiredException, CertificateNotYetValidException {
+        if (date.after(getNotAfter())) {
+            throw new CertificateExpiredException("Certificate expired on " + getNotAfter());
+        }
+        if (date.before(getNotBefore())) {
+            throw new CertificateNotYetValidException("Certificate is not valid until " + getNotBefore());
+        }
+    }
+
+    @Override
+    public int getVersion() {
+        return certificate.getVersionNumber();
+    }
+
+    @Override
+    public BigInteger getSerialNumber() {
+        return certificate.getSerialNumber().getValue();
+    }
+
+    /**
+     * @return the same representation as BouncyCastle provider returns, for compatibility
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public Principal getIssuerDN() {
+        return new X509Principal(certificate.getIssuer());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public Principal getSubjectDN() {
+        return new X509Principal(certificate.getSubject());
+    }
+
+    @Override
+    public X500Principal getIssuerX500Principal() {
+        return toX500Principal(certificate.getIssuer());
+    }
+
+    @Override
+    public X500Principal getSubjectX500Principal() {
+        return toX500Principal(certificate.getSubject());
+    }
+
+    private static X500Principal toX500Principal(@NotNull ASN1Encodable name) {
+        try {
+            return new X500Principal(name.toASN1Primitive().getEncoded(ASN1Encoding.DER));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Date getNotBefore() {
+        return certificate.getStartDate().getDate();
+    }
+
+    @Override
+    public Date getNotAfter() {
+        return certificate.getEndDate().getDate();
+    }
+
+    @Override
+    public byte[] getTBSCertificate() throws CertificateEncodingException {
+        try {
+            return certificate.getTBSCertificate().getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new CertificateEncodingException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] getSignature() {
+        return certificate.getSignature().getOctets();
+    }
+
+    @Override
+    public String getSigAlgName() {
+        return new DefaultAlgorithmNameFinder().getAlgorithmName(certificate.getSignatureAlgorithm());
+    }
+
+    @Override
+    public String getSigAlgOID() {
+        return certificate.getSignatureAlgorithm().getAlgorithm().getId();
+    }
+
+    @Override
+    public byte[] getSigAlgParams() {
+        ASN1Encodable parameters = certificate.getSignatureAlgorithm().getParameters();
+        if (parameters == null) {
+            return null;
+        }
+
+        try {
+            return parameters.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean[] getIssuerUniqueID() {
+        return toBooleanArray(certificate.getTBSCertificate().getIssuerUniqueId());
+    }
+
+    @Override
+    public boolean[] getSubjectUniqueID() {
+        return toBooleanArray(certificate.getTBSCertificate().getSubjectUniqueId());
+    }
+
+    @Override
+    public boolean[] getKeyUsage() {
+        KeyUsage keyUsage = KeyUsage.fromExtensions(getExtensions());
+        if (keyUsage == null) {
+            return null;
+        }
+
+        // KeyUsage ::= BIT STRING, bits 0..8 from digitalSignature to decipherOnly
+        boolean[] result = new boolean[9];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = keyUsage.hasUsages(i < 8 ? 1 << (7 - i) : KeyUsage.decipherOnly);
+        }
+        return result;
+    }
+
+    @Override
+    public int getBasicConstraints() {
+        BasicConstraints constraints = BasicConstraints.fromExtensions(getExtensions());
+        if (constraints == null || !constraints.isCA()) {
+            return -1;
+        }
+
+        BigInteger pathLength = constraints.getPathLenConstraint();
+        return pathLength == null ? Integer.MAX_VALUE : pathLength.intValue();
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    @Override
+    public void verify(PublicKey key) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        verify(Signature.getInstance(getSigAlgName()), key);
+    }
+
+    @Override
+    public void verify(PublicKey key, String sigProvider) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException, NoSuchProviderException, SignatureException {
+        verify(Signature.getInstance(getSigAlgName(), sigProvider), key);
+    }
+
+    private void verify(@NotNull Signature signature, @NotNull PublicKey key) throws CertificateException, InvalidKeyException, SignatureException {
+        signature.initVerify(key);
+        signature.update(getTBSCertificate());
+        if (!signature.verify(getSignature())) {
+            throw new SignatureException("Certificate signature does not match");
+        }
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * @return {@code true} if there is a critical extension other than basic constraints, key usage,
+     * extended key usage and alternative names, e.g. name constraints or certificate policies
+     */
+    @Override
+    public boolean hasUnsupportedCriticalExtension() {
+        Set<String> critical = getCriticalExtensionOIDs();
+        return critical != null && !SUPPORTED_CRITICAL_EXTENSIONS.containsAll(critical);
+    }
+
+    @Override
+    public Set<String> getCriticalExtensionOIDs() {
+        return getExtensionOIDs(true);
+    }
+
+    @Override
+    public Set<String> getNonCriticalExtensionOIDs() {
+        return getExtensionOIDs(false);
+    }
+
+    private Set<String> getExtensionOIDs(boolean critical) {
+        Extensions extensions = getExtensions();
+        if (extensions == null) {
+            return null;
+        }
+
+        Set<String> result = new HashSet<>();
+        for (ASN1ObjectIdentifier oid : critical ? extensions.getCriticalExtensionOIDs() : extensions.getNonCriticalExtensionOIDs()) {
+            result.add(oid.getId());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public byte[] getExtensionValue(String oid) {
+        Extensions extensions = getExtensions();
+        Extension extension = extensions == null ? null : extensions.getExtension(new ASN1ObjectIdentifier(oid));
+        if (extension == null) {
+            return null;
+        }
+
+        try {
+            return extension.getExtnValue().getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private Extensions getExtensions() {
+        TBSCertificate tbs = certificate.getTBSCertificate();
+        return tbs.getVersionNumber() == 3 ? tbs.getExtensions() : null;
+    }
+
+    @Nullable
+    private static boolean[] toBooleanArray(@Nullable ASN1BitString bits) {
+        if (bits == null) {
+            return null;
+        }
+
+        byte[] bytes = bits.getBytes();
+        boolean[] result = new boolean[bytes.length * 8 - bits.getPadBits()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (bytes[i / 8] & (0x80 >>> (i % 8))) != 0;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "X509Certificate{subject=" + getSubjectX500Principal() +
+                ", issuer=" + getIssuerX500Principal() +
+                ", serialNumber=" + getSerialNumber().toString(16) +
+                ", notBefore=" + getNotBefore() +
+                ", notAfter=" + getNotAfter() +
+                ", publicKey=" + publicKey.getAlgorithm() +
+                ", signatureAlgorithm=" + getSigAlgName() + "}";
+    }
+
+    private static final class OpaquePublicKey implements PublicKey {
+        private static final long serialVersionUID = 1L;
+
+        private final String algorithm;
+        private final byte[] encoded;
+
+        OpaquePublicKey(@NotNull String algorithm, @NotNull byte[] encoded) {
+            this.algorithm = algorithm;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "X.509";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encoded.clone();
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + " public key (not supported by the JDK)";
+        }
+    }
+}
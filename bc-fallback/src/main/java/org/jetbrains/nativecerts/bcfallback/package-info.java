@@ -0,0 +1 @@
+package org.jetbrains.nativecerts.bcfallback;
\ No newline at end of file
@@ -0,0 +1,56 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+
+public class FallbackParsingCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void knownFallbackCertificatesSkipStandardParser() throws Exception {
+        byte[] bytes = NativeCertsTestUtil.getResourceBytes("/MeSince-SM2.cer");
+        FallbackParsingCache cache = new FallbackParsingCache(null);
+
+        CertificateParsingCounters before = NativeTrustedRootsInternalUtils.getCertificateParsingCounters();
+        X509Certificate first = NativeTrustedRootsInternalUtils.parseCertificateWithFallback(bytes, NativeTrustedRootsInternalUtils.sha256(bytes), cache);
+        X509Certificate second = NativeTrustedRootsInternalUtils.parseCertificateWithFallback(bytes, NativeTrustedRootsInternalUtils.sha256(bytes), cache);
+        CertificateParsingCounters after = NativeTrustedRootsInternalUtils.getCertificateParsingCounters();
+
+        Assert.assertEquals(first.getSubjectDN().toString(), second.getSubjectDN().toString());
+        Assert.assertTrue(cache.contains(NativeTrustedRootsInternalUtils.sha256hex(bytes)));
+        Assert.assertEquals(1, after.getFallback() - before.getFallback());
+        Assert.assertEquals(1, after.getFallbackCacheHits() - before.getFallbackCacheHits());
+        Assert.assertEquals(0, after.getStandard() - before.getStandard());
+
+        // regular certificates are not cached
+        byte[] regular = NativeCertsTestUtil.getResourceBytes("/16k-rsa-example-cert.der");
+        NativeTrustedRootsInternalUtils.parseCertificateWithFallback(regular, NativeTrustedRootsInternalUtils.sha256(regular), cache);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void persistence() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("cache").resolve("fallback.txt");
+        String fingerprint = NativeTrustedRootsInternalUtils.sha256hex(new byte[]{1, 2, 3});
+
+        FallbackParsingCache cache = new FallbackParsingCache(file);
+        Assert.assertEquals(0, cache.size());
+        cache.add(fingerprint);
+        Assert.assertEquals(fingerprint, Files.readString(file, StandardCharsets.US_ASCII).trim());
+
+        Assert.assertTrue(new FallbackParsingCache(file).contains(fingerprint));
+
+        Files.writeString(file, "garbage\n" + fingerprint + "\n", StandardCharsets.US_ASCII);
+        FallbackParsingCache corrupted = new FallbackParsingCache(file);
+        Assert.assertEquals(1, corrupted.size());
+        Assert.assertTrue(corrupted.contains(fingerprint));
+    }
+}
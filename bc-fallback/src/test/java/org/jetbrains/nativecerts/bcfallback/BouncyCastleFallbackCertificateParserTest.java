@@ -0,0 +1,89 @@
+package org.jetbrains.nativecerts.bcfallback;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralSubtree;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.NameConstraints;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.jetbrains.nativecerts.NativeCertsSetupLoggingRule;
+import org.jetbrains.nativecerts.NativeCertsTestUtil;
+import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Set;
+
+public class BouncyCastleFallbackCertificateParserTest {
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    @Test
+    public void testSM2Parsing() throws CertificateException {
+        byte[] bytes = NativeCertsTestUtil.getResourceBytes("/MeSince-SM2.cer");
+        X509Certificate certificate = NativeTrustedRootsInternalUtils.parseCertificate(bytes);
+        // parsed without BouncyCastle provider
+        Assert.assertEquals(LightweightX509Certificate.class, certificate.getClass());
+        Assert.assertEquals("C=CN,O=MeSince Technology Limited,CN=MeSince Identity CA SM2", certificate.getSubjectDN().toString());
+        Assert.assertEquals("CN=MeSince Identity CA SM2, O=MeSince Technology Limited, C=CN", certificate.getSubjectX500Principal().toString());
+        Assert.assertEquals(certificate.getSubjectX500Principal(), certificate.getIssuerX500Principal());
+        Assert.assertEquals("EC", certificate.getPublicKey().getAlgorithm());
+        Assert.assertEquals("1.2.156.10197.1.501", certificate.getSigAlgOID());
+        Assert.assertTrue(certificate.getBasicConstraints() >= 0);
+        Assert.assertFalse(certificate.hasUnsupportedCriticalExtension());
+        Assert.assertEquals(certificate, CertificateFactory.getInstance("X.509", new BouncyCastleProvider()).generateCertificate(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void unsupportedCriticalExtension() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        X509Certificate supported = LightweightX509Certificate.parse(createCertificate(keyPair, Extension.keyUsage,
+                new KeyUsage(KeyUsage.keyCertSign)));
+        Assert.assertEquals(Set.of(Extension.basicConstraints.getId(), Extension.keyUsage.getId()), supported.getCriticalExtensionOIDs());
+        Assert.assertFalse(supported.hasUnsupportedCriticalExtension());
+
+        X509Certificate unsupported = LightweightX509Certificate.parse(createCertificate(keyPair, Extension.nameConstraints,
+                new NameConstraints(new GeneralSubtree[]{new GeneralSubtree(new GeneralName(GeneralName.dNSName, "example.com"))}, null)));
+        Assert.assertTrue(unsupported.hasUnsupportedCriticalExtension());
+    }
+
+    private static byte[] createCertificate(KeyPair keyPair, ASN1ObjectIdentifier criticalExtension, ASN1Encodable value) throws Exception {
+        X500Name name = new X500Name("CN=Critical Extensions Test");
+        Date notBefore = new Date();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                name, BigInteger.ONE, notBefore, new Date(notBefore.getTime() + 86_400_000L), name, keyPair.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        builder.addExtension(criticalExtension, true, value);
+        return builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())).getEncoded();
+    }
+
+    @Test
+    public void test16kRSA_bouncy_castle_fail() throws CertificateException {
+        byte[] bytes = NativeCertsTestUtil.getResourceBytes("/16k-rsa-example-cert.der");
+        // BouncyCastle fails to do so by default
+        CertificateFactory bcProvider = CertificateFactory.getInstance("X.509", new BouncyCastleProvider());
+        try {
+            bcProvider.generateCertificate(new ByteArrayInputStream(bytes)).getPublicKey();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("modulus value out of range", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Canonicalizes parsed certificates by SHA-256 fingerprint of their DER encoding, so the same root
+ * read from several sources or on every refresh is parsed once and shared while anyone references it.
+ * Certificates are referenced weakly, the pool does not keep them alive.
+ */
+final class CertificateInterner {
+    private final ConcurrentHashMap<Key, Ref> pool = new ConcurrentHashMap<>();
+    private final ReferenceQueue<X509Certificate> queue = new ReferenceQueue<>();
+
+    /**
+     * @param der certificate DER encoding
+     * @param parser called only if there is no live certificate with the same encoding in the pool,
+     *               receives {@code der} and its SHA-256 fingerprint, so it does not need to compute it again
+     * @return canonical certificate instance for {@code der}
+     */
+    X509Certificate intern(@NotNull byte[] der, @NotNull BiFunction<byte[], byte[], X509Certificate> parser) {
+        expungeStaleEntries();
+
+        Key key = new Key(NativeTrustedRootsInternalUtils.sha256(der));
+        X509Certificate existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        return putIfAbsent(key, parser.apply(der, key.fingerprint));
+    }
+
+    /**
+     * @return canonical certificate instance with the same encoding as {@code certificate}, possibly {@code certificate} itself
+     */
+    X509Certificate intern(@NotNull X509Certificate certificate) {
+        expungeStaleEntries();
+
+        byte[] der;
+        try {
+            der = certificate.getEncoded();
+        } catch (CertificateEncodingException e) {
+            // nothing to key it by, leave as is
+            return certificate;
+        }
+
+        Key key = new Key(NativeTrustedRootsInternalUtils.sha256(der));
+        X509Certificate existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        return putIfAbsent(key, certificate);
+    }
+
+    /**
+     * @return number of pooled certificates, including collected ones which were not expunged yet
+     */
+    int size() {
+        expungeStaleEntries();
+        return pool.size();
+    }
+
+    private X509Certificate get(@NotNull Key key) {
+        Ref ref = pool.get(key);
+        return ref == null ? null : ref.get();
+    }
+
+    private X509Certificate putIfAbsent(@NotNull Key key, @NotNull X509Certificate certificate) {
+        Ref ref = new Ref(certificate, key, queue);
+        while (true) {
+            Ref existingRef = pool.putIfAbsent(key, ref);
+            if (existingRef == null) {
+                return certificate;
+            }
+
+            // another thread parsed the same certificate first
+            X509Certificate existing = existingRef.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            if (pool.replace(key, existingRef, ref)) {
+                return certificate;
+            }
+        }
+    }
+
+    private void expungeStaleEntries() {
+        Ref ref;
+        while ((ref = (Ref) queue.poll()) != null) {
+            pool.remove(ref.key, ref);
+        }
+    }
+
+    private static final class Ref extends WeakReference<X509Certificate> {
+        final Key key;
+
+        Ref(@NotNull X509Certificate referent, @NotNull Key key, @NotNull ReferenceQueue<X509Certificate> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        private final byte[] fingerprint;
+        private final int hashCode;
+
+        Key(@NotNull byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+            this.hashCode = Arrays.hashCode(fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(fingerprint, ((Key) o).fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * How certificates were parsed by {@link NativeTrustedRootsInternalUtils#parseCertificate(byte[])} since JVM start.
+ * Certificates returned from the interning pool are not counted, they were not parsed.
+ */
+@ApiStatus.Internal
+public final class CertificateParsingCounters {
+    private final long standard;
+    private final long fallback;
+    private final long fallbackCacheHits;
+    private final long failed;
+
+    CertificateParsingCounters(long standard, long fallback, long fallbackCacheHits, long failed) {
+        this.standard = standard;
+        this.fallback = fallback;
+        this.fallbackCacheHits = fallbackCacheHits;
+        this.failed = failed;
+    }
+
+    /**
+     * @return certificates parsed by the standard X.509 parser
+     */
+    public long getStandard() {
+        return standard;
+    }
+
+    /**
+     * @return certificates parsed by the fallback parser after the standard one had failed
+     */
+    public long getFallback() {
+        return fallback;
+    }
+
+    /**
+     * @return certificates parsed by the fallback parser right away since they were known to fail the standard one
+     */
+    public long getFallbackCacheHits() {
+        return fallbackCacheHits;
+    }
+
+    /**
+     * @return certificates which neither parser could parse
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "standard=" + standard + ", fallback=" + fallback + ", fallbackCacheHits=" + fallbackCacheHits + ", failed=" + failed;
+    }
+}
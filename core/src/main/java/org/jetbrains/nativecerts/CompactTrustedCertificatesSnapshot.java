@@ -0,0 +1,354 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory-compact form of {@link NativeTrustedCertificatesSnapshot} for services which retain many snapshots.
+ * <p>
+ * DER encodings of all certificates are stored back to back in a single arena, either a heap {@code byte[]}
+ * or a direct (off-heap) buffer, along with an offset table, precomputed SHA-256 fingerprints and purposes.
+ * {@link X509Certificate} objects are not retained, they are materialized on access,
+ * so callers should keep them only as long as they need them. A certificate which is still referenced elsewhere
+ * is not parsed again, see {@link NativeTrustedRootsInternalUtils#parseCertificate(byte[])}.
+ * </p>
+ * <p>
+ * Certificates are indexed in the same order as in {@link NativeTrustedCertificatesSnapshot#getCertificates()},
+ * i.e. by fingerprint.
+ * </p>
+ */
+public final class CompactTrustedCertificatesSnapshot {
+    private final ByteBuffer arena;
+    // offsets[i] is the start of the i-th certificate in the arena, offsets[size] is the arena size
+    private final int[] offsets;
+    private final byte[] fingerprints;
+    private final int[] purposes;
+    private final Map<String, Source> sources;
+
+    private CompactTrustedCertificatesSnapshot(@NotNull ByteBuffer arena,
+                                               @NotNull int[] offsets,
+                                               @NotNull byte[] fingerprints,
+                                               @NotNull int[] purposes,
+                                               @NotNull Map<String, Source> sources) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.fingerprints = fingerprints;
+        this.purposes = purposes;
+        this.sources = sources;
+    }
+
+    /**
+     * @return compact copy of {@code snapshot} with DER encodings stored in a heap arena
+     */
+    public static CompactTrustedCertificatesSnapshot of(@NotNull NativeTrustedCertificatesSnapshot snapshot) {
+        return of(snapshot, false);
+    }
+
+    /**
+     * @param offHeap whether to store DER encodings in a direct buffer outside the Java heap
+     * @return compact copy of {@code snapshot}
+     */
+    public static CompactTrustedCertificatesSnapshot of(@NotNull NativeTrustedCertificatesSnapshot snapshot, boolean offHeap) {
+        List<X509Certificate> certificates = snapshot.getCertificates();
+
+        List<byte[]> encodings = new ArrayList<>(certificates.size());
+        int[] offsets = new int[certificates.size() + 1];
+        int[] purposes = new int[certificates.size()];
+        for (int i = 0; i < certificates.size(); i++) {
+            byte[] encoded = getEncoded(certificates.get(i));
+            encodings.add(encoded);
+            offsets[i + 1] = Math.addExact(offsets[i], encoded.length);
+            purposes[i] = snapshot.getPurposesMask(i);
+        }
+
+        ByteBuffer arena = offHeap ? ByteBuffer.allocateDirect(offsets[certificates.size()]) : ByteBuffer.allocate(offsets[certificates.size()]);
+        for (byte[] encoded : encodings) {
+            arena.put(encoded);
+        }
+        arena.flip();
+
+        Map<String, Source> sources = new LinkedHashMap<>();
+        for (String source : snapshot.getSources()) {
+            sources.put(source, new Source(snapshot.getSourceIndexes(source), snapshot.getSourcePurposesMasks(source)));
+        }
+
+        return new CompactTrustedCertificatesSnapshot(
+                arena.asReadOnlyBuffer(), offsets, snapshot.getFingerprints(), purposes, Collections.unmodifiableMap(sources));
+    }
+
+    public int size() {
+        return purposes.length;
+    }
+
+    public boolean isEmpty() {
+        return purposes.length == 0;
+    }
+
+    /**
+     * @return whether DER encodings are stored outside the Java heap
+     */
+    public boolean isOffHeap() {
+        return arena.isDirect();
+    }
+
+    /**
+     * @return total size of DER encodings in bytes
+     */
+    public int getArenaSize() {
+        return offsets[purposes.length];
+    }
+
+    /**
+     * @return source names in discovery order
+     */
+    public Set<String> getSources() {
+        return sources.keySet();
+    }
+
+    /**
+     * @return concatenated sorted SHA-256 fingerprints, same as {@link NativeTrustedCertificatesSnapshot#getFingerprints()}
+     */
+    public byte[] getFingerprints() {
+        return fingerprints.clone();
+    }
+
+    /**
+     * @return a copy of the DER encoding of the certificate at {@code index}
+     */
+    public byte[] getEncoded(int index) {
+        byte[] result = new byte[offsets[index + 1] - offsets[index]];
+        // duplicate to keep the shared buffer position intact for concurrent readers
+        ByteBuffer buffer = arena.duplicate();
+        buffer.position(offsets[index]);
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * @return certificate at {@code index}, parsed unless its instance is still alive
+     */
+    public X509Certificate getCertificate(int index) {
+        return NativeTrustedRootsInternalUtils.parseCertificate(getEncoded(index));
+    }
+
+    public Set<TrustedCertificatePurpose> getPurposes(int index) {
+        return TrustedCertificatePurpose.fromMask(purposes[index]);
+    }
+
+    /**
+     * Looks a certificate up by its precomputed fingerprint without parsing anything
+     *
+     * @return index of the certificate or -1 if it's not in this snapshot
+     */
+    public int indexOf(@NotNull X509Certificate certificate) {
+        byte[] fingerprint = NativeTrustedCertificatesSnapshot.fingerprint(certificate);
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = NativeTrustedCertificatesSnapshot.compareFingerprints(fingerprints, middle, fingerprint, 0);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(@NotNull X509Certificate certificate) {
+        return indexOf(certificate) >= 0;
+    }
+
+    /**
+     * @return a list which materializes a certificate on every {@code get}
+     */
+    public List<X509Certificate> getCertificates() {
+        return new AbstractList<>() {
+            @Override
+            public X509Certificate get(int index) {
+                return getCertificate(index);
+            }
+
+            @Override
+            public int size() {
+                return CompactTrustedCertificatesSnapshot.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return a list which materializes a certificate on every {@code get} or an empty list if there is no such source
+     */
+    public List<X509Certificate> getCertificates(@NotNull String source) {
+        Source indexes = sources.get(source);
+        if (indexes == null) {
+            return Collections.emptyList();
+        }
+
+        return new AbstractList<>() {
+            @Override
+            public X509Certificate get(int index) {
+                return getCertificate(indexes.indexes[index]);
+            }
+
+            @Override
+            public int size() {
+                return indexes.indexes.length;
+            }
+        };
+    }
+
+    /**
+     * Parses all certificates, every certificate once
+     *
+     * @return regular snapshot with the same sources, certificates and purposes
+     */
+    public NativeTrustedCertificatesSnapshot toSnapshot() {
+        X509Certificate[] certificates = new X509Certificate[size()];
+        for (int i = 0; i < certificates.length; i++) {
+            certificates[i] = getCertificate(i);
+        }
+
+        NativeTrustedCertificatesSnapshot.Builder builder = new NativeTrustedCertificatesSnapshot.Builder();
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            builder.addSource(entry.getKey());
+            Source source = entry.getValue();
+            for (int i = 0; i < source.indexes.length; i++) {
+                builder.visit(entry.getKey(), certificates[source.indexes[i]], TrustedCertificatePurpose.fromMask(source.purposes[i]));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return number of bytes {@link #writeTo} writes
+     */
+    int getSerializedSize() {
+        int result = 2 * Integer.BYTES + offsets.length * Integer.BYTES + fingerprints.length + purposes.length * Integer.BYTES;
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            result += Integer.BYTES + entry.getKey().getBytes(StandardCharsets.UTF_8).length;
+            result += Integer.BYTES + entry.getValue().indexes.length * 2 * Integer.BYTES;
+        }
+        return Math.addExact(result, getArenaSize());
+    }
+
+    /**
+     * Writes tables, then sources, then the arena, so {@link #readFrom} may keep the arena in the buffer it reads from
+     */
+    void writeTo(@NotNull ByteBuffer buffer) {
+        buffer.putInt(size());
+        buffer.putInt(sources.size());
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        buffer.put(fingerprints);
+        for (int purpose : purposes) {
+            buffer.putInt(purpose);
+        }
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(name.length);
+            buffer.put(name);
+            Source source = entry.getValue();
+            buffer.putInt(source.indexes.length);
+            for (int i = 0; i < source.indexes.length; i++) {
+                buffer.putInt(source.indexes[i]);
+                buffer.putInt(source.purposes[i]);
+            }
+        }
+        buffer.put(arena.duplicate());
+    }
+
+    /**
+     * Reads what {@link #writeTo} wrote. The arena is a read-only slice of {@code buffer}, nothing is copied
+     *
+     * @throws IllegalArgumentException if the data is malformed
+     */
+    static CompactTrustedCertificatesSnapshot readFrom(@NotNull ByteBuffer buffer) {
+        try {
+            int size = readCount(buffer, Integer.BYTES + NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH + Integer.BYTES);
+            int sourceCount = readCount(buffer, 2 * Integer.BYTES);
+
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = buffer.getInt();
+                if (i > 0 && offsets[i] < offsets[i - 1] || i == 0 && offsets[i] != 0) {
+                    throw new IllegalArgumentException("Invalid offset table");
+                }
+            }
+            byte[] fingerprints = new byte[size * NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH];
+            buffer.get(fingerprints);
+            int[] purposes = new int[size];
+            for (int i = 0; i < size; i++) {
+                purposes[i] = buffer.getInt();
+            }
+
+            Map<String, Source> sources = new LinkedHashMap<>();
+            for (int i = 0; i < sourceCount; i++) {
+                byte[] name = new byte[readCount(buffer, 1)];
+                buffer.get(name);
+                int count = readCount(buffer, 2 * Integer.BYTES);
+                int[] indexes = new int[count];
+                int[] sourcePurposes = new int[count];
+                for (int j = 0; j < count; j++) {
+                    indexes[j] = buffer.getInt();
+                    sourcePurposes[j] = buffer.getInt();
+                    if (indexes[j] < 0 || indexes[j] >= size) {
+                        throw new IllegalArgumentException("Invalid certificate index: " + indexes[j]);
+                    }
+                }
+                sources.put(new String(name, StandardCharsets.UTF_8), new Source(indexes, sourcePurposes));
+            }
+
+            if (buffer.remaining() != offsets[size]) {
+                throw new IllegalArgumentException("Arena size " + buffer.remaining() + " does not match offset table " + offsets[size]);
+            }
+
+            return new CompactTrustedCertificatesSnapshot(
+                    buffer.slice().asReadOnlyBuffer(), offsets, fingerprints, purposes, Collections.unmodifiableMap(sources));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated compact snapshot", e);
+        }
+    }
+
+    private static int readCount(@NotNull ByteBuffer buffer, int minBytesPerElement) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * minBytesPerElement > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid element count: " + count);
+        }
+        return count;
+    }
+
+    private static byte[] getEncoded(@NotNull X509Certificate certificate) {
+        try {
+            return certificate.getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException("Unable to encode certificate " + certificate.getSubjectX500Principal(), e);
+        }
+    }
+
+    private static final class Source {
+        final int[] indexes;
+        final int[] purposes;
+
+        Source(@NotNull int[] indexes, @NotNull int[] purposes) {
+            this.indexes = indexes;
+            this.purposes = purposes;
+        }
+    }
+}
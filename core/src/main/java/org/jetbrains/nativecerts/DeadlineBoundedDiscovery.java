@@ -0,0 +1,236 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.renderExceptionMessage;
+
+/**
+ * Runs every provider on its own daemon thread and waits for them until a deadline.
+ * Providers which did not complete in time keep running in the background, the partial result includes
+ * their sources which were completed by the deadline. A source is complete once the provider reports it via
+ * {@link TrustedCertificateVisitor#sourceCompleted}, starts visiting the next one or returns.
+ * The complete snapshot is published
+ * to {@code snapshots} once they finish, unless a discovery started later has already published its result.
+ * Calls made while a discovery is still running in the background wait for the same providers
+ * instead of starting new threads, so a hung provider costs a single thread.
+ */
+final class DeadlineBoundedDiscovery {
+    private static final Logger LOGGER = Logger.getLogger(DeadlineBoundedDiscovery.class.getName());
+
+    private final List<NativeTrustedCertificatesProvider> providers;
+    private final SingleFlight<NativeTrustedCertificatesSnapshot> snapshots;
+    private final AtomicReference<Discovery> inFlight = new AtomicReference<>();
+
+    DeadlineBoundedDiscovery(@NotNull List<NativeTrustedCertificatesProvider> providers,
+                             @NotNull SingleFlight<NativeTrustedCertificatesSnapshot> snapshots) {
+        this.providers = providers;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * @param deadline time to wait for providers, they run concurrently
+     */
+    NativeTrustedCertificatesDiscoveryResult discover(@NotNull Duration deadline) {
+        long start = System.nanoTime();
+        long waitNanos = Math.max(0, toNanos(deadline));
+        Discovery discovery = start();
+
+        List<NativeTrustedCertificatesSnapshot> completed = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        boolean interrupted = false;
+        for (int i = 0; i < discovery.providers.size(); i++) {
+            CompletableFuture<NativeTrustedCertificatesSnapshot> future = discovery.results.get(i);
+            long remaining = waitNanos - (System.nanoTime() - start);
+            try {
+                if (interrupted || remaining <= 0) {
+                    if (!future.isDone()) {
+                        pending.add(discovery.providers.get(i).getClass().getName());
+                        completed.add(discovery.progress.get(i).getCompletedSources());
+                        continue;
+                    }
+                    completed.add(future.join());
+                } else {
+                    completed.add(future.get(remaining, TimeUnit.NANOSECONDS));
+                }
+            } catch (TimeoutException e) {
+                pending.add(discovery.providers.get(i).getClass().getName());
+                completed.add(discovery.progress.get(i).getCompletedSources());
+            } catch (InterruptedException e) {
+                interrupted = true;
+                i--;
+            } catch (ExecutionException e) {
+                // providers are called in a catch-all block
+                throw new IllegalStateException(e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (pending.isEmpty()) {
+            return new NativeTrustedCertificatesDiscoveryResult(discovery.snapshot.join(), pending, discovery.snapshot);
+        }
+
+        NativeTrustedCertificatesDiscoveryResult result = new NativeTrustedCertificatesDiscoveryResult(
+                NativeTrustedCertificatesSnapshot.merge(completed), pending, discovery.snapshot);
+        LOGGER.warning("Trusted certificates discovery did not complete in " + TimeUnit.NANOSECONDS.toMillis(waitNanos) +
+                "ms, continuing in the background: " + result);
+        return result;
+    }
+
+    private static long toNanos(@NotNull Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? 0 : Long.MAX_VALUE;
+        }
+    }
+
+    private Discovery start() {
+        while (true) {
+            Discovery existing = inFlight.get();
+            if (existing != null && !existing.snapshot.isDone()) {
+                return existing;
+            }
+
+            List<NativeTrustedCertificatesProvider> supported = new ArrayList<>();
+            for (NativeTrustedCertificatesProvider provider : providers) {
+                if (provider.isSupported()) {
+                    supported.add(provider);
+                }
+            }
+            Discovery discovery = new Discovery(supported, snapshots);
+            if (inFlight.compareAndSet(existing, discovery)) {
+                if (supported.isEmpty()) {
+                    LOGGER.warning("Unable to get custom trusted certificates list from the operating system: unsupported system or no platform module on the classpath: " + System.getProperty("os.name"));
+                }
+                discovery.start();
+                return discovery;
+            }
+        }
+    }
+
+    private static NativeTrustedCertificatesSnapshot visit(@NotNull NativeTrustedCertificatesProvider provider, @NotNull ProviderProgress progress) {
+        long start = System.nanoTime();
+        try {
+            provider.visit(progress);
+        } catch (Throwable t) {
+            LOGGER.warning(renderExceptionMessage("Unable to get custom trusted certificates list from " + provider.getClass().getName(), t));
+        }
+
+        // certificates visited before a failure are kept
+        NativeTrustedCertificatesSnapshot snapshot = progress.complete();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(provider.getClass().getName() + " completed in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) +
+                    "ms, " + snapshot.size() + " certificates");
+        }
+        return snapshot;
+    }
+
+    private static final class Discovery {
+        final List<NativeTrustedCertificatesProvider> providers;
+        final List<ProviderProgress> progress = new ArrayList<>();
+        final List<CompletableFuture<NativeTrustedCertificatesSnapshot>> results = new ArrayList<>();
+        final CompletableFuture<NativeTrustedCertificatesSnapshot> snapshot;
+
+        Discovery(@NotNull List<NativeTrustedCertificatesProvider> providers, @NotNull SingleFlight<NativeTrustedCertificatesSnapshot> snapshots) {
+            this.providers = providers;
+            long sequence = snapshots.startLoadElsewhere();
+            for (int i = 0; i < providers.size(); i++) {
+                progress.add(new ProviderProgress());
+                results.add(new CompletableFuture<>());
+            }
+            snapshot = CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                List<NativeTrustedCertificatesSnapshot> providerSnapshots = new ArrayList<>();
+                for (CompletableFuture<NativeTrustedCertificatesSnapshot> result : results) {
+                    providerSnapshots.add(result.join());
+                }
+                NativeTrustedCertificatesSnapshot merged = NativeTrustedCertificatesSnapshot.merge(providerSnapshots);
+                // published before the future completes, so callers waiting for it observe either it or a newer snapshot
+                snapshots.publish(merged, sequence);
+                return merged;
+            });
+        }
+
+        void start() {
+            for (int i = 0; i < providers.size(); i++) {
+                NativeTrustedCertificatesProvider provider = providers.get(i);
+                ProviderProgress providerProgress = progress.get(i);
+                CompletableFuture<NativeTrustedCertificatesSnapshot> result = results.get(i);
+                Thread thread = new Thread(() -> result.complete(visit(provider, providerProgress)), "Native trusted roots discovery: " + provider.getClass().getSimpleName());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Collects certificates of a provider running on another thread, so its completed sources
+     * may be taken while it's still running. Certificates of the source being read are buffered until it's complete
+     */
+    private static final class ProviderProgress implements TrustedCertificateVisitor {
+        private final NativeTrustedCertificatesSnapshot.Builder completed = new NativeTrustedCertificatesSnapshot.Builder();
+        private final List<X509Certificate> currentCertificates = new ArrayList<>();
+        private final List<Set<TrustedCertificatePurpose>> currentPurposes = new ArrayList<>();
+        private @Nullable String currentSource;
+
+        @Override
+        public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+            return visit(source, certificate, TrustedCertificatePurpose.all());
+        }
+
+        @Override
+        public synchronized boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+            if (!source.equals(currentSource)) {
+                flush();
+                currentSource = source;
+            }
+            currentCertificates.add(certificate);
+            currentPurposes.add(purposes);
+            return true;
+        }
+
+        @Override
+        public synchronized void sourceCompleted(@NotNull String source) {
+            if (source.equals(currentSource)) {
+                flush();
+            }
+        }
+
+        synchronized NativeTrustedCertificatesSnapshot getCompletedSources() {
+            return completed.build();
+        }
+
+        /**
+         * Called once the provider returns, its last source is complete as well
+         */
+        synchronized NativeTrustedCertificatesSnapshot complete() {
+            flush();
+            return completed.build();
+        }
+
+        private void flush() {
+            for (int i = 0; i < currentCertificates.size(); i++) {
+                completed.visit(Objects.requireNonNull(currentSource), currentCertificates.get(i), currentPurposes.get(i));
+            }
+            currentCertificates.clear();
+            currentPurposes.clear();
+            currentSource = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Minimal forward-only reader of DER-encoded ASN.1 elements, supports only single-byte tags and definite lengths.
+ * Enough to walk certificate-related structures without instantiating any security provider.
+ */
+@ApiStatus.Internal
+public final class DerReader {
+    public static final int TAG_INTEGER = 0x02;
+    public static final int TAG_BIT_STRING = 0x03;
+    public static final int TAG_OCTET_STRING = 0x04;
+    public static final int TAG_NULL = 0x05;
+    public static final int TAG_OID = 0x06;
+    public static final int TAG_UTF8_STRING = 0x0C;
+    public static final int TAG_SEQUENCE = 0x30;
+    public static final int TAG_SET = 0x31;
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+
+    public DerReader(@NotNull byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public DerReader(@NotNull byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid range " + offset + "+" + length + " of " + data.length + " bytes");
+        }
+
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    public boolean hasMore() {
+        return position < end;
+    }
+
+    /**
+     * @return offset of the next element in the underlying array
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return tag of the next element or -1 if there are no more elements
+     */
+    public int peekTag() {
+        return hasMore() ? data[position] & 0xFF : -1;
+    }
+
+    /**
+     * @return the next element as a reader over its content
+     */
+    public DerReader readConstructed(int expectedTag) {
+        int contentOffset = readHeader(expectedTag);
+        return new DerReader(data, contentOffset, position - contentOffset);
+    }
+
+    /**
+     * @return content octets of the next element
+     */
+    public byte[] readContent(int expectedTag) {
+        int contentOffset = readHeader(expectedTag);
+        return Arrays.copyOfRange(data, contentOffset, position);
+    }
+
+    /**
+     * @return entire encoding (tag, length and content) of the next element
+     */
+    public byte[] readElement() {
+        int start = position;
+        readHeader(-1);
+        return Arrays.copyOfRange(data, start, position);
+    }
+
+    public void skip() {
+        readHeader(-1);
+    }
+
+    /**
+     * @return dotted form of the next OBJECT IDENTIFIER element, e.g. {@code 1.3.6.1.5.5.7.3.1}
+     */
+    public String readOid() {
+        byte[] content = readContent(TAG_OID);
+        if (content.length == 0) {
+            throw new IllegalStateException("Empty OBJECT IDENTIFIER");
+        }
+
+        StringBuilder result = new StringBuilder();
+        long value = 0;
+        boolean first = true;
+        for (byte b : content) {
+            if (value > (Long.MAX_VALUE >>> 7)) {
+                throw new IllegalStateException("Too large OBJECT IDENTIFIER component");
+            }
+
+            value = (value << 7) | (b & 0x7F);
+            if ((b & 0x80) != 0) {
+                continue;
+            }
+
+            if (first) {
+                int firstArc = value < 40 ? 0 : value < 80 ? 1 : 2;
+                result.append(firstArc).append('.').append(value - firstArc * 40L);
+                first = false;
+            } else {
+                result.append('.').append(value);
+            }
+            value = 0;
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Reads tag and length of the next element and moves the position to the end of the element
+     *
+     * @return offset of the element content
+     */
+    private int readHeader(int expectedTag) {
+        if (position + 2 > end) {
+            throw new IllegalStateException("Truncated DER element at offset " + position);
+        }
+
+        int tag = data[position] & 0xFF;
+        if ((tag & 0x1F) == 0x1F) {
+            throw new IllegalStateException("Multi-byte DER tags are not supported, offset " + position);
+        }
+        if (expectedTag != -1 && tag != expectedTag) {
+            throw new IllegalStateException("Unexpected DER tag 0x" + Integer.toHexString(tag) +
+                    " at offset " + position + ", expected 0x" + Integer.toHexString(expectedTag));
+        }
+
+        int offset = position + 1;
+        int length = data[offset++] & 0xFF;
+        if (length > 0x7F) {
+            int lengthBytes = length & 0x7F;
+            if (lengthBytes == 0 || lengthBytes > 4) {
+                throw new IllegalStateException("Unsupported DER length encoding at offset " + position);
+            }
+            if (offset + lengthBytes > end) {
+                throw new IllegalStateException("Truncated DER element at offset " + position);
+            }
+
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (data[offset++] & 0xFF);
+            }
+            if (length < 0) {
+                throw new IllegalStateException("Too long DER element at offset " + position);
+            }
+        }
+
+        if (length > end - offset) {
+            throw new IllegalStateException("Truncated DER element at offset " + position);
+        }
+
+        position = offset + length;
+        return offset;
+    }
+}
@@ -0,0 +1,297 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Runs trusted certificates discovery several times and collects per-source statistics.
+ * Time spent between two visited certificates is attributed to the source of the latter one,
+ * so sources without certificates are not reported and their time goes to the next source.
+ */
+final class DiscoveryProfiler {
+    private DiscoveryProfiler() {
+    }
+
+    static Profile profile(int iterations, @NotNull Predicate<TrustedCertificateVisitor> discovery) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        }
+
+        WarningsCounter warningsCounter = new WarningsCounter();
+        Logger logger = Logger.getLogger("org.jetbrains.nativecerts");
+        logger.addHandler(warningsCounter);
+
+        CertificateParsingCounters countersBefore = NativeTrustedRootsInternalUtils.getCertificateParsingCounters();
+        long[] totalNanos = new long[iterations];
+        Map<String, SourceStats> sources = new LinkedHashMap<>();
+        int distinct = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                ProfilingVisitor visitor = new ProfilingVisitor(sources);
+                long start = System.nanoTime();
+                visitor.last = start;
+                discovery.test(visitor);
+                long end = System.nanoTime();
+                visitor.finish(end);
+
+                totalNanos[i] = end - start;
+                distinct = visitor.seen.size();
+            }
+        } finally {
+            logger.removeHandler(warningsCounter);
+        }
+
+        CertificateParsingCounters countersAfter = NativeTrustedRootsInternalUtils.getCertificateParsingCounters();
+        return new Profile(iterations, totalNanos, new ArrayList<>(sources.values()), distinct,
+                new long[]{
+                        countersAfter.getStandard() - countersBefore.getStandard(),
+                        countersAfter.getFallback() - countersBefore.getFallback(),
+                        countersAfter.getFallbackCacheHits() - countersBefore.getFallbackCacheHits(),
+                        countersAfter.getFailed() - countersBefore.getFailed(),
+                },
+                warningsCounter.count);
+    }
+
+    /**
+     * @return nearest-rank percentile of {@code values}
+     */
+    static long percentile(@NotNull long[] values, double percentile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    static final class SourceStats {
+        final String source;
+        final List<Long> nanos = new ArrayList<>();
+        int certificates;
+        long derBytes;
+        int duplicates;
+
+        SourceStats(@NotNull String source) {
+            this.source = source;
+        }
+
+        long[] getNanos() {
+            return nanos.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        /**
+         * @return size of the file the source was read from, {@code null} if the source is not a file
+         */
+        @Nullable Long getFileBytes() {
+            try {
+                Path path = Path.of(source);
+                return Files.isRegularFile(path) ? Files.size(path) : null;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    static final class Profile {
+        private static final String[] PARSING_COUNTERS = {"standard", "fallback", "fallbackCacheHits", "failed"};
+
+        final int iterations;
+        final long[] totalNanos;
+        final List<SourceStats> sources;
+        final int distinctCertificates;
+        final long[] parsing;
+        final long warnings;
+
+        Profile(int iterations, long[] totalNanos, List<SourceStats> sources, int distinctCertificates, long[] parsing, long warnings) {
+            this.iterations = iterations;
+            this.totalNanos = totalNanos;
+            this.sources = sources;
+            this.distinctCertificates = distinctCertificates;
+            this.parsing = parsing;
+            this.warnings = warnings;
+        }
+
+        String toJson() {
+            StringBuilder json = new StringBuilder("{");
+            json.append("\"os\":").append(quote(System.getProperty("os.name"))).append(',');
+            json.append("\"iterations\":").append(iterations).append(',');
+            json.append("\"total\":");
+            appendTimings(json, totalNanos);
+            json.append(",\"distinctCertificates\":").append(distinctCertificates);
+            json.append(",\"parsing\":{");
+            for (int i = 0; i < PARSING_COUNTERS.length; i++) {
+                json.append(i == 0 ? "" : ",").append(quote(PARSING_COUNTERS[i])).append(':').append(parsing[i]);
+            }
+            json.append("},\"warnings\":").append(warnings);
+            json.append(",\"sources\":[");
+            for (int i = 0; i < sources.size(); i++) {
+                SourceStats stats = sources.get(i);
+                json.append(i == 0 ? "" : ",").append('{');
+                json.append("\"source\":").append(quote(stats.source));
+                json.append(",\"certificates\":").append(stats.certificates);
+                json.append(",\"duplicates\":").append(stats.duplicates);
+                json.append(",\"derBytes\":").append(stats.derBytes);
+                json.append(",\"fileBytes\":").append(stats.getFileBytes());
+                json.append(",\"timings\":");
+                appendTimings(json, stats.getNanos());
+                json.append('}');
+            }
+            return json.append("]}").toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append("Discovery on ").append(System.getProperty("os.name")).append(", ").append(iterations).append(" iteration(s)\n");
+            text.append("  total: ").append(formatTimings(totalNanos)).append('\n');
+            text.append("  distinct certificates: ").append(distinctCertificates).append('\n');
+            text.append("  parsing:");
+            for (int i = 0; i < PARSING_COUNTERS.length; i++) {
+                text.append(' ').append(PARSING_COUNTERS[i]).append('=').append(parsing[i]);
+            }
+            text.append('\n');
+            text.append("  warnings: ").append(warnings).append('\n');
+            for (SourceStats stats : sources) {
+                text.append("  ").append(stats.source).append('\n');
+                text.append("    certificates: ").append(stats.certificates)
+                        .append(", duplicates: ").append(stats.duplicates)
+                        .append(", DER bytes: ").append(stats.derBytes);
+                Long fileBytes = stats.getFileBytes();
+                if (fileBytes != null) {
+                    text.append(", file bytes: ").append(fileBytes);
+                }
+                text.append('\n');
+                text.append("    ").append(formatTimings(stats.getNanos())).append('\n');
+            }
+            return text.toString();
+        }
+
+        private static void appendTimings(StringBuilder json, long[] nanos) {
+            json.append("{\"p50Ms\":").append(millis(percentile(nanos, 50)))
+                    .append(",\"p90Ms\":").append(millis(percentile(nanos, 90)))
+                    .append(",\"p99Ms\":").append(millis(percentile(nanos, 99)))
+                    .append(",\"maxMs\":").append(millis(percentile(nanos, 100)))
+                    .append('}');
+        }
+
+        private static String formatTimings(long[] nanos) {
+            return "p50=" + millis(percentile(nanos, 50)) + "ms p90=" + millis(percentile(nanos, 90)) +
+                    "ms p99=" + millis(percentile(nanos, 99)) + "ms max=" + millis(percentile(nanos, 100)) + "ms";
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+        }
+
+        private static String quote(String value) {
+            StringBuilder result = new StringBuilder("\"");
+            for (char c : value.toCharArray()) {
+                switch (c) {
+                    case '"':
+                        result.append("\\\"");
+                        break;
+                    case '\\':
+                        result.append("\\\\");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            result.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                        } else {
+                            result.append(c);
+                        }
+                }
+            }
+            return result.append('"').toString();
+        }
+    }
+
+    private static final class ProfilingVisitor implements TrustedCertificateVisitor {
+        private final Map<String, SourceStats> sources;
+        private final Map<String, Long> nanos = new LinkedHashMap<>();
+        private final Map<String, SourceStats> visited = new LinkedHashMap<>();
+        private final Set<X509Certificate> seen = new HashSet<>();
+        private String lastSource;
+        private long last;
+
+        ProfilingVisitor(Map<String, SourceStats> sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+            long now = System.nanoTime();
+            nanos.merge(source, now - last, Long::sum);
+            last = now;
+            lastSource = source;
+
+            SourceStats stats = visited.computeIfAbsent(source, s -> {
+                SourceStats result = new SourceStats(s);
+                SourceStats previous = sources.get(s);
+                if (previous != null) {
+                    result.nanos.addAll(previous.nanos);
+                }
+                return result;
+            });
+            stats.certificates++;
+            if (!seen.add(certificate)) {
+                stats.duplicates++;
+            }
+            try {
+                stats.derBytes += certificate.getEncoded().length;
+            } catch (CertificateEncodingException ignored) {
+            }
+            return true;
+        }
+
+        void finish(long end) {
+            if (lastSource != null) {
+                nanos.merge(lastSource, end - last, Long::sum);
+            }
+
+            for (Map.Entry<String, SourceStats> entry : visited.entrySet()) {
+                SourceStats stats = entry.getValue();
+                stats.nanos.add(nanos.get(entry.getKey()));
+                sources.put(entry.getKey(), stats);
+            }
+        }
+    }
+
+    private static final class WarningsCounter extends Handler {
+        private volatile long count;
+
+        WarningsCounter() {
+            setLevel(Level.WARNING);
+        }
+
+        @Override
+        public synchronized void publish(LogRecord record) {
+            if (isLoggable(record)) {
+                count++;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Parses certificates which the standard JDK {@code CertificateFactory} fails to parse,
+ * e.g. ones with a 16k RSA key or an SM2 signature.
+ * Discovered via {@link java.util.ServiceLoader}; without an implementation on the classpath
+ * such certificates are skipped.
+ */
+public interface FallbackCertificateParser {
+    /**
+     * @param bytes DER or PEM encoded certificate
+     * @return parsed certificate
+     */
+    @NotNull X509Certificate parse(@NotNull byte[] bytes) throws CertificateException;
+}
@@ -0,0 +1,103 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.renderExceptionMessage;
+
+/**
+ * SHA-256 fingerprints of certificates the standard X.509 parser is known to reject,
+ * so they go straight to the fallback parser without paying for a failed parse and its exception.
+ * <p>
+ * The cache may be persisted to a file set by the {@value #FILE_PROPERTY} system property,
+ * one hex fingerprint per line. The file is only a hint: it's read once and rewritten on every new entry,
+ * an unreadable or corrupted file is ignored.
+ * </p>
+ */
+final class FallbackParsingCache {
+    static final String FILE_PROPERTY = "org.jetbrains.nativecerts.fallbackParsingCache";
+
+    private static final Logger LOGGER = Logger.getLogger(FallbackParsingCache.class.getName());
+    private static final Pattern FINGERPRINT = Pattern.compile("[0-9a-f]{64}");
+    private static final int MAX_SIZE = 10_000;
+
+    private final Set<String> fingerprints = ConcurrentHashMap.newKeySet();
+    private final @Nullable Path file;
+
+    FallbackParsingCache(@Nullable Path file) {
+        this.file = file;
+        if (file != null) {
+            load(file);
+        }
+    }
+
+    static FallbackParsingCache fromSystemProperties() {
+        String file = System.getProperty(FILE_PROPERTY);
+        return new FallbackParsingCache(file == null || file.isEmpty() ? null : Path.of(file));
+    }
+
+    boolean contains(@NotNull String fingerprint) {
+        return fingerprints.contains(fingerprint);
+    }
+
+    void add(@NotNull String fingerprint) {
+        if (fingerprints.size() >= MAX_SIZE || !fingerprints.add(fingerprint)) {
+            return;
+        }
+
+        if (file != null) {
+            save(file);
+        }
+    }
+
+    int size() {
+        return fingerprints.size();
+    }
+
+    private void load(@NotNull Path file) {
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+                String fingerprint = line.trim();
+                if (FINGERPRINT.matcher(fingerprint).matches() && fingerprints.size() < MAX_SIZE) {
+                    fingerprints.add(fingerprint);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // nothing was persisted yet
+        } catch (IOException e) {
+            LOGGER.warning("Unable to read fallback parsing cache from " + file + ": " + e);
+        }
+    }
+
+    private synchronized void save(@NotNull Path file) {
+        List<String> lines = new ArrayList<>(fingerprints);
+        lines.sort(null);
+
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, lines, StandardCharsets.US_ASCII);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOGGER.warning(renderExceptionMessage("Unable to write fallback parsing cache to " + file, e));
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Trust sets of many tenants sharing a single base snapshot, usually the one of
+ * {@link NativeTrustedCertificates#getCustomOsSpecificTrustedCertificatesSnapshot()}.
+ * Every tenant may trust additional certificates and distrust certificates of the base.
+ * Tenant overlays keep only these differences, base certificates are never copied per tenant.
+ * <p>
+ * Reads do not lock: the base and overlays are immutable and replaced on every change.
+ * Changes of tenants in different stripes do not contend.
+ * </p>
+ * <p>
+ * Trust managers returned by {@link #getTrustManager} always use the current base and overlay,
+ * so an {@link javax.net.ssl.SSLContext} initialized once keeps up with changes.
+ * A trust manager over the base is built once per base and shared by all tenants,
+ * a trust manager over the additions of a tenant is built once per overlay and survives base refreshes.
+ * A chain is trusted for a tenant if one of them trusts it, it does not contain certificates distrusted by the tenant
+ * and, for the base one, it is not anchored at such a certificate.
+ * </p>
+ */
+public final class LayeredTrustRegistry {
+    /**
+     * Prefix of the source of tenant additions in {@link #getSnapshot}
+     */
+    public static final String TENANT_SOURCE_PREFIX = "tenant:";
+
+    private static final int STRIPES = 64;
+
+    private final Object[] stripes = new Object[STRIPES];
+    private final Map<String, Overlay> overlays = new ConcurrentHashMap<>();
+    private volatile BaseLayer base;
+
+    public LayeredTrustRegistry(@NotNull NativeTrustedCertificatesSnapshot base) {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        this.base = new BaseLayer(base, null);
+    }
+
+    public NativeTrustedCertificatesSnapshot getBase() {
+        return base.snapshot;
+    }
+
+    /**
+     * Replaces the base layer of all tenants. If the new base has the same certificates,
+     * the shared base trust manager is kept.
+     */
+    public void setBase(@NotNull NativeTrustedCertificatesSnapshot snapshot) {
+        base = new BaseLayer(snapshot, base);
+    }
+
+    /**
+     * Runs a new discovery of custom trusted certificates and makes it the base, see {@link #setBase}
+     *
+     * @return the new base
+     */
+    public NativeTrustedCertificatesSnapshot refreshBase() {
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificates.getCustomOsSpecificTrustedCertificatesSnapshot();
+        setBase(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Trusts {@code certificates} for {@code tenant} in addition to the base, even if they were distrusted before
+     */
+    public void addCertificates(@NotNull String tenant, @NotNull Collection<X509Certificate> certificates) {
+        update(tenant, overlay -> {
+            Set<X509Certificate> additions = new LinkedHashSet<>(overlay.additions);
+            additions.addAll(certificates);
+            Set<X509Certificate> removals = new LinkedHashSet<>(overlay.removals);
+            removals.removeAll(certificates);
+            return new Overlay(additions, removals);
+        });
+    }
+
+    /**
+     * Distrusts {@code certificates} for {@code tenant}, whether they come from the base or were added before
+     */
+    public void removeCertificates(@NotNull String tenant, @NotNull Collection<X509Certificate> certificates) {
+        update(tenant, overlay -> {
+            Set<X509Certificate> additions = new LinkedHashSet<>(overlay.additions);
+            additions.removeAll(certificates);
+            Set<X509Certificate> removals = new LinkedHashSet<>(overlay.removals);
+            removals.addAll(certificates);
+            return new Overlay(additions, removals);
+        });
+    }
+
+    /**
+     * Drops additions and removals of {@code tenant}, so it trusts exactly the base
+     */
+    public void resetTenant(@NotNull String tenant) {
+        update(tenant, overlay -> Overlay.EMPTY);
+    }
+
+    /**
+     * @return tenants with additions or removals
+     */
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(overlays.keySet()));
+    }
+
+    /**
+     * @return certificates trusted for {@code tenant}: the base sources without distrusted certificates
+     * and additions as the {@link #TENANT_SOURCE_PREFIX}{@code tenant} source
+     */
+    public NativeTrustedCertificatesSnapshot getSnapshot(@NotNull String tenant) {
+        BaseLayer base = this.base;
+        Overlay overlay = getOverlay(tenant);
+        NativeTrustedCertificatesSnapshot baseSnapshot = overlay.removals.isEmpty()
+                ? base.snapshot
+                : base.snapshot.filter(certificate -> !overlay.removals.contains(certificate));
+        if (overlay.additions.isEmpty()) {
+            return baseSnapshot;
+        }
+        return NativeTrustedCertificatesSnapshot.merge(List.of(baseSnapshot,
+                NativeTrustedCertificatesSnapshot.of(Map.of(TENANT_SOURCE_PREFIX + tenant, overlay.additions))));
+    }
+
+    /**
+     * @return PKIX trust manager of {@code tenant} following all later changes of the base and the tenant overlay
+     */
+    public X509ExtendedTrustManager getTrustManager(@NotNull String tenant) {
+        return new TenantTrustManager(tenant);
+    }
+
+    private Overlay getOverlay(@NotNull String tenant) {
+        return overlays.getOrDefault(tenant, Overlay.EMPTY);
+    }
+
+    private void update(@NotNull String tenant, @NotNull UnaryOperator<Overlay> update) {
+        // spread hash codes differing only in upper bits, as HashMap does
+        int hash = tenant.hashCode();
+        Object stripe = stripes[((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % stripes.length];
+        synchronized (stripe) {
+            Overlay overlay = update.apply(getOverlay(tenant));
+            if (overlay.additions.isEmpty() && overlay.removals.isEmpty()) {
+                overlays.remove(tenant);
+            } else {
+                overlays.put(tenant, overlay);
+            }
+        }
+    }
+
+    /**
+     * @return trust manager over {@code certificates}, {@code null} if there are none
+     */
+    private static @Nullable X509ExtendedTrustManager createTrustManager(@NotNull NativeTrustedCertificatesSnapshot certificates) {
+        if (certificates.isEmpty()) {
+            return null;
+        }
+
+        try {
+            KeyStore keyStore = new KeyStore(new NativeRootsKeyStoreSpi(() -> certificates), new NativeTrustedRootsProvider(), NativeTrustedRootsProvider.KEY_STORE_TYPE) {
+            };
+            keyStore.load(null, null);
+            TrustManagerFactory factory = TrustManagerFactory.getInstance("PKIX");
+            factory.init(keyStore);
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509ExtendedTrustManager) {
+                    return (X509ExtendedTrustManager) trustManager;
+                }
+            }
+            throw new IllegalStateException("PKIX trust manager factory did not create an X509ExtendedTrustManager");
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class BaseLayer {
+        final NativeTrustedCertificatesSnapshot snapshot;
+        private volatile X509ExtendedTrustManager trustManager;
+        private volatile Map<X500Principal, List<X509Certificate>> bySubject;
+
+        BaseLayer(@NotNull NativeTrustedCertificatesSnapshot snapshot, @Nullable BaseLayer previous) {
+            this.snapshot = snapshot;
+            if (previous != null && MessageDigest.isEqual(previous.snapshot.getDigest(), snapshot.getDigest())) {
+                trustManager = previous.trustManager;
+                bySubject = previous.bySubject;
+            }
+        }
+
+        @Nullable X509ExtendedTrustManager getTrustManager() {
+            X509ExtendedTrustManager result = trustManager;
+            if (result == null && !snapshot.isEmpty()) {
+                synchronized (this) {
+                    result = trustManager;
+                    if (result == null) {
+                        trustManager = result = createTrustManager(snapshot);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * The same anchor lookup as PKIX validation of a chain: the first certificate of the chain trusted by the base,
+         * otherwise a base certificate which issued the last certificate of the chain
+         *
+         * @return whether {@code chain} may be anchored at a base certificate other than {@code removals}
+         */
+        boolean isAnchoredOutside(@NotNull X509Certificate[] chain, @NotNull Set<X509Certificate> removals) {
+            for (X509Certificate certificate : chain) {
+                if (snapshot.indexOf(NativeTrustedCertificatesSnapshot.fingerprint(certificate)) >= 0) {
+                    return !removals.contains(certificate);
+                }
+            }
+
+            X509Certificate last = chain[chain.length - 1];
+            for (X509Certificate issuer : getBySubject().getOrDefault(last.getIssuerX500Principal(), Collections.emptyList())) {
+                if (removals.contains(issuer)) {
+                    continue;
+                }
+                try {
+                    last.verify(issuer.getPublicKey());
+                    return true;
+                } catch (GeneralSecurityException e) {
+                    // another certificate with the same subject
+                }
+            }
+            return false;
+        }
+
+        private Map<X500Principal, List<X509Certificate>> getBySubject() {
+            Map<X500Principal, List<X509Certificate>> result = bySubject;
+            if (result == null) {
+                result = new HashMap<>();
+                for (X509Certificate certificate : snapshot.getCertificates()) {
+                    result.computeIfAbsent(certificate.getSubjectX500Principal(), s -> new ArrayList<>(1)).add(certificate);
+                }
+                // building it twice in a race is harmless
+                bySubject = result;
+            }
+            return result;
+        }
+    }
+
+    private static final class Overlay {
+        static final Overlay EMPTY = new Overlay(Collections.emptySet(), Collections.emptySet());
+
+        final Set<X509Certificate> additions;
+        final Set<X509Certificate> removals;
+        private volatile X509ExtendedTrustManager trustManager;
+
+        Overlay(@NotNull Set<X509Certificate> additions, @NotNull Set<X509Certificate> removals) {
+            this.additions = Collections.unmodifiableSet(additions);
+            this.removals = Collections.unmodifiableSet(removals);
+        }
+
+        @Nullable X509ExtendedTrustManager getTrustManager(@NotNull String tenant) {
+            X509ExtendedTrustManager result = trustManager;
+            if (result == null && !additions.isEmpty()) {
+                synchronized (this) {
+                    result = trustManager;
+                    if (result == null) {
+                        trustManager = result = createTrustManager(NativeTrustedCertificatesSnapshot.of(Map.of(TENANT_SOURCE_PREFIX + tenant, additions)));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private interface TrustCheck {
+        void check(@NotNull X509ExtendedTrustManager trustManager) throws CertificateException;
+    }
+
+    private final class TenantTrustManager extends X509ExtendedTrustManager {
+        private final String tenant;
+
+        TenantTrustManager(@NotNull String tenant) {
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            check(chain, trustManager -> trustManager.checkClientTrusted(chain, authType));
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            check(chain, trustManager -> trustManager.checkClientTrusted(chain, authType, socket));
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            check(chain, trustManager -> trustManager.checkClientTrusted(chain, authType, engine));
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            check(chain, trustManager -> trustManager.checkServerTrusted(chain, authType));
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            check(chain, trustManager -> trustManager.checkServerTrusted(chain, authType, socket));
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            check(chain, trustManager -> trustManager.checkServerTrusted(chain, authType, engine));
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return getSnapshot(tenant).getCertificates().toArray(new X509Certificate[0]);
+        }
+
+        private void check(X509Certificate[] chain, @NotNull TrustCheck check) throws CertificateException {
+            if (chain == null || chain.length == 0) {
+                throw new IllegalArgumentException("Empty certificate chain");
+            }
+
+            BaseLayer base = LayeredTrustRegistry.this.base;
+            Overlay overlay = getOverlay(tenant);
+            for (X509Certificate certificate : chain) {
+                if (overlay.removals.contains(certificate)) {
+                    throw new CertificateException("Certificate " + certificate.getSubjectX500Principal() + " is distrusted for tenant " + tenant);
+                }
+            }
+
+            CertificateException failure = null;
+            X509ExtendedTrustManager baseTrustManager = base.getTrustManager();
+            if (baseTrustManager != null) {
+                try {
+                    check.check(baseTrustManager);
+                    if (overlay.removals.isEmpty() || base.isAnchoredOutside(chain, overlay.removals)) {
+                        return;
+                    }
+                    failure = new CertificateException("Certificate chain of " + chain[0].getSubjectX500Principal() +
+                            " is anchored at a certificate distrusted for tenant " + tenant);
+                } catch (CertificateException e) {
+                    failure = e;
+                }
+            }
+
+            X509ExtendedTrustManager additionsTrustManager = overlay.getTrustManager(tenant);
+            if (additionsTrustManager != null) {
+                try {
+                    check.check(additionsTrustManager);
+                    return;
+                } catch (CertificateException e) {
+                    if (failure != null) {
+                        e.addSuppressed(failure);
+                    }
+                    failure = e;
+                }
+            }
+
+            throw failure != null ? failure : new CertificateException("No trusted certificates for tenant " + tenant);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Read-only key store of trusted certificate entries backed by a {@link NativeTrustedCertificatesSnapshot}.
+ * Nothing is copied: every call looks up the current snapshot, aliases are lowercase hex SHA-256 fingerprints.
+ */
+final class NativeRootsKeyStoreSpi extends KeyStoreSpi {
+    private final Supplier<NativeTrustedCertificatesSnapshot> snapshotSupplier;
+    private volatile Date loadDate = new Date();
+
+    NativeRootsKeyStoreSpi() {
+        this(NativeTrustedCertificates::getLatestCustomOsSpecificTrustedCertificatesSnapshot);
+    }
+
+    NativeRootsKeyStoreSpi(@NotNull Supplier<NativeTrustedCertificatesSnapshot> snapshotSupplier) {
+        this.snapshotSupplier = snapshotSupplier;
+    }
+
+    @Override
+    public void engineLoad(@Nullable InputStream stream, char[] password) throws IOException {
+        if (stream != null) {
+            throw new IOException(NativeTrustedRootsProvider.KEY_STORE_TYPE + " key store is not file-based, load it with a null stream");
+        }
+
+        // performs the discovery unless one was already completed, so lookups below do not block
+        snapshotSupplier.get();
+        loadDate = new Date();
+    }
+
+    @Override
+    public Certificate engineGetCertificate(String alias) {
+        NativeTrustedCertificatesSnapshot snapshot = snapshotSupplier.get();
+        int index = indexOf(snapshot, alias);
+        return index < 0 ? null : snapshot.getCertificates().get(index);
+    }
+
+    @Override
+    public String engineGetCertificateAlias(Certificate cert) {
+        if (!(cert instanceof X509Certificate)) {
+            return null;
+        }
+
+        NativeTrustedCertificatesSnapshot snapshot = snapshotSupplier.get();
+        byte[] fingerprint = NativeTrustedCertificatesSnapshot.fingerprint((X509Certificate) cert);
+        return snapshot.indexOf(fingerprint) < 0 ? null : NativeTrustedRootsInternalUtils.toHex(fingerprint);
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+        NativeTrustedCertificatesSnapshot snapshot = snapshotSupplier.get();
+        return new Enumeration<>() {
+            private int index;
+
+            @Override
+            public boolean hasMoreElements() {
+                return index < snapshot.size();
+            }
+
+            @Override
+            public String nextElement() {
+                if (!hasMoreElements()) {
+                    throw new NoSuchElementException();
+                }
+                return NativeTrustedRootsInternalUtils.toHex(snapshot.getFingerprint(index++));
+            }
+        };
+    }
+
+    @Override
+    public boolean engineContainsAlias(String alias) {
+        return indexOf(snapshotSupplier.get(), alias) >= 0;
+    }
+
+    @Override
+    public int engineSize() {
+        return snapshotSupplier.get().size();
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(String alias) {
+        return engineContainsAlias(alias);
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(String alias) {
+        return false;
+    }
+
+    @Override
+    public Key engineGetKey(String alias, char[] password) {
+        return null;
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(String alias) {
+        return null;
+    }
+
+    @Override
+    public Date engineGetCreationDate(String alias) {
+        return engineContainsAlias(alias) ? new Date(loadDate.getTime()) : null;
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) throws KeyStoreException {
+        throw readOnly();
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) throws KeyStoreException {
+        throw readOnly();
+    }
+
+    @Override
+    public void engineSetCertificateEntry(String alias, Certificate cert) throws KeyStoreException {
+        throw readOnly();
+    }
+
+    @Override
+    public void engineDeleteEntry(String alias) throws KeyStoreException {
+        throw readOnly();
+    }
+
+    @Override
+    public void engineStore(OutputStream stream, char[] password) throws IOException {
+        throw new IOException(NativeTrustedRootsProvider.KEY_STORE_TYPE + " key store is read-only, it can't be stored");
+    }
+
+    private static KeyStoreException readOnly() {
+        return new KeyStoreException(NativeTrustedRootsProvider.KEY_STORE_TYPE + " key store is read-only, trusted certificates are managed by the operating system");
+    }
+
+    private static int indexOf(@NotNull NativeTrustedCertificatesSnapshot snapshot, @Nullable String alias) {
+        if (alias == null || alias.length() != NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH * 2) {
+            return -1;
+        }
+
+        byte[] fingerprint = new byte[NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH];
+        for (int i = 0; i < fingerprint.length; i++) {
+            int high = Character.digit(alias.charAt(2 * i), 16);
+            int low = Character.digit(alias.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return -1;
+            }
+            fingerprint[i] = (byte) ((high << 4) | low);
+        }
+        return snapshot.indexOf(fingerprint);
+    }
+}
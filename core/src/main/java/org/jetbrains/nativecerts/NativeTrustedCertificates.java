@@ -0,0 +1,199 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.*;
+
+public class NativeTrustedCertificates {
+    private static final Logger LOGGER = Logger.getLogger(NativeTrustedCertificates.class.getName());
+
+    private static final List<NativeTrustedCertificatesProvider> providers = loadServices(NativeTrustedCertificatesProvider.class);
+
+    private static final SingleFlight<NativeTrustedCertificatesSnapshot> snapshotLoader = new SingleFlight<>(() -> {
+        SharedTrustedCertificatesSnapshotFile sharedSnapshotFile = SharedSnapshotFileHolder.INSTANCE;
+        return sharedSnapshotFile != null
+                ? sharedSnapshotFile.load(NativeTrustedCertificates::discoverSnapshot)
+                : discoverSnapshot();
+    });
+
+    private static final DeadlineBoundedDiscovery deadlineBoundedDiscovery = new DeadlineBoundedDiscovery(providers, snapshotLoader);
+
+    /**
+     * Get custom trusted certificates from the operating system.
+     * Uses platform-specific APIs. Does not fail, only logs to java util logging.
+     * On some systems (currently, Linux) may return an entire set of trusted certificates.
+     * <p>
+     * To get more logging on user's machine enable FINE logging level for {@code org.jetbrains.nativecerts} category.
+     * </p>
+     * <p>
+     * Concurrent calls share a single discovery: a call made while another one is in progress waits for it
+     * and receives its result.
+     * </p>
+     * @return custom trusted certificates collection or an empty collection in case of failure
+     */
+    public static Collection<X509Certificate> getCustomOsSpecificTrustedCertificates() {
+        return new HashSet<>(getCustomOsSpecificTrustedCertificatesSnapshot().getCertificates());
+    }
+
+    /**
+     * Same as {@link #getCustomOsSpecificTrustedCertificates()}, but without certificates which are useless as trust anchors
+     * according to {@code policy}, e.g. expired ones. Pruned certificates are logged on FINE level,
+     * use {@link NativeTrustedCertificatesSnapshot#prune} to get a detailed report.
+     *
+     * @return pruned custom trusted certificates collection or an empty collection in case of failure
+     */
+    public static Collection<X509Certificate> getCustomOsSpecificTrustedCertificates(@NotNull TrustedCertificatesPruningPolicy policy) {
+        TrustedCertificatesPruningResult result = getCustomOsSpecificTrustedCertificatesSnapshot().prune(policy, new Date());
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(result.toString());
+        }
+        return new HashSet<>(result.getSnapshot().getCertificates());
+    }
+
+    /**
+     * Same as {@link #getCustomOsSpecificTrustedCertificates()}, but returns an immutable snapshot
+     * which keeps certificates grouped by their source and may be cheaply compared
+     * with a previous one via {@link NativeTrustedCertificatesSnapshot#diff}.
+     * Certificates are tagged with purposes they are trusted for, see {@link NativeTrustedCertificatesSnapshot#forPurpose}.
+     * Always performs a new discovery unless another one is already in progress.
+     * <p>
+     * Processes on the same host may share a single discovery: set system property
+     * {@code org.jetbrains.nativecerts.sharedSnapshot} to a path of a shared file, then a snapshot written by another process
+     * is reused until it's older than {@code org.jetbrains.nativecerts.sharedSnapshotMaxAgeSeconds} (300 by default).
+     * Certificates from the file are trusted as is, so it's shared only by processes of the same user, in a directory
+     * other users can't write to.
+     * </p>
+     *
+     * @return snapshot of custom trusted certificates or an empty snapshot in case of failure
+     */
+    public static NativeTrustedCertificatesSnapshot getCustomOsSpecificTrustedCertificatesSnapshot() {
+        return snapshotLoader.load();
+    }
+
+    /**
+     * Same as {@link #getCustomOsSpecificTrustedCertificatesSnapshot()}, but waits for the discovery at most {@code deadline},
+     * so a hung filesystem or a slow platform API call does not stall the caller.
+     * Platform providers run concurrently, those which did not complete in time keep running in the background,
+     * the {@link NativeTrustedCertificatesDiscoveryResult#isComplete() partial} result has certificates only of their sources
+     * (e.g. files on Linux) which were completely read in time.
+     * Once they complete, the complete snapshot is available via {@link NativeTrustedCertificatesDiscoveryResult#getCompleteSnapshot()}
+     * and is published to {@link #getLatestCustomOsSpecificTrustedCertificatesSnapshot()} unless a discovery started later
+     * has already completed.
+     * A call made while a discovery is still running in the background waits for it instead of starting a new one.
+     * Does not use the shared snapshot file.
+     *
+     * @param deadline time to wait for the discovery
+     */
+    public static NativeTrustedCertificatesDiscoveryResult discoverCustomOsSpecificTrustedCertificates(@NotNull Duration deadline) {
+        return deadlineBoundedDiscovery.discover(deadline);
+    }
+
+    /**
+     * Returns the snapshot of the latest completed discovery without blocking,
+     * performs the discovery only if none was completed yet.
+     * Use {@link #getCustomOsSpecificTrustedCertificatesSnapshot()} to refresh it.
+     *
+     * @return snapshot of custom trusted certificates or an empty snapshot in case of failure
+     */
+    public static NativeTrustedCertificatesSnapshot getLatestCustomOsSpecificTrustedCertificatesSnapshot() {
+        return snapshotLoader.get();
+    }
+
+    /**
+     * Streaming variant of {@link #getCustomOsSpecificTrustedCertificates()}: certificates are passed to
+     * {@code visitor} one by one as soon as they are decoded and are not retained by this library,
+     * so a caller may filter or index them without materializing the entire set.
+     * Unlike other methods, the same certificate may be visited several times if it is present in several sources.
+     * Does not fail, only logs to java util logging.
+     * <p>
+     * Certificates are read by {@link NativeTrustedCertificatesProvider} implementations from platform modules
+     * on the classpath, e.g. {@code jvm-native-trusted-roots-linux}.
+     * </p>
+     *
+     * @param visitor receives certificates with their source, returns {@code false} to stop enumeration.
+     *                An exception thrown by it is logged and stops enumeration as well
+     * @return {@code true} if all sources were enumerated, {@code false} if not: enumeration was stopped by {@code visitor}
+     *         or a platform provider failed, in which case the remaining providers are still enumerated
+     */
+    public static boolean visitCustomOsSpecificTrustedCertificates(@NotNull TrustedCertificateVisitor visitor) {
+        return visit(providers, visitor);
+    }
+
+    static boolean visit(@NotNull List<NativeTrustedCertificatesProvider> providers, @NotNull TrustedCertificateVisitor visitor) {
+        Throwable[] visitorFailure = new Throwable[1];
+        TrustedCertificateVisitor guardedVisitor = new TrustedCertificateVisitor() {
+            @Override
+            public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+                try {
+                    return visitor.visit(source, certificate);
+                } catch (Throwable t) {
+                    visitorFailure[0] = t;
+                    throw t;
+                }
+            }
+
+            @Override
+            public boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+                try {
+                    return visitor.visit(source, certificate, purposes);
+                } catch (Throwable t) {
+                    visitorFailure[0] = t;
+                    throw t;
+                }
+            }
+
+            @Override
+            public void sourceCompleted(@NotNull String source) {
+                try {
+                    visitor.sourceCompleted(source);
+                } catch (Throwable t) {
+                    visitorFailure[0] = t;
+                    throw t;
+                }
+            }
+        };
+
+        boolean supported = false;
+        boolean complete = true;
+        for (NativeTrustedCertificatesProvider provider : providers) {
+            try {
+                if (!provider.isSupported()) {
+                    continue;
+                }
+
+                supported = true;
+                if (!provider.visit(guardedVisitor)) {
+                    return false;
+                }
+            } catch (Throwable t) {
+                if (t == visitorFailure[0]) {
+                    LOGGER.warning(renderExceptionMessage("Trusted certificates visitor failed, enumeration was stopped", t));
+                    return false;
+                }
+                LOGGER.warning(renderExceptionMessage("Unable to get custom trusted certificates list from the operating system", t));
+                complete = false;
+            }
+        }
+
+        if (!supported && complete) {
+            LOGGER.warning("Unable to get custom trusted certificates list from the operating system: unsupported system or no platform module on the classpath: " + System.getProperty("os.name"));
+        }
+        return complete;
+    }
+
+    private static NativeTrustedCertificatesSnapshot discoverSnapshot() {
+        NativeTrustedCertificatesSnapshot.Builder builder = new NativeTrustedCertificatesSnapshot.Builder();
+        visitCustomOsSpecificTrustedCertificates(builder);
+        return builder.build();
+    }
+
+    private static class SharedSnapshotFileHolder {
+        static final SharedTrustedCertificatesSnapshotFile INSTANCE = SharedTrustedCertificatesSnapshotFile.fromSystemProperties();
+    }
+}
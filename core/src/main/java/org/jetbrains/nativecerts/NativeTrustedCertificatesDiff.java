@@ -0,0 +1,81 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two {@link NativeTrustedCertificatesSnapshot}s, see {@link NativeTrustedCertificatesSnapshot#diff}
+ */
+public final class NativeTrustedCertificatesDiff {
+    private final Change total;
+    private final Map<String, Change> changedSources;
+
+    NativeTrustedCertificatesDiff(@NotNull Change total, @NotNull Map<String, Change> changedSources) {
+        this.total = total;
+        this.changedSources = changedSources;
+    }
+
+    /**
+     * @return certificates which are present in the current snapshot, but not in the previous one
+     */
+    public List<X509Certificate> getAdded() {
+        return total.getAdded();
+    }
+
+    /**
+     * @return certificates which were present in the previous snapshot, but not in the current one
+     */
+    public List<X509Certificate> getRemoved() {
+        return total.getRemoved();
+    }
+
+    /**
+     * @return true if both snapshots have the same set of certificates, regardless of their sources
+     */
+    public boolean isEmpty() {
+        return total.isEmpty();
+    }
+
+    /**
+     * Per-source breakdown. A certificate moved from one source to another is reported for both sources,
+     * but not in {@link #getAdded()} or {@link #getRemoved()}.
+     *
+     * @return changed, added or removed sources mapped to their changes
+     */
+    public Map<String, Change> getChangedSources() {
+        return changedSources;
+    }
+
+    @Override
+    public String toString() {
+        return "NativeTrustedCertificatesDiff{added=" + getAdded().size() +
+                ", removed=" + getRemoved().size() +
+                ", changedSources=" + changedSources.keySet() + "}";
+    }
+
+    public static final class Change {
+        private final List<X509Certificate> added;
+        private final List<X509Certificate> removed;
+
+        Change(@NotNull List<X509Certificate> added, @NotNull List<X509Certificate> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        public List<X509Certificate> getAdded() {
+            return added;
+        }
+
+        public List<X509Certificate> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Result of {@link NativeTrustedCertificates#discoverCustomOsSpecificTrustedCertificates(java.time.Duration)}:
+ * certificates of sources which were completed before the deadline and a future of the complete snapshot
+ */
+public final class NativeTrustedCertificatesDiscoveryResult {
+    private final NativeTrustedCertificatesSnapshot snapshot;
+    private final List<String> pendingProviders;
+    private final CompletableFuture<NativeTrustedCertificatesSnapshot> completeSnapshot;
+
+    NativeTrustedCertificatesDiscoveryResult(@NotNull NativeTrustedCertificatesSnapshot snapshot,
+                                             @NotNull List<String> pendingProviders,
+                                             @NotNull CompletableFuture<NativeTrustedCertificatesSnapshot> completeSnapshot) {
+        this.snapshot = snapshot;
+        this.pendingProviders = Collections.unmodifiableList(pendingProviders);
+        this.completeSnapshot = completeSnapshot;
+    }
+
+    /**
+     * @return certificates of providers which completed in time and of sources the pending providers completed in time,
+     * e.g. files read before a hung one, all certificates if the result {@link #isComplete()}
+     */
+    public NativeTrustedCertificatesSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return {@code false} if some providers did not complete in time and some of their certificates may be missing from {@link #getSnapshot()}
+     */
+    public boolean isComplete() {
+        return pendingProviders.isEmpty();
+    }
+
+    /**
+     * @return class names of {@link NativeTrustedCertificatesProvider} implementations which did not complete in time
+     */
+    public List<String> getPendingProviders() {
+        return pendingProviders;
+    }
+
+    /**
+     * Completes with certificates of all providers once the pending ones finish in the background.
+     * Never completes if a pending provider hangs forever. Already completed if the result {@link #isComplete()}.
+     */
+    public CompletableFuture<NativeTrustedCertificatesSnapshot> getCompleteSnapshot() {
+        return completeSnapshot;
+    }
+
+    @Override
+    public String toString() {
+        return (isComplete() ? "Complete" : "Partial") + " discovery result: " + snapshot.size() + " certificates" +
+                (isComplete() ? "" : ", pending providers: " + String.join(", ", pendingProviders));
+    }
+}
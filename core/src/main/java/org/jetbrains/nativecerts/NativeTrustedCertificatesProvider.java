@@ -0,0 +1,27 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Platform-specific source of trusted certificates.
+ * Implementations live in per-platform modules and are discovered via {@link java.util.ServiceLoader},
+ * so only modules present on the classpath are loaded, e.g. a Linux deployment does not need JNA.
+ * <p>
+ * Implementations must have a public no-arg constructor and must not touch native libraries
+ * until {@link #visit} is called.
+ * </p>
+ */
+public interface NativeTrustedCertificatesProvider {
+    /**
+     * @return {@code true} if this provider is able to read trusted certificates on the current operating system
+     */
+    boolean isSupported();
+
+    /**
+     * Passes trusted certificates to {@code visitor}, see {@link NativeTrustedCertificates#visitCustomOsSpecificTrustedCertificates}.
+     * Exceptions are logged by the caller.
+     *
+     * @return {@code true} if all sources were enumerated, {@code false} if enumeration was stopped by {@code visitor}
+     */
+    boolean visit(@NotNull TrustedCertificateVisitor visitor) throws Exception;
+}
@@ -0,0 +1,557 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Immutable result of a single trusted certificates discovery.
+ * <p>
+ * Certificates are kept grouped by their source (a file on Linux, a trust settings domain on Mac OS,
+ * a certificate store on Windows) and ordered by their SHA-256 fingerprint, so two snapshots may be compared
+ * in linear time without comparing DER encodings, see {@link #diff}.
+ * </p>
+ * <p>
+ * Every certificate is tagged with purposes it is trusted for, see {@link #getPurposes} and {@link #forPurpose}.
+ * </p>
+ */
+public final class NativeTrustedCertificatesSnapshot {
+    static final int FINGERPRINT_LENGTH = 32;
+
+    private static final NativeTrustedCertificatesSnapshot EMPTY = new NativeTrustedCertificatesSnapshot(Collections.emptyMap());
+
+    private final Map<String, SortedCertificates> sources;
+    private final SortedCertificates all;
+
+    private NativeTrustedCertificatesSnapshot(@NotNull Map<String, SortedCertificates> sources) {
+        this.sources = sources;
+        this.all = SortedCertificates.union(sources.values());
+    }
+
+    public static NativeTrustedCertificatesSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Certificates are trusted for all purposes allowed by their extended key usage extension
+     *
+     * @param certificatesBySource source name to certificates map, iteration order is preserved
+     */
+    public static NativeTrustedCertificatesSnapshot of(@NotNull Map<String, ? extends Collection<X509Certificate>> certificatesBySource) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, ? extends Collection<X509Certificate>> entry : certificatesBySource.entrySet()) {
+            builder.addSource(entry.getKey());
+            for (X509Certificate certificate : entry.getValue()) {
+                builder.visit(entry.getKey(), certificate);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return snapshot with sources of all {@code snapshots} in their order, certificates of a source present
+     * in several snapshots are merged
+     */
+    static NativeTrustedCertificatesSnapshot merge(@NotNull List<NativeTrustedCertificatesSnapshot> snapshots) {
+        if (snapshots.size() == 1) {
+            return snapshots.get(0);
+        }
+
+        Map<String, List<SortedCertificates>> parts = new LinkedHashMap<>();
+        for (NativeTrustedCertificatesSnapshot snapshot : snapshots) {
+            for (Map.Entry<String, SortedCertificates> entry : snapshot.sources.entrySet()) {
+                parts.computeIfAbsent(entry.getKey(), s -> new ArrayList<>()).add(entry.getValue());
+            }
+        }
+
+        Map<String, SortedCertificates> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<SortedCertificates>> entry : parts.entrySet()) {
+            result.put(entry.getKey(), SortedCertificates.union(entry.getValue()));
+        }
+        return new NativeTrustedCertificatesSnapshot(Collections.unmodifiableMap(result));
+    }
+
+    /**
+     * @return all distinct certificates of all sources ordered by SHA-256 fingerprint
+     */
+    public List<X509Certificate> getCertificates() {
+        return all.asList();
+    }
+
+    /**
+     * @return distinct certificates of the specified source ordered by SHA-256 fingerprint
+     * or an empty list if there is no such source
+     */
+    public List<X509Certificate> getCertificates(@NotNull String source) {
+        SortedCertificates certificates = sources.get(source);
+        return certificates == null ? Collections.emptyList() : certificates.asList();
+    }
+
+    /**
+     * @return distinct certificates trusted for {@code purpose} ordered by SHA-256 fingerprint
+     */
+    public List<X509Certificate> getCertificates(@NotNull TrustedCertificatePurpose purpose) {
+        return forPurpose(purpose).getCertificates();
+    }
+
+    /**
+     * @return purposes the certificate is trusted for by any of its sources, limited by its extended key usage extension.
+     * An empty set if the certificate is not in this snapshot
+     */
+    public Set<TrustedCertificatePurpose> getPurposes(@NotNull X509Certificate certificate) {
+        int index = all.indexOf(fingerprint(certificate));
+        return index < 0 ? Collections.emptySet() : TrustedCertificatePurpose.fromMask(all.purposes[index]);
+    }
+
+    /**
+     * @return source names in discovery order
+     */
+    public Set<String> getSources() {
+        return sources.keySet();
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    public boolean isEmpty() {
+        return all.size() == 0;
+    }
+
+    /**
+     * @return concatenated sorted SHA-256 fingerprints of {@link #getCertificates()}, {@value #FINGERPRINT_LENGTH} bytes each
+     */
+    public byte[] getFingerprints() {
+        return all.fingerprints.clone();
+    }
+
+    /**
+     * Stable identity of the trust set for comparing snapshots across hosts without exchanging certificates:
+     * root of a Merkle tree over sorted SHA-256 fingerprints of {@link #getCertificates()},
+     * leaves and nodes are hashed as in RFC 6962. Sources, discovery order and purposes do not affect it.
+     *
+     * @return 32-byte digest, computed once per snapshot
+     */
+    public byte[] getDigest() {
+        return all.digest().clone();
+    }
+
+    /**
+     * Same as {@link #getDigest()} for certificates of a single source, to find out which source differs
+     *
+     * @return 32-byte digest or {@code null} if there is no such source
+     */
+    public byte[] getDigest(@NotNull String source) {
+        SortedCertificates certificates = sources.get(source);
+        return certificates == null ? null : certificates.digest().clone();
+    }
+
+    /**
+     * @return snapshot with the same sources, but only with certificates matching {@code predicate}
+     */
+    public NativeTrustedCertificatesSnapshot filter(@NotNull Predicate<X509Certificate> predicate) {
+        return filterSources((certificates, index) -> predicate.test(certificates.certificates[index]));
+    }
+
+    /**
+     * Use it to keep fewer trust anchors in a trust manager, e.g. only {@link TrustedCertificatePurpose#SERVER_AUTH}
+     * ones for a TLS client.
+     *
+     * @return snapshot with the same sources, but only with certificates trusted for {@code purpose} by that source
+     */
+    public NativeTrustedCertificatesSnapshot forPurpose(@NotNull TrustedCertificatePurpose purpose) {
+        int mask = TrustedCertificatePurpose.toMask(Set.of(purpose));
+        return filterSources((certificates, index) -> (certificates.purposes[index] & mask) != 0);
+    }
+
+    private NativeTrustedCertificatesSnapshot filterSources(@NotNull CertificateFilter filter) {
+        Map<String, SortedCertificates> filtered = new LinkedHashMap<>();
+        for (Map.Entry<String, SortedCertificates> entry : sources.entrySet()) {
+            filtered.put(entry.getKey(), entry.getValue().filter(filter));
+        }
+        return new NativeTrustedCertificatesSnapshot(Collections.unmodifiableMap(filtered));
+    }
+
+    /**
+     * Removes certificates which are useless as trust anchors according to {@code policy},
+     * so PKIX path building has fewer candidates to consider.
+     *
+     * @param now time to check certificate validity against
+     * @return pruned snapshot and a report on what was pruned
+     */
+    public TrustedCertificatesPruningResult prune(@NotNull TrustedCertificatesPruningPolicy policy, @NotNull Date now) {
+        List<TrustedCertificatesPruningResult.PrunedCertificate> pruned = TrustedCertificatesPruner.prune(getCertificates(), policy, now);
+        if (pruned.isEmpty()) {
+            return new TrustedCertificatesPruningResult(this, pruned);
+        }
+
+        // sources may hold different instances of the same certificate, so they are matched by fingerprint
+        BitSet prunedIndexes = new BitSet(all.size());
+        for (TrustedCertificatesPruningResult.PrunedCertificate certificate : pruned) {
+            prunedIndexes.set(all.indexOf(fingerprint(certificate.getCertificate())));
+        }
+        SortedCertificates prunedCertificates = all.filter((certificates, index) -> prunedIndexes.get(index));
+
+        return new TrustedCertificatesPruningResult(
+                filterSources((certificates, index) -> prunedCertificates.indexOf(certificates.fingerprints, index) < 0), pruned);
+    }
+
+    /**
+     * Compares two snapshots by certificate fingerprints in time linear to the number of certificates.
+     *
+     * @param previous an older snapshot
+     * @param current a newer snapshot
+     * @return certificates added to and removed from the current snapshot in total and per every changed source
+     */
+    public static NativeTrustedCertificatesDiff diff(@NotNull NativeTrustedCertificatesSnapshot previous,
+                                                     @NotNull NativeTrustedCertificatesSnapshot current) {
+        Map<String, NativeTrustedCertificatesDiff.Change> changedSources = new LinkedHashMap<>();
+
+        for (Map.Entry<String, SortedCertificates> entry : current.sources.entrySet()) {
+            SortedCertificates before = previous.sources.getOrDefault(entry.getKey(), SortedCertificates.EMPTY);
+            NativeTrustedCertificatesDiff.Change change = SortedCertificates.diff(before, entry.getValue());
+            if (!change.isEmpty()) {
+                changedSources.put(entry.getKey(), change);
+            }
+        }
+
+        for (Map.Entry<String, SortedCertificates> entry : previous.sources.entrySet()) {
+            if (!current.sources.containsKey(entry.getKey())) {
+                changedSources.put(entry.getKey(), SortedCertificates.diff(entry.getValue(), SortedCertificates.EMPTY));
+            }
+        }
+
+        return new NativeTrustedCertificatesDiff(
+                SortedCertificates.diff(previous.all, current.all),
+                Collections.unmodifiableMap(changedSources));
+    }
+
+    /**
+     * @return index in {@link #getCertificates()} of the certificate with the SHA-256 {@code fingerprint}, or -1
+     */
+    int indexOf(@NotNull byte[] fingerprint) {
+        return fingerprint.length == FINGERPRINT_LENGTH ? all.indexOf(fingerprint) : -1;
+    }
+
+    /**
+     * @return SHA-256 fingerprint of the certificate at {@code index} in {@link #getCertificates()}
+     */
+    byte[] getFingerprint(int index) {
+        return Arrays.copyOfRange(all.fingerprints, index * FINGERPRINT_LENGTH, (index + 1) * FINGERPRINT_LENGTH);
+    }
+
+    /**
+     * @return purposes bit mask of the certificate at {@code index} in {@link #getCertificates()}
+     */
+    int getPurposesMask(int index) {
+        return all.purposes[index];
+    }
+
+    /**
+     * @return indexes in {@link #getCertificates()} of certificates of the source, in ascending order
+     */
+    int[] getSourceIndexes(@NotNull String source) {
+        SortedCertificates certificates = sources.getOrDefault(source, SortedCertificates.EMPTY);
+        int[] result = new int[certificates.size()];
+        for (int i = 0, j = 0; i < certificates.size(); i++) {
+            while (compareFingerprints(all.fingerprints, j, certificates.fingerprints, i) != 0) {
+                j++;
+            }
+            result[i] = j;
+        }
+        return result;
+    }
+
+    /**
+     * @return purposes bit masks of the source certificates, in the same order as {@link #getCertificates(String)}
+     */
+    int[] getSourcePurposesMasks(@NotNull String source) {
+        return sources.getOrDefault(source, SortedCertificates.EMPTY).purposes.clone();
+    }
+
+    static byte[] fingerprint(@NotNull X509Certificate certificate) {
+        try {
+            return NativeTrustedRootsInternalUtils.sha256(certificate.getEncoded());
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException("Unable to encode certificate " + certificate.getSubjectX500Principal(), e);
+        }
+    }
+
+    static int compareFingerprints(byte[] a, int aIndex, byte[] b, int bIndex) {
+        return Arrays.compareUnsigned(
+                a, aIndex * FINGERPRINT_LENGTH, (aIndex + 1) * FINGERPRINT_LENGTH,
+                b, bIndex * FINGERPRINT_LENGTH, (bIndex + 1) * FINGERPRINT_LENGTH);
+    }
+
+    private static int getExtendedKeyUsageMask(@NotNull X509Certificate certificate) {
+        List<String> extendedKeyUsage;
+        try {
+            extendedKeyUsage = certificate.getExtendedKeyUsage();
+        } catch (CertificateParsingException e) {
+            // let path validation reject it later
+            return TrustedCertificatePurpose.ALL_MASK;
+        }
+        return extendedKeyUsage == null
+                ? TrustedCertificatePurpose.ALL_MASK
+                : TrustedCertificatePurpose.toMask(TrustedCertificatePurpose.fromOids(extendedKeyUsage));
+    }
+
+    /**
+     * Collects a snapshot from certificate sources, pass it to
+     * {@link NativeTrustedCertificates#visitCustomOsSpecificTrustedCertificates} or call {@code visit} directly.
+     * A certificate visited several times within a source is trusted for the union of visited purposes.
+     */
+    public static final class Builder implements TrustedCertificateVisitor {
+        private final Map<String, SourceBuilder> sources = new LinkedHashMap<>();
+
+        /**
+         * Registers a source, so it's present in the snapshot even without certificates
+         */
+        public Builder addSource(@NotNull String source) {
+            sources.computeIfAbsent(source, s -> new SourceBuilder());
+            return this;
+        }
+
+        @Override
+        public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+            return visit(source, certificate, TrustedCertificatePurpose.all());
+        }
+
+        @Override
+        public boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+            SourceBuilder builder = sources.computeIfAbsent(source, s -> new SourceBuilder());
+            builder.certificates.add(certificate);
+            builder.fingerprints.add(fingerprint(certificate));
+            builder.purposes.add(TrustedCertificatePurpose.toMask(purposes) & getExtendedKeyUsageMask(certificate));
+            return true;
+        }
+
+        public NativeTrustedCertificatesSnapshot build() {
+            Map<String, SortedCertificates> result = new LinkedHashMap<>();
+            for (Map.Entry<String, SourceBuilder> entry : sources.entrySet()) {
+                SourceBuilder builder = entry.getValue();
+                result.put(entry.getKey(), SortedCertificates.sort(builder.fingerprints, builder.certificates, builder.purposes));
+            }
+            return new NativeTrustedCertificatesSnapshot(Collections.unmodifiableMap(result));
+        }
+
+        private static final class SourceBuilder {
+            final List<X509Certificate> certificates = new ArrayList<>();
+            final List<byte[]> fingerprints = new ArrayList<>();
+            final List<Integer> purposes = new ArrayList<>();
+        }
+    }
+
+    private interface CertificateFilter {
+        /**
+         * @param index index of the certificate in {@code certificates}
+         */
+        boolean accept(@NotNull SortedCertificates certificates, int index);
+    }
+
+    /**
+     * Distinct certificates sorted by fingerprint, fingerprints are stored in a single flat array.
+     * Purposes are stored as {@link TrustedCertificatePurpose} bit masks
+     */
+    private static final class SortedCertificates {
+        static final SortedCertificates EMPTY = new SortedCertificates(new byte[0], new X509Certificate[0], new int[0]);
+
+        final byte[] fingerprints;
+        final X509Certificate[] certificates;
+        final int[] purposes;
+        private volatile byte[] digest;
+
+        private SortedCertificates(byte[] fingerprints, X509Certificate[] certificates, int[] purposes) {
+            this.fingerprints = fingerprints;
+            this.certificates = certificates;
+            this.purposes = purposes;
+        }
+
+        int size() {
+            return certificates.length;
+        }
+
+        List<X509Certificate> asList() {
+            return Collections.unmodifiableList(Arrays.asList(certificates));
+        }
+
+        byte[] digest() {
+            byte[] result = digest;
+            if (result == null) {
+                MessageDigest sha256;
+                try {
+                    sha256 = MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException(e);
+                }
+                result = merkleTreeHash(sha256, 0, certificates.length);
+                digest = result;
+            }
+            return result;
+        }
+
+        /**
+         * Merkle tree hash of fingerprints in {@code [from, to)}, see RFC 6962, section 2.1
+         */
+        private byte[] merkleTreeHash(@NotNull MessageDigest sha256, int from, int to) {
+            int count = to - from;
+            if (count == 0) {
+                return sha256.digest();
+            }
+            if (count == 1) {
+                sha256.update((byte) 0);
+                sha256.update(fingerprints, from * FINGERPRINT_LENGTH, FINGERPRINT_LENGTH);
+                return sha256.digest();
+            }
+
+            // the largest power of two smaller than count
+            int split = Integer.highestOneBit(count - 1);
+            byte[] left = merkleTreeHash(sha256, from, from + split);
+            byte[] right = merkleTreeHash(sha256, from + split, to);
+            sha256.update((byte) 1);
+            sha256.update(left);
+            sha256.update(right);
+            return sha256.digest();
+        }
+
+        int indexOf(byte[] fingerprint) {
+            return indexOf(fingerprint, 0);
+        }
+
+        /**
+         * @param fingerprintIndex index of the fingerprint to look up in the flat {@code fingerprints} array
+         */
+        int indexOf(byte[] fingerprints, int fingerprintIndex) {
+            int low = 0;
+            int high = certificates.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int cmp = compareFingerprints(this.fingerprints, middle, fingerprints, fingerprintIndex);
+                if (cmp < 0) {
+                    low = middle + 1;
+                } else if (cmp > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        SortedCertificates filter(@NotNull CertificateFilter filter) {
+            byte[] filteredFingerprints = new byte[fingerprints.length];
+            X509Certificate[] filteredCertificates = new X509Certificate[certificates.length];
+            int[] filteredPurposes = new int[purposes.length];
+            int count = 0;
+            for (int i = 0; i < certificates.length; i++) {
+                if (filter.accept(this, i)) {
+                    System.arraycopy(fingerprints, i * FINGERPRINT_LENGTH, filteredFingerprints, count * FINGERPRINT_LENGTH, FINGERPRINT_LENGTH);
+                    filteredPurposes[count] = purposes[i];
+                    filteredCertificates[count++] = certificates[i];
+                }
+            }
+
+            if (count == certificates.length) {
+                return this;
+            }
+
+            return new SortedCertificates(
+                    Arrays.copyOf(filteredFingerprints, count * FINGERPRINT_LENGTH),
+                    Arrays.copyOf(filteredCertificates, count),
+                    Arrays.copyOf(filteredPurposes, count));
+        }
+
+        static SortedCertificates union(@NotNull Collection<SortedCertificates> parts) {
+            if (parts.size() == 1) {
+                return parts.iterator().next();
+            }
+
+            List<byte[]> fingerprints = new ArrayList<>();
+            List<X509Certificate> list = new ArrayList<>();
+            List<Integer> purposes = new ArrayList<>();
+            for (SortedCertificates part : parts) {
+                for (int i = 0; i < part.size(); i++) {
+                    fingerprints.add(Arrays.copyOfRange(part.fingerprints, i * FINGERPRINT_LENGTH, (i + 1) * FINGERPRINT_LENGTH));
+                    list.add(part.certificates[i]);
+                    purposes.add(part.purposes[i]);
+                }
+            }
+            return sort(fingerprints, list, purposes);
+        }
+
+        /**
+         * Sorts by fingerprint and removes duplicates, purposes of duplicates are merged
+         */
+        static SortedCertificates sort(@NotNull List<byte[]> fingerprints,
+                                       @NotNull List<X509Certificate> list,
+                                       @NotNull List<Integer> purposes) {
+            if (list.isEmpty()) {
+                return EMPTY;
+            }
+
+            Integer[] order = new Integer[list.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(fingerprints::get, Arrays::compareUnsigned));
+
+            byte[] sortedFingerprints = new byte[order.length * FINGERPRINT_LENGTH];
+            X509Certificate[] sortedCertificates = new X509Certificate[order.length];
+            int[] sortedPurposes = new int[order.length];
+            int count = 0;
+            for (Integer index : order) {
+                byte[] fingerprint = fingerprints.get(index);
+                if (count > 0 && Arrays.equals(
+                        sortedFingerprints, (count - 1) * FINGERPRINT_LENGTH, count * FINGERPRINT_LENGTH,
+                        fingerprint, 0, FINGERPRINT_LENGTH)) {
+                    sortedPurposes[count - 1] |= purposes.get(index);
+                    continue;
+                }
+
+                System.arraycopy(fingerprint, 0, sortedFingerprints, count * FINGERPRINT_LENGTH, FINGERPRINT_LENGTH);
+                sortedCertificates[count] = list.get(index);
+                sortedPurposes[count] = purposes.get(index);
+                count++;
+            }
+
+            return new SortedCertificates(
+                    Arrays.copyOf(sortedFingerprints, count * FINGERPRINT_LENGTH),
+                    Arrays.copyOf(sortedCertificates, count),
+                    Arrays.copyOf(sortedPurposes, count));
+        }
+
+        static NativeTrustedCertificatesDiff.Change diff(@NotNull SortedCertificates before, @NotNull SortedCertificates after) {
+            List<X509Certificate> added = new ArrayList<>();
+            List<X509Certificate> removed = new ArrayList<>();
+            int i = 0, j = 0;
+            while (i < before.size() || j < after.size()) {
+                int cmp = i == before.size() ? 1 : j == after.size() ? -1 : compareFingerprints(before.fingerprints, i, after.fingerprints, j);
+                if (cmp < 0) {
+                    removed.add(before.certificates[i++]);
+                } else if (cmp > 0) {
+                    added.add(after.certificates[j++]);
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+            return new NativeTrustedCertificatesDiff.Change(added, removed);
+        }
+    }
+}
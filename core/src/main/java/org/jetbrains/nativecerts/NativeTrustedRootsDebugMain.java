@@ -0,0 +1,139 @@
+package org.jetbrains.nativecerts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.sha256hex;
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.toHex;
+
+public class NativeTrustedRootsDebugMain {
+    private final static Logger rootLogger = Logger.getLogger("");
+    private final static Logger LOG = Logger.getLogger(NativeTrustedRootsDebugMain.class.getName());
+
+    private static final String USAGE = "Usage: java -jar jvm-native-trusted-roots-jar-with-dependencies.jar [command]\n" +
+            "Commands:\n" +
+            "  list                               print trusted certificates with full debug logging (default)\n" +
+            "  profile [--iterations N] [--json]  run discovery N times (default 10) and report per-source timings,\n" +
+            "                                     sizes, duplicates, parsing counters and warnings\n";
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length == 0 ? "list" : args[0];
+        switch (command) {
+            case "list":
+                list();
+                break;
+            case "profile":
+                profile(Arrays.asList(args).subList(1, args.length));
+                break;
+            default:
+                exitWithUsage(null);
+        }
+    }
+
+    private static void exitWithUsage(String error) {
+        if (error != null) {
+            //noinspection UseOfSystemOutOrSystemErr
+            System.err.println(error);
+        }
+        //noinspection UseOfSystemOutOrSystemErr
+        System.err.print(USAGE);
+        System.exit(2);
+    }
+
+    private static void list() throws Exception {
+        File logFile = File.createTempFile("nativecerts-", ".log");
+        setupLogging(logFile, Level.FINEST);
+
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificates.getCustomOsSpecificTrustedCertificatesSnapshot();
+        Collection<X509Certificate> trustedCertificates = snapshot.getCertificates();
+
+        StringBuilder message = new StringBuilder("getCustomOsSpecificTrustedCertificates returned the following certificates (" + trustedCertificates.size() + " pcs):\n");
+        int index = 1;
+        for (X509Certificate certificate : trustedCertificates) {
+            message.append("  ").append(index).append(" / ").append(trustedCertificates.size()).append(". ")
+                    .append(certificate.getSubjectDN()).append(" ").append(sha256hex(certificate.getEncoded()))
+                    .append('\n');
+            index++;
+        }
+
+        message.append("Trust set digest: ").append(toHex(snapshot.getDigest())).append('\n');
+        for (String source : snapshot.getSources()) {
+            message.append("  ").append(source).append(": ").append(toHex(snapshot.getDigest(source))).append('\n');
+        }
+
+        LOG.info(message.toString());
+
+        //noinspection UseOfSystemOutOrSystemErr
+        System.out.println("\nLog file was saved at " + logFile);
+    }
+
+    private static void profile(List<String> args) throws Exception {
+        int iterations = 10;
+        boolean json = false;
+        for (int i = 0; i < args.size(); i++) {
+            switch (args.get(i)) {
+                case "--iterations":
+                    Integer value = i + 1 < args.size() ? parseInteger(args.get(++i)) : null;
+                    if (value == null || value <= 0) {
+                        exitWithUsage("--iterations requires a positive number");
+                        return;
+                    }
+                    iterations = value;
+                    break;
+                case "--json":
+                    json = true;
+                    break;
+                default:
+                    exitWithUsage("Unknown option: " + args.get(i));
+                    return;
+            }
+        }
+
+        // debug logging would distort timings, keep only warnings
+        File logFile = File.createTempFile("nativecerts-", ".log");
+        setupLogging(logFile, Level.WARNING);
+
+        DiscoveryProfiler.Profile profile = DiscoveryProfiler.profile(iterations, NativeTrustedCertificates::visitCustomOsSpecificTrustedCertificates);
+
+        //noinspection UseOfSystemOutOrSystemErr
+        System.out.println(json ? profile.toJson() : profile.toString());
+        //noinspection UseOfSystemOutOrSystemErr
+        System.err.println("Log file was saved at " + logFile);
+    }
+
+    private static Integer parseInteger(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void setupLogging(File logFile, Level level) throws IOException {
+        LogManager.getLogManager().reset();
+
+        SimpleFormatter formatter = new SimpleFormatter();
+
+        final ConsoleHandler consoleHandler = new ConsoleHandler();
+        consoleHandler.setLevel(level);
+        consoleHandler.setFormatter(formatter);
+
+        final StreamHandler fileHandler = new StreamHandler(new FileOutputStream(logFile), formatter);
+        fileHandler.setLevel(level);
+
+        rootLogger.setLevel(level);
+        rootLogger.addHandler(consoleHandler);
+        rootLogger.addHandler(fileHandler);
+    }
+}
@@ -0,0 +1,208 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+@ApiStatus.Internal
+public class NativeTrustedRootsInternalUtils {
+    private static final String _OS_NAME = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
+    public static final boolean isWindows = _OS_NAME.startsWith("windows");
+    public static final boolean isMac = _OS_NAME.startsWith("mac");
+    public static final boolean isLinux = _OS_NAME.startsWith("linux");
+
+    private static final CertificateInterner certificateInterner = new CertificateInterner();
+
+    private static final AtomicLong standardParsingCount = new AtomicLong();
+    private static final AtomicLong fallbackParsingCount = new AtomicLong();
+    private static final AtomicLong fallbackCacheHitCount = new AtomicLong();
+    private static final AtomicLong failedParsingCount = new AtomicLong();
+
+    public static String renderExceptionMessage(@NotNull String message, @NotNull Throwable exception) {
+        StringWriter throwableText = new StringWriter();
+        exception.printStackTrace(new PrintWriter(throwableText));
+        return message + ": " + exception.getMessage() + "\n" + throwableText;
+    }
+
+    public static String sha256hex(final byte[] bytes) {
+        return toHex(sha256(bytes));
+    }
+
+    public static byte[] sha256(final byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return digest.digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String sha1hex(final byte[] bytes) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final byte[] hash = digest.digest(bytes);
+            return toHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        final StringBuilder hexString = new StringBuilder();
+        for (byte b : bytes) {
+            final String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1)
+                hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
+    /**
+     * Parses a DER-encoded certificate. Equal encodings yield the same instance as long as it is referenced anywhere,
+     * so repeated discoveries neither re-parse nor duplicate certificates
+     */
+    public static X509Certificate parseCertificate(byte[] bytes) {
+        return certificateInterner.intern(bytes, NativeTrustedRootsInternalUtils::parseCertificateWithFallback);
+    }
+
+    /**
+     * @return the same instance {@link #parseCertificate(byte[])} returns for the encoding of {@code certificate},
+     * for certificates which were parsed elsewhere, e.g. by a {@link java.security.KeyStore}
+     */
+    public static X509Certificate internCertificate(@NotNull X509Certificate certificate) {
+        return certificateInterner.intern(certificate);
+    }
+
+    /**
+     * @return how certificates were parsed since JVM start
+     */
+    public static CertificateParsingCounters getCertificateParsingCounters() {
+        return new CertificateParsingCounters(
+                standardParsingCount.get(), fallbackParsingCount.get(), fallbackCacheHitCount.get(), failedParsingCount.get());
+    }
+
+    private static X509Certificate parseCertificateWithFallback(byte[] bytes, byte[] sha256) {
+        return parseCertificateWithFallback(bytes, sha256, FallbackParsingCacheHolder.INSTANCE);
+    }
+
+    /**
+     * @param sha256 SHA-256 fingerprint of {@code bytes}, already computed by the caller
+     */
+    static X509Certificate parseCertificateWithFallback(byte[] bytes, byte[] sha256, FallbackParsingCache fallbackParsingCache) {
+        String fingerprint = toHex(sha256);
+        if (fallbackParsingCache.contains(fingerprint)) {
+            // known to fail with a standard provider, do not waste time on it
+            fallbackCacheHitCount.incrementAndGet();
+            return parseCertificateWithFallbackParser(bytes);
+        }
+
+        try {
+            // Try to parse with a standard provider (usually the provider bundled with JRE)
+            X509Certificate certificate = parseCertificate(bytes, CertificateFactory.getInstance("X.509"));
+            standardParsingCount.incrementAndGet();
+            return certificate;
+        } catch (Throwable e) {
+            if (FallbackCertificateParserHolder.INSTANCE == null) {
+                failedParsingCount.incrementAndGet();
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+
+            Logger logger = Logger.getLogger(NativeTrustedRootsInternalUtils.class.getName());
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(renderExceptionMessage("Unable to parse certificate with a standard X509 parser, falling back to " +
+                        FallbackCertificateParserHolder.INSTANCE.getClass().getName(), e));
+            }
+
+            X509Certificate certificate = parseCertificateWithFallbackParser(bytes);
+            fallbackParsingCount.incrementAndGet();
+            fallbackParsingCache.add(fingerprint);
+            return certificate;
+        }
+    }
+
+    private static X509Certificate parseCertificateWithFallbackParser(byte[] bytes) {
+        // If it fails, fallback to a parser from an optional module, e.g. BouncyCastle ASN.1 parser
+        // see, e.g., https://youtrack.jetbrains.com/issue/IDEA-318004
+        FallbackCertificateParser parser = FallbackCertificateParserHolder.INSTANCE;
+        try {
+            if (parser == null) {
+                throw new CertificateException("No " + FallbackCertificateParser.class.getName() + " implementation on the classpath");
+            }
+
+            X509Certificate certificate = parser.parse(bytes);
+            certificate.getPublicKey();
+            return certificate;
+        } catch (CertificateException e) {
+            failedParsingCount.incrementAndGet();
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            failedParsingCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Instantiates all implementations of {@code service} registered in {@code META-INF/services}
+     * and visible from the class loader of this library. Broken registrations are logged and skipped.
+     */
+    static <T> List<T> loadServices(@NotNull Class<T> service) {
+        List<T> result = new ArrayList<>();
+        Logger logger = Logger.getLogger(NativeTrustedRootsInternalUtils.class.getName());
+        try {
+            Iterator<T> iterator = ServiceLoader.load(service, NativeTrustedRootsInternalUtils.class.getClassLoader()).iterator();
+            while (iterator.hasNext()) {
+                try {
+                    result.add(iterator.next());
+                } catch (ServiceConfigurationError e) {
+                    logger.warning(renderExceptionMessage("Unable to instantiate " + service.getName() + " implementation", e));
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.warning(renderExceptionMessage("Unable to look up " + service.getName() + " implementations", e));
+        }
+        return result;
+    }
+
+    static X509Certificate parseCertificate(byte[] bytes, CertificateFactory cf) {
+        try {
+            X509Certificate certificate = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(bytes));
+
+            // force parsing of the certificate to mitigate errors like
+            // IDE fails to connect to network due to "invalid info structure in RSA public key" error in my corporate network
+            // https://youtrack.jetbrains.com/issue/IDEA-327220
+            certificate.getPublicKey();
+
+            return certificate;
+        } catch (CertificateException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class FallbackCertificateParserHolder {
+        static final @Nullable FallbackCertificateParser INSTANCE = loadServices(FallbackCertificateParser.class).stream().findFirst().orElse(null);
+    }
+
+    private static class FallbackParsingCacheHolder {
+        static final FallbackParsingCache INSTANCE = FallbackParsingCache.fromSystemProperties();
+    }
+}
@@ -0,0 +1,42 @@
+package org.jetbrains.nativecerts;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.Map;
+
+/**
+ * JCA provider of the {@value #KEY_STORE_TYPE} key store which exposes custom trusted certificates
+ * from the operating system, see {@link NativeTrustedCertificates#getLatestCustomOsSpecificTrustedCertificatesSnapshot()}.
+ * The key store is read-only and does not copy certificates: every lookup is served from the latest snapshot,
+ * so it reflects the refreshes made via {@link NativeTrustedCertificates#getCustomOsSpecificTrustedCertificatesSnapshot()}.
+ * <p>
+ * To use it as the default trust store, call {@link #install()} (or register the provider in {@code java.security})
+ * and run with {@code -Djavax.net.ssl.trustStoreType=NativeRoots -Djavax.net.ssl.trustStore=NONE}.
+ * Note that trust managers copy trust anchors when they are initialized,
+ * so a refresh affects only trust managers created after it.
+ * </p>
+ */
+public final class NativeTrustedRootsProvider extends Provider {
+    public static final String NAME = "JetBrainsNativeRoots";
+    public static final String KEY_STORE_TYPE = "NativeRoots";
+
+    public NativeTrustedRootsProvider() {
+        super(NAME, "1.0", "Trusted certificates from the operating system (" + KEY_STORE_TYPE + " key store)");
+
+        putService(new Service(this, "KeyStore", KEY_STORE_TYPE, NativeRootsKeyStoreSpi.class.getName(), null, Map.of()) {
+            @Override
+            public Object newInstance(Object constructorParameter) {
+                return new NativeRootsKeyStoreSpi();
+            }
+        });
+    }
+
+    /**
+     * Registers the provider with the lowest preference unless a provider with the same name is already registered
+     */
+    public static synchronized void install() {
+        if (Security.getProvider(NAME) == null) {
+            Security.addProvider(new NativeTrustedRootsProvider());
+        }
+    }
+}
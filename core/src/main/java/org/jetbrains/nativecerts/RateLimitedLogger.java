@@ -0,0 +1,62 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs at most {@code maxMessages} messages per {@code period}, the rest are counted
+ * and reported along with the next logged message. Messages are built only if they are going to be logged.
+ */
+@ApiStatus.Internal
+public final class RateLimitedLogger {
+    private final Logger logger;
+    private final int maxMessages;
+    private final long periodNanos;
+
+    private long periodStart;
+    private int messagesInPeriod;
+    private int suppressed;
+
+    public RateLimitedLogger(@NotNull Logger logger, int maxMessages, long period, @NotNull TimeUnit unit) {
+        this.logger = logger;
+        this.maxMessages = maxMessages;
+        this.periodNanos = unit.toNanos(period);
+        this.periodStart = System.nanoTime() - periodNanos;
+    }
+
+    public void log(@NotNull Level level, @NotNull Supplier<String> message) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+
+        int suppressedBefore;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - periodStart >= periodNanos) {
+                periodStart = now;
+                messagesInPeriod = 0;
+            }
+
+            if (messagesInPeriod >= maxMessages) {
+                suppressed++;
+                return;
+            }
+
+            messagesInPeriod++;
+            suppressedBefore = suppressed;
+            suppressed = 0;
+        }
+
+        String text = message.get();
+        logger.log(level, suppressedBefore == 0 ? text : text + " (" + suppressedBefore + " similar messages were suppressed)");
+    }
+
+    public void warning(@NotNull Supplier<String> message) {
+        log(Level.WARNING, message);
+    }
+}
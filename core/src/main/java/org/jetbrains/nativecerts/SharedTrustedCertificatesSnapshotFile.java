@@ -0,0 +1,367 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.renderExceptionMessage;
+
+/**
+ * Host-level snapshot shared by processes via a memory-mapped file set by the {@value #FILE_PROPERTY} system property.
+ * <p>
+ * A process which finds the shared snapshot missing, corrupted or older than {@value #MAX_AGE_PROPERTY} seconds
+ * (default {@value #DEFAULT_MAX_AGE_SECONDS}) takes an exclusive lock on {@code <file>.lock}, performs the discovery
+ * and writes the result as a {@link CompactTrustedCertificatesSnapshot}. Other processes wait for the lock
+ * and then read its result instead of performing their own discovery. A process which can't get the lock
+ * within {@value #DEFAULT_LOCK_TIMEOUT_SECONDS} seconds performs a local discovery and does not share its result.
+ * Readers open the file read-only, keep it mapped and check only the header on every load, certificates are parsed again only
+ * when the generation in the header changes.
+ * </p>
+ * <p>
+ * The file starts with a {@value #HEADER_SIZE}-byte header: magic, format version, generation, write time,
+ * body length and CRC32 of the body. The generation is odd while the body is being rewritten,
+ * a reader retries if it changes during the read. Any I/O error falls back to a local discovery.
+ * </p>
+ * <p>
+ * Certificates of the file are trusted as is: CRC32 only detects corruption, it does not authenticate the writer.
+ * The file and its lock are therefore created readable and writable by the owner only, and on POSIX systems
+ * an existing file or lock owned by another user or writable by group or others is rejected. The directory must not be
+ * writable by other users either, otherwise they may replace the file. On other systems the file is protected
+ * only by the access control lists it inherits from the directory.
+ * </p>
+ */
+final class SharedTrustedCertificatesSnapshotFile {
+    static final String FILE_PROPERTY = "org.jetbrains.nativecerts.sharedSnapshot";
+    static final String MAX_AGE_PROPERTY = "org.jetbrains.nativecerts.sharedSnapshotMaxAgeSeconds";
+    static final long DEFAULT_MAX_AGE_SECONDS = 300;
+    static final long DEFAULT_LOCK_TIMEOUT_SECONDS = 30;
+    private static final long LOCK_POLL_MILLIS = 20;
+
+    static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x4E545253; // NTRS
+    private static final int FORMAT_VERSION = 1;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int WRITE_TIME_OFFSET = 16;
+    private static final int BODY_LENGTH_OFFSET = 24;
+    private static final int CHECKSUM_OFFSET = 28;
+    private static final int MAX_READ_ATTEMPTS = 5;
+
+    private static final Logger LOGGER = Logger.getLogger(SharedTrustedCertificatesSnapshotFile.class.getName());
+
+    private final Path file;
+    private final Path lockFile;
+    private final long maxAgeMillis;
+    private final long lockTimeoutMillis;
+
+    private @Nullable FileChannel channel;
+    private @Nullable MappedByteBuffer mapping;
+    private long loadedGeneration = -1;
+    private @Nullable NativeTrustedCertificatesSnapshot loadedSnapshot;
+
+    SharedTrustedCertificatesSnapshotFile(@NotNull Path file, long maxAgeMillis) {
+        this(file, maxAgeMillis, TimeUnit.SECONDS.toMillis(DEFAULT_LOCK_TIMEOUT_SECONDS));
+    }
+
+    SharedTrustedCertificatesSnapshotFile(@NotNull Path file, long maxAgeMillis, long lockTimeoutMillis) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        this.maxAgeMillis = maxAgeMillis;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    static @Nullable SharedTrustedCertificatesSnapshotFile fromSystemProperties() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+
+        long maxAgeSeconds = DEFAULT_MAX_AGE_SECONDS;
+        String maxAge = System.getProperty(MAX_AGE_PROPERTY);
+        if (maxAge != null && !maxAge.isEmpty()) {
+            try {
+                maxAgeSeconds = Long.parseLong(maxAge);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid " + MAX_AGE_PROPERTY + " value '" + maxAge + "', using " + DEFAULT_MAX_AGE_SECONDS);
+            }
+        }
+        return new SharedTrustedCertificatesSnapshotFile(Path.of(file), TimeUnit.SECONDS.toMillis(maxAgeSeconds));
+    }
+
+    /**
+     * @param discovery performs a local discovery, called only if there is no fresh shared snapshot
+     * @return fresh shared snapshot, or the result of {@code discovery} which is then shared with other processes
+     */
+    synchronized NativeTrustedCertificatesSnapshot load(@NotNull Supplier<NativeTrustedCertificatesSnapshot> discovery) {
+        boolean discoveryStarted = false;
+        NativeTrustedCertificatesSnapshot discovered = null;
+        try {
+            NativeTrustedCertificatesSnapshot snapshot = readIfFresh();
+            if (snapshot != null) {
+                return snapshot;
+            }
+
+            try (FileChannel lockChannel = openChecked(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lock(lockChannel);
+                if (lock == null) {
+                    LOGGER.warning("Unable to lock " + lockFile + " in " + lockTimeoutMillis + " ms, falling back to a local discovery");
+                    discoveryStarted = true;
+                    return discovery.get();
+                }
+
+                try (lock) {
+                    // another process may have refreshed the snapshot while we were waiting for the lock
+                    snapshot = readIfFresh();
+                    if (snapshot != null) {
+                        return snapshot;
+                    }
+
+                    discoveryStarted = true;
+                    discovered = discovery.get();
+                    write(discovered);
+                    return discovered;
+                }
+            }
+        } catch (Throwable t) {
+            if (discovered != null) {
+                LOGGER.warning(renderExceptionMessage("Unable to share trusted certificates snapshot via " + file, t));
+                return discovered;
+            }
+            if (discoveryStarted) {
+                // the discovery itself failed, running it again won't help
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new IllegalStateException(t);
+            }
+
+            LOGGER.warning(renderExceptionMessage("Unable to use shared trusted certificates snapshot " + file + ", falling back to a local discovery", t));
+            return discovery.get();
+        }
+    }
+
+    /**
+     * @return exclusive lock of {@code lockChannel}, {@code null} if it was not acquired in time
+     */
+    private @Nullable FileLock lock(@NotNull FileChannel lockChannel) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lockTimeoutMillis);
+        while (true) {
+            try {
+                FileLock lock = lockChannel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException e) {
+                // held via another instance in this process
+            }
+
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            try {
+                Thread.sleep(LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private @Nullable NativeTrustedCertificatesSnapshot readIfFresh() throws IOException {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            MappedByteBuffer header = map(HEADER_SIZE);
+            if (header == null || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                return null;
+            }
+
+            long generation = header.getLong(GENERATION_OFFSET);
+            if ((generation & 1) != 0) {
+                // being rewritten right now, the writer holds the lock
+                return null;
+            }
+            if (System.currentTimeMillis() - header.getLong(WRITE_TIME_OFFSET) > maxAgeMillis) {
+                return null;
+            }
+            if (generation == loadedGeneration && loadedSnapshot != null) {
+                return loadedSnapshot;
+            }
+
+            int bodyLength = header.getInt(BODY_LENGTH_OFFSET);
+            int checksum = header.getInt(CHECKSUM_OFFSET);
+            MappedByteBuffer mapped = bodyLength < 0 ? null : map(HEADER_SIZE + bodyLength);
+            if (mapped == null) {
+                return null;
+            }
+
+            byte[] body = new byte[bodyLength];
+            mapped.duplicate().position(HEADER_SIZE).get(body);
+            if (mapped.getLong(GENERATION_OFFSET) != generation) {
+                continue;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                LOGGER.warning("Shared trusted certificates snapshot " + file + " is corrupted, it will be rewritten");
+                return null;
+            }
+
+            NativeTrustedCertificatesSnapshot snapshot = CompactTrustedCertificatesSnapshot.readFrom(ByteBuffer.wrap(body)).toSnapshot();
+            loadedGeneration = generation;
+            loadedSnapshot = snapshot;
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Loaded shared trusted certificates snapshot " + file + ", generation " + generation + ", " + snapshot.size() + " certificates");
+            }
+            return snapshot;
+        }
+        return null;
+    }
+
+    private void write(@NotNull NativeTrustedCertificatesSnapshot snapshot) throws IOException {
+        CompactTrustedCertificatesSnapshot compact = CompactTrustedCertificatesSnapshot.of(snapshot);
+        ByteBuffer body = ByteBuffer.allocate(compact.getSerializedSize());
+        compact.writeTo(body);
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        long writing;
+        // only the process holding the lock opens the file for writing
+        try (FileChannel channel = openChecked(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            long generation = 0;
+            if (channel.size() >= HEADER_SIZE) {
+                channel.read(header, 0);
+                if (header.getInt(0) == MAGIC) {
+                    generation = header.getLong(GENERATION_OFFSET);
+                }
+            }
+            // odd while the body is rewritten, the next even one when it's done
+            writing = generation | 1;
+
+            header.clear();
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(writing).putLong(0).putInt(0).putInt(0).flip();
+            writeFully(channel, header, 0);
+            // the file is never truncated: other processes may have mapped it, and touching a mapped page past the end fails
+            writeFully(channel, body, HEADER_SIZE);
+
+            header.clear();
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(writing + 1)
+                    .putLong(System.currentTimeMillis()).putInt(compact.getSerializedSize()).putInt((int) crc.getValue()).flip();
+            writeFully(channel, header, 0);
+            channel.force(false);
+        }
+
+        loadedGeneration = writing + 1;
+        loadedSnapshot = snapshot;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Shared trusted certificates snapshot " + file + " was written, generation " + loadedGeneration + ", " + snapshot.size() + " certificates");
+        }
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @return read-only channel of the file, {@code null} if it does not exist yet
+     */
+    private @Nullable FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            try {
+                channel = openChecked(file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            mapping = null;
+        }
+        return channel;
+    }
+
+    /**
+     * Creates missing files readable and writable by the owner only and rejects existing files others may have written to,
+     * on POSIX systems
+     */
+    private static @NotNull FileChannel openChecked(@NotNull Path path, @NotNull OpenOption... options) throws IOException {
+        Set<OpenOption> optionSet = Set.of(options);
+        FileChannel channel = isPosix(path)
+                ? FileChannel.open(path, optionSet, PosixFilePermissions.asFileAttribute(
+                        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)))
+                : FileChannel.open(path, optionSet);
+        try {
+            checkWritableByOwnerOnly(path);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private static void checkWritableByOwnerOnly(@NotNull Path path) throws IOException {
+        if (!isPosix(path)) {
+            return;
+        }
+
+        PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class);
+        UserPrincipal currentUser = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attributes.owner().equals(currentUser)) {
+            throw new IOException(path + " is owned by " + attributes.owner().getName() + ", not by the current user " + currentUser.getName());
+        }
+
+        Set<PosixFilePermission> permissions = attributes.permissions();
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException(path + " is writable by other users: " + PosixFilePermissions.toString(permissions));
+        }
+    }
+
+    private static boolean isPosix(@NotNull Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * @return read-only mapping of at least {@code size} bytes, {@code null} if the file is shorter
+     */
+    private @Nullable MappedByteBuffer map(int size) throws IOException {
+        if (mapping != null && mapping.capacity() >= size) {
+            return mapping;
+        }
+
+        FileChannel channel = channel();
+        if (channel == null) {
+            return null;
+        }
+        long fileSize = channel.size();
+        if (fileSize < size || fileSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        return mapping;
+    }
+}
@@ -0,0 +1,98 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads: callers arriving while a load is in progress wait for it and share its result
+ * instead of starting their own. A call arriving after the load has finished starts a new one.
+ * The latest completed result is published for lock-free reads. Loads are numbered when they start,
+ * a result never replaces one of a load started later.
+ */
+final class SingleFlight<T> {
+    private final Supplier<T> loader;
+    private final AtomicReference<CompletableFuture<T>> inFlight = new AtomicReference<>();
+    private final AtomicLong loadSequence = new AtomicLong();
+    private volatile T latest;
+    // guarded by this
+    private long latestSequence;
+
+    SingleFlight(@NotNull Supplier<T> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @return result of the in-flight load if there is one, otherwise result of a new load
+     */
+    T load() {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<T> existing = inFlight.get();
+            if (existing != null) {
+                return existing.join();
+            }
+
+            if (inFlight.compareAndSet(null, future)) {
+                break;
+            }
+        }
+
+        long sequence = startLoadElsewhere();
+        try {
+            T result = loader.get();
+            publish(result, sequence);
+            future.complete(result);
+            return result;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.compareAndSet(future, null);
+        }
+    }
+
+    /**
+     * @return the latest completed result or a new one if nothing was loaded yet
+     */
+    T get() {
+        T result = latest;
+        return result != null ? result : load();
+    }
+
+    /**
+     * Call it when a load performed elsewhere starts, e.g. on a background thread
+     *
+     * @return sequence number of the load to {@link #publish} its result with
+     */
+    long startLoadElsewhere() {
+        return loadSequence.incrementAndGet();
+    }
+
+    /**
+     * Publishes a result as the latest one unless a result of a load started later was already published
+     *
+     * @param sequence obtained from {@link #startLoadElsewhere()} before the load started
+     * @return {@code true} if the result was published
+     */
+    synchronized boolean publish(@NotNull T result, long sequence) {
+        if (sequence < latestSequence) {
+            return false;
+        }
+        latestSequence = sequence;
+        latest = result;
+        return true;
+    }
+
+    /**
+     * @return the latest completed result, never blocks
+     */
+    @Nullable
+    T getLatest() {
+        return latest;
+    }
+}
@@ -0,0 +1,100 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Usage a trusted root is trusted for, mapped to extended key usage purposes of RFC 5280.
+ * A root is tagged with a purpose only if neither its extended key usage extension
+ * nor its source (e.g. a purpose-specific bundle or platform trust settings) exclude it.
+ */
+public enum TrustedCertificatePurpose {
+    SERVER_AUTH("1.3.6.1.5.5.7.3.1"),
+    CLIENT_AUTH("1.3.6.1.5.5.7.3.2"),
+    CODE_SIGNING("1.3.6.1.5.5.7.3.3"),
+    EMAIL_PROTECTION("1.3.6.1.5.5.7.3.4");
+
+    static final String ANY_EXTENDED_KEY_USAGE_OID = "2.5.29.37.0";
+
+    private static final Set<TrustedCertificatePurpose> ALL = Collections.unmodifiableSet(EnumSet.allOf(TrustedCertificatePurpose.class));
+    static final int ALL_MASK = (1 << values().length) - 1;
+
+    private final String oid;
+
+    TrustedCertificatePurpose(@NotNull String oid) {
+        this.oid = oid;
+    }
+
+    /**
+     * @return extended key usage object identifier, e.g. {@code 1.3.6.1.5.5.7.3.1} for {@link #SERVER_AUTH}
+     */
+    public String getOid() {
+        return oid;
+    }
+
+    /**
+     * @return all purposes, i.e. no restrictions
+     */
+    public static Set<TrustedCertificatePurpose> all() {
+        return ALL;
+    }
+
+    /**
+     * @return purpose with the specified extended key usage identifier or {@code null} if it's unknown
+     */
+    @Nullable
+    public static TrustedCertificatePurpose fromOid(@NotNull String oid) {
+        for (TrustedCertificatePurpose purpose : values()) {
+            if (purpose.oid.equals(oid)) {
+                return purpose;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param oids extended key usage identifiers, unknown ones are ignored
+     * @return corresponding purposes, all purposes if {@code anyExtendedKeyUsage} is among {@code oids}
+     */
+    public static Set<TrustedCertificatePurpose> fromOids(@NotNull Collection<String> oids) {
+        if (oids.contains(ANY_EXTENDED_KEY_USAGE_OID)) {
+            return ALL;
+        }
+
+        Set<TrustedCertificatePurpose> result = EnumSet.noneOf(TrustedCertificatePurpose.class);
+        for (String oid : oids) {
+            TrustedCertificatePurpose purpose = fromOid(oid);
+            if (purpose != null) {
+                result.add(purpose);
+            }
+        }
+        return result;
+    }
+
+    static int toMask(@NotNull Set<TrustedCertificatePurpose> purposes) {
+        int mask = 0;
+        for (TrustedCertificatePurpose purpose : purposes) {
+            mask |= 1 << purpose.ordinal();
+        }
+        return mask;
+    }
+
+    static Set<TrustedCertificatePurpose> fromMask(int mask) {
+        if (mask == ALL_MASK) {
+            return ALL;
+        }
+
+        Set<TrustedCertificatePurpose> result = EnumSet.noneOf(TrustedCertificatePurpose.class);
+        for (TrustedCertificatePurpose purpose : values()) {
+            if ((mask & (1 << purpose.ordinal())) != 0) {
+                result.add(purpose);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -0,0 +1,42 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.cert.X509Certificate;
+import java.util.Set;
+
+/**
+ * Receives trusted certificates one by one as they are decoded,
+ * see {@link NativeTrustedCertificates#visitCustomOsSpecificTrustedCertificates}
+ */
+@FunctionalInterface
+public interface TrustedCertificateVisitor {
+    /**
+     * @param source where the certificate was read from: a file on Linux, a trust settings domain on Mac OS,
+     *               a certificate store on Windows
+     * @param certificate decoded certificate. The same certificate may be visited several times from different sources
+     * @return {@code true} to continue enumeration, {@code false} to stop it
+     */
+    boolean visit(@NotNull String source, @NotNull X509Certificate certificate);
+
+    /**
+     * Called by certificate sources instead of {@link #visit(String, X509Certificate)}.
+     * Override it to receive purposes the certificate is trusted for by its source.
+     *
+     * @param purposes purposes the source trusts the certificate for, e.g. only {@link TrustedCertificatePurpose#SERVER_AUTH}
+     *                 for a TLS-specific bundle, or {@link TrustedCertificatePurpose#all()} if the source has no restrictions.
+     *                 Extended key usage extension of the certificate itself is not taken into account
+     * @return {@code true} to continue enumeration, {@code false} to stop it
+     */
+    default boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+        return visit(source, certificate);
+    }
+
+    /**
+     * Called by certificate sources once all certificates of {@code source} were visited, so a consumer may use them
+     * while other sources are still being read, e.g. when one of them hangs on a network filesystem.
+     * Not called if enumeration was stopped or reading the source failed.
+     */
+    default void sourceCompleted(@NotNull String source) {
+    }
+}
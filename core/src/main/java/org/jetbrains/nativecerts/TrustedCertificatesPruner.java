@@ -0,0 +1,154 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.PublicKey;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.DSAKey;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Finds trusted certificates which are useless as trust anchors, so PKIX path building has fewer candidates to consider.
+ * See {@link TrustedCertificatesPruningPolicy} for the available rules.
+ */
+final class TrustedCertificatesPruner {
+    private TrustedCertificatesPruner() {
+    }
+
+    /**
+     * @param certificates distinct certificates
+     * @param now time to check certificate validity against
+     * @return certificates to prune in the order of {@code certificates}
+     */
+    static List<TrustedCertificatesPruningResult.PrunedCertificate> prune(@NotNull Collection<X509Certificate> certificates,
+                                                                          @NotNull TrustedCertificatesPruningPolicy policy,
+                                                                          @NotNull Date now) {
+        List<TrustedCertificatesPruningResult.PrunedCertificate> pruned = new ArrayList<>();
+        List<X509Certificate> candidates = new ArrayList<>(certificates.size());
+
+        for (X509Certificate certificate : certificates) {
+            TrustedCertificatesPruningResult.PrunedCertificate reason = checkCertificate(certificate, policy, now);
+            if (reason != null) {
+                pruned.add(reason);
+            } else {
+                candidates.add(certificate);
+            }
+        }
+
+        if (policy.isCollapseDuplicateKeys()) {
+            collapseDuplicateKeys(candidates, now, pruned);
+        }
+
+        return pruned;
+    }
+
+    private static TrustedCertificatesPruningResult.PrunedCertificate checkCertificate(@NotNull X509Certificate certificate,
+                                                                                      @NotNull TrustedCertificatesPruningPolicy policy,
+                                                                                      @NotNull Date now) {
+        if (policy.isRemoveInvalidAtLoadTime()) {
+            try {
+                certificate.checkValidity(now);
+            } catch (CertificateExpiredException e) {
+                return new TrustedCertificatesPruningResult.PrunedCertificate(certificate,
+                        TrustedCertificatesPruningResult.Reason.EXPIRED, "expired at " + certificate.getNotAfter().toInstant());
+            } catch (CertificateNotYetValidException e) {
+                return new TrustedCertificatesPruningResult.PrunedCertificate(certificate,
+                        TrustedCertificatesPruningResult.Reason.NOT_YET_VALID, "valid from " + certificate.getNotBefore().toInstant());
+            }
+        }
+
+        PublicKey publicKey = certificate.getPublicKey();
+        int minimumKeySize = policy.getMinimumKeySize(publicKey.getAlgorithm());
+        if (minimumKeySize > 0) {
+            int keySize = getKeySize(publicKey);
+            if (keySize > 0 && keySize < minimumKeySize) {
+                return new TrustedCertificatesPruningResult.PrunedCertificate(certificate,
+                        TrustedCertificatesPruningResult.Reason.WEAK_KEY,
+                        publicKey.getAlgorithm() + " " + keySize + " bits, at least " + minimumKeySize + " required");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return key size in bits or -1 if it's unknown
+     */
+    static int getKeySize(@NotNull PublicKey publicKey) {
+        if (publicKey instanceof RSAKey) {
+            return ((RSAKey) publicKey).getModulus().bitLength();
+        }
+        if (publicKey instanceof ECKey) {
+            return ((ECKey) publicKey).getParams().getOrder().bitLength();
+        }
+        if (publicKey instanceof DSAKey && ((DSAKey) publicKey).getParams() != null) {
+            return ((DSAKey) publicKey).getParams().getP().bitLength();
+        }
+        return -1;
+    }
+
+    private static void collapseDuplicateKeys(@NotNull List<X509Certificate> certificates,
+                                              @NotNull Date now,
+                                              @NotNull List<TrustedCertificatesPruningResult.PrunedCertificate> pruned) {
+        Comparator<X509Certificate> preference = preference(now);
+        Map<SubjectAndKey, X509Certificate> best = new HashMap<>();
+        for (X509Certificate certificate : certificates) {
+            best.merge(new SubjectAndKey(certificate), certificate, (a, b) -> preference.compare(a, b) >= 0 ? a : b);
+        }
+
+        for (X509Certificate certificate : certificates) {
+            X509Certificate winner = best.get(new SubjectAndKey(certificate));
+            if (winner != certificate) {
+                pruned.add(new TrustedCertificatesPruningResult.PrunedCertificate(certificate,
+                        TrustedCertificatesPruningResult.Reason.DUPLICATE_KEY,
+                        "superseded by a certificate valid until " + winner.getNotAfter().toInstant()));
+            }
+        }
+    }
+
+    /**
+     * Prefers certificates valid at {@code now}, then ones expiring later, then ones issued later
+     */
+    private static Comparator<X509Certificate> preference(@NotNull Date now) {
+        return Comparator
+                .comparing((X509Certificate c) -> !now.before(c.getNotBefore()) && !now.after(c.getNotAfter()))
+                .thenComparing(X509Certificate::getNotAfter)
+                .thenComparing(X509Certificate::getNotBefore);
+    }
+
+    private static final class SubjectAndKey {
+        private final X500Principal subject;
+        private final byte[] publicKey;
+
+        SubjectAndKey(@NotNull X509Certificate certificate) {
+            this.subject = certificate.getSubjectX500Principal();
+            this.publicKey = certificate.getPublicKey().getEncoded();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SubjectAndKey)) return false;
+            SubjectAndKey that = (SubjectAndKey) o;
+            return subject.equals(that.subject) && Arrays.equals(publicKey, that.publicKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subject, Arrays.hashCode(publicKey));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable configuration of {@link NativeTrustedCertificatesSnapshot#prune}.
+ * Start from {@link #DEFAULT} or {@link #NONE} and adjust with {@code with*} methods.
+ */
+public final class TrustedCertificatesPruningPolicy {
+    /**
+     * Removes expired and not yet valid certificates, collapses duplicates sharing subject and key,
+     * removes RSA and DSA keys shorter than 2048 bits and EC keys shorter than 256 bits
+     */
+    public static final TrustedCertificatesPruningPolicy DEFAULT = new TrustedCertificatesPruningPolicy(
+            true, true, Map.of("RSA", 2048, "DSA", 2048, "EC", 256));
+
+    /**
+     * Does not prune anything
+     */
+    public static final TrustedCertificatesPruningPolicy NONE = new TrustedCertificatesPruningPolicy(
+            false, false, Collections.emptyMap());
+
+    private final boolean removeInvalidAtLoadTime;
+    private final boolean collapseDuplicateKeys;
+    private final Map<String, Integer> minimumKeySizes;
+
+    private TrustedCertificatesPruningPolicy(boolean removeInvalidAtLoadTime,
+                                             boolean collapseDuplicateKeys,
+                                             @NotNull Map<String, Integer> minimumKeySizes) {
+        this.removeInvalidAtLoadTime = removeInvalidAtLoadTime;
+        this.collapseDuplicateKeys = collapseDuplicateKeys;
+        this.minimumKeySizes = minimumKeySizes;
+    }
+
+    /**
+     * @param remove whether to remove certificates which are expired or not yet valid at the time of pruning
+     */
+    public TrustedCertificatesPruningPolicy withRemoveInvalidAtLoadTime(boolean remove) {
+        return new TrustedCertificatesPruningPolicy(remove, collapseDuplicateKeys, minimumKeySizes);
+    }
+
+    /**
+     * @param collapse whether to keep only the best certificate among ones with the same subject and public key,
+     *                 e.g. a root re-issued with a new validity period
+     */
+    public TrustedCertificatesPruningPolicy withCollapseDuplicateKeys(boolean collapse) {
+        return new TrustedCertificatesPruningPolicy(removeInvalidAtLoadTime, collapse, minimumKeySizes);
+    }
+
+    /**
+     * @param algorithm public key algorithm as returned by {@link java.security.PublicKey#getAlgorithm()}, e.g. {@code RSA}
+     * @param bits minimal allowed key size, 0 to allow any size
+     */
+    public TrustedCertificatesPruningPolicy withMinimumKeySize(@NotNull String algorithm, int bits) {
+        if (bits < 0) {
+            throw new IllegalArgumentException("Key size must not be negative: " + bits);
+        }
+
+        Map<String, Integer> sizes = new HashMap<>(minimumKeySizes);
+        if (bits == 0) {
+            sizes.remove(algorithm.toUpperCase(Locale.ENGLISH));
+        } else {
+            sizes.put(algorithm.toUpperCase(Locale.ENGLISH), bits);
+        }
+        return new TrustedCertificatesPruningPolicy(removeInvalidAtLoadTime, collapseDuplicateKeys, Collections.unmodifiableMap(sizes));
+    }
+
+    public boolean isRemoveInvalidAtLoadTime() {
+        return removeInvalidAtLoadTime;
+    }
+
+    public boolean isCollapseDuplicateKeys() {
+        return collapseDuplicateKeys;
+    }
+
+    /**
+     * @return minimal allowed key size for the algorithm or 0 if any size is allowed
+     */
+    public int getMinimumKeySize(@NotNull String algorithm) {
+        return minimumKeySizes.getOrDefault(algorithm.toUpperCase(Locale.ENGLISH), 0);
+    }
+
+    @Override
+    public String toString() {
+        return "TrustedCertificatesPruningPolicy{removeInvalidAtLoadTime=" + removeInvalidAtLoadTime +
+                ", collapseDuplicateKeys=" + collapseDuplicateKeys +
+                ", minimumKeySizes=" + minimumKeySizes + "}";
+    }
+}
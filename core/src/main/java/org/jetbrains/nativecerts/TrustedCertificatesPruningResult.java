@@ -0,0 +1,81 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link NativeTrustedCertificatesSnapshot#prune}: a snapshot without the pruned certificates
+ * and a report on the pruned ones
+ */
+public final class TrustedCertificatesPruningResult {
+    public enum Reason {
+        EXPIRED,
+        NOT_YET_VALID,
+        DUPLICATE_KEY,
+        WEAK_KEY,
+    }
+
+    public static final class PrunedCertificate {
+        private final X509Certificate certificate;
+        private final Reason reason;
+        private final String details;
+
+        PrunedCertificate(@NotNull X509Certificate certificate, @NotNull Reason reason, @NotNull String details) {
+            this.certificate = certificate;
+            this.reason = reason;
+            this.details = details;
+        }
+
+        public X509Certificate getCertificate() {
+            return certificate;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return human-readable explanation, e.g. an expiration date
+         */
+        public String getDetails() {
+            return details;
+        }
+
+        @Override
+        public String toString() {
+            return reason + " " + certificate.getSubjectX500Principal() + ": " + details;
+        }
+    }
+
+    private final NativeTrustedCertificatesSnapshot snapshot;
+    private final List<PrunedCertificate> pruned;
+
+    TrustedCertificatesPruningResult(@NotNull NativeTrustedCertificatesSnapshot snapshot, @NotNull List<PrunedCertificate> pruned) {
+        this.snapshot = snapshot;
+        this.pruned = Collections.unmodifiableList(pruned);
+    }
+
+    /**
+     * @return snapshot with the same sources, but without pruned certificates
+     */
+    public NativeTrustedCertificatesSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public List<PrunedCertificate> getPruned() {
+        return pruned;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder message = new StringBuilder();
+        message.append(pruned.size()).append(" certificates were pruned, ").append(snapshot.size()).append(" retained");
+        for (PrunedCertificate certificate : pruned) {
+            message.append("\n  ").append(certificate);
+        }
+        return message.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Read-only set of SHA-256 certificate fingerprints for high-rate membership checks, e.g. on every TLS connection.
+ * Lookups do not allocate: 64-bit fingerprint prefixes live in a primitive open-addressing table,
+ * a prefix match is confirmed by comparing the full fingerprint.
+ * <p>
+ * Build it once per snapshot via {@link #of(NativeTrustedCertificatesSnapshot)}. Thread-safe.
+ * </p>
+ */
+public final class TrustedFingerprintTable {
+    private static final int FINGERPRINT_LENGTH = NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH;
+
+    private static final ThreadLocal<Digest> digests = ThreadLocal.withInitial(Digest::new);
+
+    private final byte[] fingerprints;
+    private final long[] prefixes;
+    // index of the fingerprint plus one, zero for an empty slot
+    private final int[] slots;
+    private final int mask;
+    private final int size;
+
+    TrustedFingerprintTable(@NotNull byte[] fingerprints) {
+        this.fingerprints = fingerprints;
+        this.size = fingerprints.length / FINGERPRINT_LENGTH;
+
+        // load factor is at most 0.5, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+        this.prefixes = new long[capacity];
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < size; i++) {
+            long prefix = prefix(fingerprints, i * FINGERPRINT_LENGTH);
+            int slot = slot(prefix);
+            while (slots[slot] != 0) {
+                if (prefixes[slot] == prefix && equalFingerprints(fingerprints, slots[slot] - 1, fingerprints, i * FINGERPRINT_LENGTH)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            prefixes[slot] = prefix;
+            slots[slot] = i + 1;
+        }
+    }
+
+    public static TrustedFingerprintTable of(@NotNull NativeTrustedCertificatesSnapshot snapshot) {
+        return new TrustedFingerprintTable(snapshot.getFingerprints());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param der DER-encoded certificate
+     * @return {@code true} if the SHA-256 fingerprint of {@code der} is in the table
+     */
+    public boolean contains(@NotNull byte[] der) {
+        Digest digest = digests.get();
+        return containsFingerprint(digest.sha256(der), 0);
+    }
+
+    /**
+     * @param sha256 buffer holding a SHA-256 fingerprint at {@code offset}
+     * @return {@code true} if the fingerprint is in the table
+     */
+    public boolean containsFingerprint(@NotNull byte[] sha256, int offset) {
+        if (offset < 0 || offset + FINGERPRINT_LENGTH > sha256.length) {
+            throw new IllegalArgumentException("SHA-256 fingerprint does not fit into " + sha256.length + " bytes at offset " + offset);
+        }
+
+        long prefix = prefix(sha256, offset);
+        for (int slot = slot(prefix); slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (prefixes[slot] == prefix && equalFingerprints(fingerprints, slots[slot] - 1, sha256, offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prefix-only lookup for callers which keep just the first 64 bits of fingerprints, e.g. in pinning configurations.
+     * Without the full fingerprint nothing can be confirmed, but a false positive requires a 64-bit collision.
+     *
+     * @param fingerprintPrefix first 8 bytes of a SHA-256 fingerprint in big-endian order, see {@link #prefix(byte[], int)}
+     */
+    public boolean contains(long fingerprintPrefix) {
+        for (int slot = slot(fingerprintPrefix); slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (prefixes[slot] == fingerprintPrefix) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return first 8 bytes of the SHA-256 fingerprint at {@code offset} in big-endian order
+     */
+    public static long prefix(@NotNull byte[] sha256, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (sha256[offset + i] & 0xFF);
+        }
+        return result;
+    }
+
+    private int slot(long prefix) {
+        // SHA-256 bits are uniformly distributed already
+        return (int) (prefix ^ (prefix >>> 32)) & mask;
+    }
+
+    private static boolean equalFingerprints(byte[] fingerprints, int index, byte[] other, int otherOffset) {
+        int offset = index * FINGERPRINT_LENGTH;
+        for (int i = 0; i < FINGERPRINT_LENGTH; i++) {
+            if (fingerprints[offset + i] != other[otherOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Digest {
+        private final MessageDigest digest;
+        private final byte[] buffer = new byte[FINGERPRINT_LENGTH];
+
+        Digest() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        byte[] sha256(byte[] bytes) {
+            digest.update(bytes);
+            try {
+                digest.digest(buffer, 0, FINGERPRINT_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            return buffer;
+        }
+    }
+}
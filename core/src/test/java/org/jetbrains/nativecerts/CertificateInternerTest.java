@@ -0,0 +1,80 @@
+package org.jetbrains.nativecerts;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CertificateInternerTest {
+    private static List<X509Certificate> readBundle() throws Exception {
+        return NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+    }
+
+    // the standard provider keeps its own soft cache of parsed certificates, so use the one without it
+    private static final BouncyCastleProvider provider = new BouncyCastleProvider();
+
+    private static X509Certificate parse(byte[] bytes) {
+        try {
+            return NativeTrustedRootsInternalUtils.parseCertificate(bytes, CertificateFactory.getInstance("X.509", provider));
+        } catch (CertificateException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void sameEncodingSameInstance() throws Exception {
+        List<X509Certificate> first = readBundle();
+        List<X509Certificate> second = readBundle();
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertSame(first.get(i), second.get(i));
+        }
+
+        CertificateInterner interner = new CertificateInterner();
+        AtomicInteger parsed = new AtomicInteger();
+        byte[] der = first.get(0).getEncoded();
+        X509Certificate a = interner.intern(der, (bytes, fingerprint) -> {
+            Assert.assertArrayEquals(NativeTrustedRootsInternalUtils.sha256(bytes), fingerprint);
+            parsed.incrementAndGet();
+            return parse(bytes);
+        });
+        X509Certificate b = interner.intern(der.clone(), (bytes, fingerprint) -> {
+            parsed.incrementAndGet();
+            return parse(bytes);
+        });
+
+        Assert.assertSame(a, b);
+        Assert.assertEquals(1, parsed.get());
+        Assert.assertSame(a, interner.intern(first.get(0)));
+        Assert.assertSame(first.get(1), interner.intern(first.get(1)));
+        Assert.assertEquals(2, interner.size());
+    }
+
+    // a separate frame, so no certificate stays reachable from a local variable of the test method
+    private static void internBundle(CertificateInterner interner) throws Exception {
+        List<X509Certificate> interned = new ArrayList<>();
+        for (X509Certificate certificate : readBundle()) {
+            interned.add(interner.intern(certificate.getEncoded(), (bytes, fingerprint) -> parse(bytes)));
+        }
+        Assert.assertEquals(128, interner.size());
+        Assert.assertEquals(128, interned.size());
+    }
+
+    @Test
+    public void unreferencedCertificatesAreReleased() throws Exception {
+        CertificateInterner interner = new CertificateInterner();
+        internBundle(interner);
+
+        for (int i = 0; i < 50 && interner.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        Assert.assertEquals(0, interner.size());
+    }
+}
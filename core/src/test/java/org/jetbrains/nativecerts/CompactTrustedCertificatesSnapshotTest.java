@@ -0,0 +1,92 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Set;
+
+public class CompactTrustedCertificatesSnapshotTest {
+    private static NativeTrustedCertificatesSnapshot createSnapshot() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+
+        NativeTrustedCertificatesSnapshot.Builder builder = new NativeTrustedCertificatesSnapshot.Builder();
+        for (X509Certificate certificate : bundle) {
+            builder.visit("bundle", certificate);
+        }
+        for (X509Certificate certificate : bundle.subList(0, 10)) {
+            builder.visit("tls", certificate, Set.of(TrustedCertificatePurpose.SERVER_AUTH));
+        }
+        builder.addSource("empty");
+        return builder.build();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        NativeTrustedCertificatesSnapshot snapshot = createSnapshot();
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            CompactTrustedCertificatesSnapshot compact = CompactTrustedCertificatesSnapshot.of(snapshot, offHeap);
+            Assert.assertEquals(offHeap, compact.isOffHeap());
+            Assert.assertEquals(128, compact.size());
+            Assert.assertEquals(snapshot.getSources(), compact.getSources());
+            Assert.assertArrayEquals(snapshot.getFingerprints(), compact.getFingerprints());
+            Assert.assertEquals(snapshot.getCertificates(), compact.getCertificates());
+            Assert.assertEquals(snapshot.getCertificates("tls"), compact.getCertificates("tls"));
+
+            NativeTrustedCertificatesSnapshot materialized = compact.toSnapshot();
+            Assert.assertTrue(NativeTrustedCertificatesSnapshot.diff(snapshot, materialized).isEmpty());
+            Assert.assertEquals(snapshot.getSources(), materialized.getSources());
+            Assert.assertEquals(snapshot.getCertificates("tls"), materialized.getCertificates("tls"));
+            for (X509Certificate certificate : snapshot.getCertificates()) {
+                Assert.assertEquals(snapshot.getPurposes(certificate), materialized.getPurposes(certificate));
+            }
+        }
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        NativeTrustedCertificatesSnapshot snapshot = createSnapshot();
+        CompactTrustedCertificatesSnapshot compact = CompactTrustedCertificatesSnapshot.of(snapshot);
+
+        int arenaSize = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            X509Certificate certificate = snapshot.getCertificates().get(i);
+            Assert.assertEquals(i, compact.indexOf(certificate));
+            Assert.assertArrayEquals(certificate.getEncoded(), compact.getEncoded(i));
+            Assert.assertEquals(snapshot.getPurposes(certificate), compact.getPurposes(i));
+            arenaSize += certificate.getEncoded().length;
+        }
+        Assert.assertEquals(arenaSize, compact.getArenaSize());
+
+        X509Certificate certificate = snapshot.getCertificates().get(0);
+        Assert.assertFalse(CompactTrustedCertificatesSnapshot.of(NativeTrustedCertificatesSnapshot.empty()).contains(certificate));
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        NativeTrustedCertificatesSnapshot snapshot = createSnapshot();
+        CompactTrustedCertificatesSnapshot compact = CompactTrustedCertificatesSnapshot.of(snapshot);
+
+        ByteBuffer buffer = ByteBuffer.allocate(compact.getSerializedSize());
+        compact.writeTo(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        CompactTrustedCertificatesSnapshot read = CompactTrustedCertificatesSnapshot.readFrom(buffer);
+        Assert.assertEquals(compact.getArenaSize(), read.getArenaSize());
+        Assert.assertArrayEquals(compact.getFingerprints(), read.getFingerprints());
+        Assert.assertTrue(NativeTrustedCertificatesSnapshot.diff(snapshot, read.toSnapshot()).isEmpty());
+        Assert.assertEquals(snapshot.getCertificates("tls"), read.getCertificates("tls"));
+
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        try {
+            CompactTrustedCertificatesSnapshot.readFrom(buffer);
+            Assert.fail("Truncated data must be rejected");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
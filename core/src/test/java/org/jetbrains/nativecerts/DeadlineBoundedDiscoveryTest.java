@@ -0,0 +1,195 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeadlineBoundedDiscoveryTest {
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    @Test
+    public void partialResultIsCompletedInBackground() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        CountDownLatch release = new CountDownLatch(1);
+        FakeProvider fast = new FakeProvider("fast", bundle.subList(0, 10), null);
+        SlowProvider slow = new SlowProvider("slow", bundle.subList(10, 30), release);
+        FakeProvider failing = new FakeProvider("failing", bundle.subList(30, 40), new IllegalStateException("expected"));
+
+        SingleFlight<NativeTrustedCertificatesSnapshot> snapshots = new SingleFlight<>(NativeTrustedCertificatesSnapshot::empty);
+        DeadlineBoundedDiscovery discovery = new DeadlineBoundedDiscovery(List.of(fast, slow, failing), snapshots);
+
+        NativeTrustedCertificatesDiscoveryResult result = discovery.discover(Duration.ofMillis(200));
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(List.of(SlowProvider.class.getName()), result.getPendingProviders());
+        // certificates visited before the failure are kept
+        Assert.assertEquals(List.of("fast", "failing"), new ArrayList<>(result.getSnapshot().getSources()));
+        Assert.assertEquals(11, result.getSnapshot().size());
+        Assert.assertFalse(result.getCompleteSnapshot().isDone());
+        Assert.assertNull(snapshots.getLatest());
+
+        // the hung provider is not started again
+        NativeTrustedCertificatesDiscoveryResult second = discovery.discover(Duration.ZERO);
+        Assert.assertFalse(second.isComplete());
+        Assert.assertSame(result.getCompleteSnapshot(), second.getCompleteSnapshot());
+        Assert.assertEquals(1, slow.visits.get());
+
+        release.countDown();
+        NativeTrustedCertificatesSnapshot complete = result.getCompleteSnapshot().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of("fast", "slow", "failing"), new ArrayList<>(complete.getSources()));
+        Assert.assertEquals(31, complete.size());
+        Assert.assertSame(complete, snapshots.getLatest());
+
+        // the next call starts a new discovery
+        NativeTrustedCertificatesDiscoveryResult third = discovery.discover(Duration.ofSeconds(10));
+        Assert.assertTrue(third.isComplete());
+        Assert.assertEquals(31, third.getSnapshot().size());
+        Assert.assertSame(third.getSnapshot(), third.getCompleteSnapshot().getNow(null));
+        Assert.assertSame(third.getSnapshot(), snapshots.getLatest());
+        Assert.assertEquals(2, slow.visits.get());
+    }
+
+    @Test
+    public void partialResultHasCompletedSourcesOfPendingProviders() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        CountDownLatch hung = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NativeTrustedCertificatesProvider provider = new NativeTrustedCertificatesProvider() {
+            @Override
+            public boolean isSupported() {
+                return true;
+            }
+
+            @Override
+            public boolean visit(@NotNull TrustedCertificateVisitor visitor) throws Exception {
+                // reported as complete
+                for (X509Certificate certificate : bundle.subList(0, 5)) {
+                    visitor.visit("reported", certificate);
+                }
+                visitor.sourceCompleted("reported");
+                // complete once the next source starts
+                for (X509Certificate certificate : bundle.subList(5, 10)) {
+                    visitor.visit("followed", certificate);
+                }
+                visitor.visit("hung", bundle.get(10));
+                hung.countDown();
+                release.await();
+                visitor.visit("hung", bundle.get(11));
+                return true;
+            }
+        };
+
+        SingleFlight<NativeTrustedCertificatesSnapshot> snapshots = new SingleFlight<>(NativeTrustedCertificatesSnapshot::empty);
+        DeadlineBoundedDiscovery discovery = new DeadlineBoundedDiscovery(List.of(provider), snapshots);
+
+        NativeTrustedCertificatesDiscoveryResult result;
+        try {
+            NativeTrustedCertificatesDiscoveryResult first = discovery.discover(Duration.ZERO);
+            Assert.assertTrue(hung.await(10, TimeUnit.SECONDS));
+            // joins the discovery still running in the background
+            result = discovery.discover(Duration.ZERO);
+            Assert.assertSame(first.getCompleteSnapshot(), result.getCompleteSnapshot());
+        } finally {
+            release.countDown();
+        }
+
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(List.of("reported", "followed"), new ArrayList<>(result.getSnapshot().getSources()));
+        Assert.assertEquals(10, result.getSnapshot().size());
+
+        NativeTrustedCertificatesSnapshot complete = result.getCompleteSnapshot().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of("reported", "followed", "hung"), new ArrayList<>(complete.getSources()));
+        Assert.assertEquals(12, complete.size());
+    }
+
+    @Test
+    public void noSupportedProviders() {
+        DeadlineBoundedDiscovery discovery = new DeadlineBoundedDiscovery(List.of(), new SingleFlight<>(NativeTrustedCertificatesSnapshot::empty));
+        NativeTrustedCertificatesDiscoveryResult result = discovery.discover(Duration.ofSeconds(1));
+        Assert.assertTrue(result.isComplete());
+        Assert.assertTrue(result.getSnapshot().isEmpty());
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void backgroundCompletionDoesNotReplaceNewerSnapshot() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        CountDownLatch release = new CountDownLatch(1);
+        SlowProvider slow = new SlowProvider("slow", bundle.subList(0, 10), release);
+
+        NativeTrustedCertificatesSnapshot newer = NativeTrustedCertificatesSnapshot.of(Map.of("newer", bundle.subList(10, 20)));
+        SingleFlight<NativeTrustedCertificatesSnapshot> snapshots = new SingleFlight<>(() -> newer);
+        DeadlineBoundedDiscovery discovery = new DeadlineBoundedDiscovery(List.of(slow), snapshots);
+
+        NativeTrustedCertificatesDiscoveryResult result = discovery.discover(Duration.ZERO);
+        Assert.assertFalse(result.isComplete());
+
+        // a load started after the background discovery completes first
+        Assert.assertSame(newer, snapshots.load());
+
+        release.countDown();
+        NativeTrustedCertificatesSnapshot complete = result.getCompleteSnapshot().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(10, complete.size());
+        Assert.assertSame(newer, snapshots.getLatest());
+    }
+
+    private static class FakeProvider implements NativeTrustedCertificatesProvider {
+        final String source;
+        final List<X509Certificate> certificates;
+        final RuntimeException failure;
+        final AtomicInteger visits = new AtomicInteger();
+
+        FakeProvider(String source, List<X509Certificate> certificates, RuntimeException failure) {
+            this.source = source;
+            this.certificates = certificates;
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return true;
+        }
+
+        @Override
+        public boolean visit(@NotNull TrustedCertificateVisitor visitor) throws Exception {
+            visits.incrementAndGet();
+            beforeVisit();
+            for (X509Certificate certificate : certificates) {
+                if (!visitor.visit(source, certificate)) {
+                    return false;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            return true;
+        }
+
+        void beforeVisit() throws InterruptedException {
+        }
+    }
+
+    private static final class SlowProvider extends FakeProvider {
+        private final CountDownLatch release;
+
+        SlowProvider(String source, List<X509Certificate> certificates, CountDownLatch release) {
+            super(source, certificates, null);
+            this.release = release;
+        }
+
+        @Override
+        void beforeVisit() throws InterruptedException {
+            release.await();
+        }
+    }
+}
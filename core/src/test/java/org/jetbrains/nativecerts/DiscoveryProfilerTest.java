@@ -0,0 +1,64 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class DiscoveryProfilerTest {
+    @Test
+    public void percentile() {
+        long[] values = {5, 1, 4, 2, 3, 6, 7, 8, 9, 10};
+        Assert.assertEquals(5, DiscoveryProfiler.percentile(values, 50));
+        Assert.assertEquals(9, DiscoveryProfiler.percentile(values, 90));
+        Assert.assertEquals(10, DiscoveryProfiler.percentile(values, 99));
+        Assert.assertEquals(10, DiscoveryProfiler.percentile(values, 100));
+        Assert.assertEquals(7, DiscoveryProfiler.percentile(new long[]{7}, 50));
+    }
+
+    @Test
+    public void sourcesStatistics() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Logger logger = Logger.getLogger(DiscoveryProfilerTest.class.getName());
+
+        DiscoveryProfiler.Profile profile = DiscoveryProfiler.profile(3, visitor -> {
+            for (X509Certificate certificate : bundle.subList(0, 100)) {
+                visitor.visit("first", certificate);
+            }
+            for (X509Certificate certificate : bundle.subList(90, 128)) {
+                visitor.visit("second \"quoted\"", certificate);
+            }
+            logger.warning("a warning");
+            return true;
+        });
+
+        Assert.assertEquals(3, profile.iterations);
+        Assert.assertEquals(128, profile.distinctCertificates);
+        Assert.assertEquals(3, profile.warnings);
+        Assert.assertEquals(2, profile.sources.size());
+
+        DiscoveryProfiler.SourceStats first = profile.sources.get(0);
+        Assert.assertEquals("first", first.source);
+        Assert.assertEquals(100, first.certificates);
+        Assert.assertEquals(0, first.duplicates);
+        Assert.assertEquals(3, first.getNanos().length);
+        Assert.assertNull(first.getFileBytes());
+
+        DiscoveryProfiler.SourceStats second = profile.sources.get(1);
+        Assert.assertEquals(38, second.certificates);
+        Assert.assertEquals(10, second.duplicates);
+        long derBytes = 0;
+        for (X509Certificate certificate : bundle.subList(90, 128)) {
+            derBytes += certificate.getEncoded().length;
+        }
+        Assert.assertEquals(derBytes, second.derBytes);
+
+        String json = profile.toJson();
+        Assert.assertTrue(json, json.startsWith("{\"os\":"));
+        Assert.assertTrue(json, json.contains("\"source\":\"second \\\"quoted\\\"\",\"certificates\":38,\"duplicates\":10,"));
+        Assert.assertTrue(json, json.contains("\"fileBytes\":null"));
+        Assert.assertTrue(json, json.contains("\"warnings\":3"));
+    }
+}
@@ -0,0 +1,137 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.nativecerts.fixtures.SyntheticCertificates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.security.KeyPair;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LayeredTrustRegistryTest {
+    private static final String AUTH_TYPE = "ECDHE_ECDSA";
+
+    @Test
+    public void overlays() throws Exception {
+        Ca publicCa = new Ca("Public Root");
+        Ca otherCa = new Ca("Other Public Root");
+        Ca privateCa = new Ca("Private Root");
+        LayeredTrustRegistry registry = new LayeredTrustRegistry(NativeTrustedCertificatesSnapshot.of(
+                Map.of("system", List.of(publicCa.certificate, otherCa.certificate))));
+
+        X509ExtendedTrustManager first = registry.getTrustManager("first");
+        X509ExtendedTrustManager second = registry.getTrustManager("second");
+        assertTrusted(first, publicCa.leaf);
+        assertTrusted(second, publicCa.leaf);
+        assertNotTrusted(first, privateCa.leaf);
+
+        registry.addCertificates("first", List.of(privateCa.certificate));
+        registry.removeCertificates("second", List.of(publicCa.certificate));
+
+        // trust managers created before the change follow it
+        assertTrusted(first, privateCa.leaf);
+        assertTrusted(first, publicCa.leaf);
+        assertNotTrusted(second, privateCa.leaf);
+        assertNotTrusted(second, publicCa.leaf);
+        assertNotTrusted(second, publicCa.leaf, publicCa.certificate);
+        assertTrusted(second, otherCa.leaf);
+        Assert.assertEquals(Set.of("first", "second"), registry.getTenants());
+
+        NativeTrustedCertificatesSnapshot snapshot = registry.getSnapshot("first");
+        Assert.assertEquals(List.of("system", LayeredTrustRegistry.TENANT_SOURCE_PREFIX + "first"), new ArrayList<>(snapshot.getSources()));
+        Assert.assertEquals(3, snapshot.size());
+        Assert.assertEquals(List.of(otherCa.certificate), registry.getSnapshot("second").getCertificates());
+        Assert.assertEquals(3, first.getAcceptedIssuers().length);
+
+        // adding a distrusted certificate back trusts it again
+        registry.addCertificates("second", List.of(publicCa.certificate));
+        assertTrusted(second, publicCa.leaf);
+        registry.resetTenant("first");
+        assertNotTrusted(first, privateCa.leaf);
+        Assert.assertEquals(Set.of("second"), registry.getTenants());
+    }
+
+    @Test
+    public void baseRefresh() throws Exception {
+        Ca oldCa = new Ca("Old Root");
+        Ca newCa = new Ca("New Root");
+        Ca privateCa = new Ca("Private Root");
+        LayeredTrustRegistry registry = new LayeredTrustRegistry(NativeTrustedCertificatesSnapshot.of(Map.of("system", List.of(oldCa.certificate))));
+        registry.addCertificates("tenant", List.of(privateCa.certificate));
+        X509ExtendedTrustManager trustManager = registry.getTrustManager("tenant");
+        assertTrusted(trustManager, oldCa.leaf);
+
+        registry.setBase(NativeTrustedCertificatesSnapshot.of(Map.of("system", List.of(newCa.certificate))));
+        assertNotTrusted(trustManager, oldCa.leaf);
+        assertTrusted(trustManager, newCa.leaf);
+        assertTrusted(trustManager, privateCa.leaf);
+
+        registry.setBase(NativeTrustedCertificatesSnapshot.empty());
+        assertNotTrusted(trustManager, newCa.leaf);
+        assertTrusted(trustManager, privateCa.leaf);
+        assertNotTrusted(registry.getTrustManager("another"), privateCa.leaf);
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        List<X509Certificate> anchors = SyntheticCertificates.createAnchors("Tenant Root", 64);
+        LayeredTrustRegistry registry = new LayeredTrustRegistry(NativeTrustedCertificatesSnapshot.empty());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int tenant = 0; tenant < 16; tenant++) {
+                        for (X509Certificate anchor : anchors) {
+                            registry.addCertificates("tenant-" + tenant, List.of(anchor));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int tenant = 0; tenant < 16; tenant++) {
+            Assert.assertEquals(64, registry.getSnapshot("tenant-" + tenant).size());
+        }
+    }
+
+    private static void assertTrusted(X509ExtendedTrustManager trustManager, X509Certificate... chain) throws CertificateException {
+        trustManager.checkServerTrusted(chain, AUTH_TYPE);
+    }
+
+    private static void assertNotTrusted(X509ExtendedTrustManager trustManager, X509Certificate... chain) {
+        try {
+            trustManager.checkServerTrusted(chain, AUTH_TYPE);
+        } catch (CertificateException e) {
+            return;
+        }
+        Assert.fail(chain[0].getSubjectX500Principal() + " must not be trusted");
+    }
+
+    private static final class Ca {
+        final X509Certificate certificate;
+        final X509Certificate leaf;
+
+        Ca(String name) {
+            KeyPair keyPair = SyntheticCertificates.generateKeyPair();
+            certificate = SyntheticCertificates.createCaCertificate(name, keyPair);
+            leaf = SyntheticCertificates.createCertificate("server." + name.replace(' ', '-').toLowerCase(Locale.ROOT),
+                    SyntheticCertificates.generateKeyPair(), name, keyPair, false, "localhost");
+        }
+    }
+}
@@ -2,12 +2,16 @@ package org.jetbrains.nativecerts;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
@@ -58,6 +62,20 @@ public class NativeCertsTestUtil {
         }
     }
 
+    public static List<X509Certificate> readCertificateBundle(@NotNull String resourceName) {
+        try {
+            List<X509Certificate> result = new ArrayList<>();
+            CertificateFactory factory = CertificateFactory.getInstance("X.509");
+            for (Certificate certificate : factory.generateCertificates(new ByteArrayInputStream(getResourceBytes(resourceName)))) {
+                // parse again to get interned instances like certificate sources do
+                result.add(NativeTrustedRootsInternalUtils.parseCertificate(certificate.getEncoded()));
+            }
+            return result;
+        } catch (CertificateException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static void executeProcess(List<String> command) {
         int rc = executeProcessAndGetExitCode(command);
         if (rc != 0) {
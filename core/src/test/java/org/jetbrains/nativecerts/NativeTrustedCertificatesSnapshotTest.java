@@ -0,0 +1,148 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class NativeTrustedCertificatesSnapshotTest {
+    private static List<X509Certificate> readBundle() {
+        return NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+    }
+
+    @Test
+    public void sortedAndDistinct() {
+        List<X509Certificate> bundle = readBundle();
+
+        Map<String, List<X509Certificate>> sources = new LinkedHashMap<>();
+        sources.put("a", bundle);
+        sources.put("b", bundle.subList(0, 10));
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(sources);
+
+        Assert.assertEquals(128, snapshot.size());
+        Assert.assertEquals(Set.of(bundle.toArray()), Set.of(snapshot.getCertificates().toArray()));
+        Assert.assertEquals(List.of("a", "b"), List.copyOf(snapshot.getSources()));
+        Assert.assertEquals(10, snapshot.getCertificates("b").size());
+        Assert.assertTrue(snapshot.getCertificates("c").isEmpty());
+
+        byte[] fingerprints = snapshot.getFingerprints();
+        Assert.assertEquals(128 * NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH, fingerprints.length);
+        for (int i = 1; i < snapshot.size(); i++) {
+            Assert.assertTrue(NativeTrustedCertificatesSnapshot.compareFingerprints(fingerprints, i - 1, fingerprints, i) < 0);
+        }
+    }
+
+    @Test
+    public void diff() {
+        List<X509Certificate> bundle = readBundle();
+
+        Map<String, List<X509Certificate>> before = new LinkedHashMap<>();
+        before.put("/etc/ssl/certs/ca-certificates.crt", bundle.subList(0, 100));
+        before.put("/etc/ssl/certs/a.pem", bundle.subList(100, 101));
+        before.put("/etc/ssl/certs/b.pem", bundle.subList(101, 102));
+
+        Map<String, List<X509Certificate>> after = new LinkedHashMap<>();
+        after.put("/etc/ssl/certs/ca-certificates.crt", bundle.subList(1, 100));
+        after.put("/etc/ssl/certs/a.pem", bundle.subList(100, 101));
+        after.put("/etc/ssl/certs/c.pem", bundle.subList(101, 103));
+
+        NativeTrustedCertificatesDiff diff = NativeTrustedCertificatesSnapshot.diff(
+                NativeTrustedCertificatesSnapshot.of(before), NativeTrustedCertificatesSnapshot.of(after));
+
+        Assert.assertFalse(diff.isEmpty());
+        Assert.assertEquals(List.of(bundle.get(102)), diff.getAdded());
+        Assert.assertEquals(List.of(bundle.get(0)), diff.getRemoved());
+
+        Assert.assertEquals(Set.of("/etc/ssl/certs/ca-certificates.crt", "/etc/ssl/certs/b.pem", "/etc/ssl/certs/c.pem"), diff.getChangedSources().keySet());
+        Assert.assertEquals(List.of(bundle.get(0)), diff.getChangedSources().get("/etc/ssl/certs/ca-certificates.crt").getRemoved());
+        Assert.assertEquals(List.of(bundle.get(101)), diff.getChangedSources().get("/etc/ssl/certs/b.pem").getRemoved());
+        Assert.assertEquals(2, diff.getChangedSources().get("/etc/ssl/certs/c.pem").getAdded().size());
+    }
+
+    @Test
+    public void diffOfEqualSnapshots() {
+        List<X509Certificate> bundle = readBundle();
+        NativeTrustedCertificatesSnapshot a = NativeTrustedCertificatesSnapshot.of(Map.of("a", bundle));
+        NativeTrustedCertificatesSnapshot b = NativeTrustedCertificatesSnapshot.of(Map.of("a", readBundle()));
+
+        NativeTrustedCertificatesDiff diff = NativeTrustedCertificatesSnapshot.diff(a, b);
+        Assert.assertTrue(diff.isEmpty());
+        Assert.assertTrue(diff.getChangedSources().isEmpty());
+
+        Assert.assertEquals(128, NativeTrustedCertificatesSnapshot.diff(NativeTrustedCertificatesSnapshot.empty(), a).getAdded().size());
+    }
+
+    @Test
+    public void purposes() {
+        List<X509Certificate> bundle = readBundle();
+
+        NativeTrustedCertificatesSnapshot.Builder builder = new NativeTrustedCertificatesSnapshot.Builder();
+        builder.visit("tls", bundle.get(0), Set.of(TrustedCertificatePurpose.SERVER_AUTH));
+        builder.visit("tls", bundle.get(1), Set.of(TrustedCertificatePurpose.SERVER_AUTH));
+        builder.visit("email", bundle.get(1), Set.of(TrustedCertificatePurpose.EMAIL_PROTECTION));
+        builder.visit("any", bundle.get(2));
+        builder.addSource("empty");
+        NativeTrustedCertificatesSnapshot snapshot = builder.build();
+
+        Assert.assertEquals(List.of("tls", "email", "any", "empty"), List.copyOf(snapshot.getSources()));
+        Assert.assertEquals(Set.of(TrustedCertificatePurpose.SERVER_AUTH), snapshot.getPurposes(bundle.get(0)));
+        Assert.assertEquals(Set.of(TrustedCertificatePurpose.SERVER_AUTH, TrustedCertificatePurpose.EMAIL_PROTECTION), snapshot.getPurposes(bundle.get(1)));
+        Assert.assertEquals(TrustedCertificatePurpose.all(), snapshot.getPurposes(bundle.get(2)));
+        Assert.assertTrue(snapshot.getPurposes(bundle.get(3)).isEmpty());
+
+        Assert.assertEquals(Set.of(bundle.get(0), bundle.get(1), bundle.get(2)), Set.copyOf(snapshot.getCertificates(TrustedCertificatePurpose.SERVER_AUTH)));
+        Assert.assertEquals(Set.of(bundle.get(2)), Set.copyOf(snapshot.getCertificates(TrustedCertificatePurpose.CODE_SIGNING)));
+
+        NativeTrustedCertificatesSnapshot email = snapshot.forPurpose(TrustedCertificatePurpose.EMAIL_PROTECTION);
+        Assert.assertEquals(snapshot.getSources(), email.getSources());
+        Assert.assertTrue(email.getCertificates("tls").isEmpty());
+        Assert.assertEquals(List.of(bundle.get(1)), email.getCertificates("email"));
+    }
+
+    @Test
+    public void digest() throws Exception {
+        List<X509Certificate> bundle = readBundle();
+        List<X509Certificate> reversed = new ArrayList<>(bundle);
+        Collections.reverse(reversed);
+
+        Map<String, List<X509Certificate>> sources = new LinkedHashMap<>();
+        sources.put("b", reversed.subList(0, 100));
+        sources.put("a", reversed.subList(50, 128));
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(Map.of("a", bundle));
+        NativeTrustedCertificatesSnapshot sameSet = NativeTrustedCertificatesSnapshot.of(sources);
+        Assert.assertArrayEquals(snapshot.getDigest(), sameSet.getDigest());
+        Assert.assertEquals(32, snapshot.getDigest().length);
+
+        NativeTrustedCertificatesSnapshot withoutOne = NativeTrustedCertificatesSnapshot.of(Map.of("a", bundle.subList(1, 128)));
+        Assert.assertFalse(Arrays.equals(snapshot.getDigest(), withoutOne.getDigest()));
+
+        Assert.assertArrayEquals(NativeTrustedCertificatesSnapshot.of(Map.of("b", reversed.subList(0, 100))).getDigest(), sameSet.getDigest("b"));
+        Assert.assertNull(sameSet.getDigest("c"));
+
+        // RFC 6962 tree of three leaves: ((0, 1), 2)
+        NativeTrustedCertificatesSnapshot three = NativeTrustedCertificatesSnapshot.of(Map.of("a", bundle.subList(0, 3)));
+        byte[] fingerprints = three.getFingerprints();
+        byte[] leaf0 = sha256(new byte[]{0}, Arrays.copyOfRange(fingerprints, 0, 32));
+        byte[] leaf1 = sha256(new byte[]{0}, Arrays.copyOfRange(fingerprints, 32, 64));
+        byte[] leaf2 = sha256(new byte[]{0}, Arrays.copyOfRange(fingerprints, 64, 96));
+        Assert.assertArrayEquals(sha256(new byte[]{1}, sha256(new byte[]{1}, leaf0, leaf1), leaf2), three.getDigest());
+
+        Assert.assertArrayEquals(sha256(), NativeTrustedCertificatesSnapshot.empty().getDigest());
+    }
+
+    private static byte[] sha256(byte[]... parts) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        return digest.digest();
+    }
+}
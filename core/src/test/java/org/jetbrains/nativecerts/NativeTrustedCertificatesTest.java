@@ -0,0 +1,53 @@
+package org.jetbrains.nativecerts;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NativeTrustedCertificatesTest {
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    @Test
+    public void failedProviderDoesNotStopEnumeration() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        NativeTrustedCertificatesProvider failing = new NativeTrustedCertificatesProvider() {
+            @Override
+            public boolean isSupported() {
+                return true;
+            }
+
+            @Override
+            public boolean visit(@NotNull TrustedCertificateVisitor visitor) {
+                visitor.visit("failing", bundle.get(0));
+                throw new IllegalStateException("expected");
+            }
+        };
+        NativeTrustedCertificatesProvider working = new NativeTrustedCertificatesProvider() {
+            @Override
+            public boolean isSupported() {
+                return true;
+            }
+
+            @Override
+            public boolean visit(@NotNull TrustedCertificateVisitor visitor) {
+                return visitor.visit("working", bundle.get(1));
+            }
+        };
+
+        List<String> visited = new ArrayList<>();
+        Assert.assertFalse(NativeTrustedCertificates.visit(List.of(failing, working), (source, certificate) -> visited.add(source)));
+        Assert.assertEquals(List.of("failing", "working"), visited);
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+
+        visited.clear();
+        Assert.assertTrue(NativeTrustedCertificates.visit(List.of(working), (source, certificate) -> visited.add(source)));
+        Assert.assertEquals(List.of("working"), visited);
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+    }
+}
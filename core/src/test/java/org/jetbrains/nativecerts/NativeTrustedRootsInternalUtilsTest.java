@@ -0,0 +1,34 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+
+public class NativeTrustedRootsInternalUtilsTest {
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    @Test
+    public void test16kRSA() {
+        byte[] bytes = NativeCertsTestUtil.getResourceBytes("/16k-rsa-example-cert.der");
+        X509Certificate certificate = NativeTrustedRootsInternalUtils.parseCertificate(bytes);
+        // bundled JRE parses 16k
+        Assert.assertEquals("sun.security.x509.X509CertImpl", certificate.getClass().getName());
+        Assert.assertEquals("CN=www.example.com, O=Frank4DD, ST=Tokyo, C=JP", certificate.getSubjectDN().toString());
+    }
+
+    @Test
+    public void testSM2ParsingWithoutFallbackParser() {
+        // there is no bc-fallback module on the classpath of this module
+        byte[] bytes = NativeCertsTestUtil.getResourceBytes("/MeSince-SM2.cer");
+        long failed = NativeTrustedRootsInternalUtils.getCertificateParsingCounters().getFailed();
+        try {
+            NativeTrustedRootsInternalUtils.parseCertificate(bytes);
+            Assert.fail("SM2 certificate must not be parsed by the standard provider");
+        } catch (RuntimeException e) {
+            Assert.assertEquals(failed + 1, NativeTrustedRootsInternalUtils.getCertificateParsingCounters().getFailed());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class NativeTrustedRootsProviderTest {
+    private static KeyStore createKeyStore(AtomicReference<NativeTrustedCertificatesSnapshot> snapshot) throws Exception {
+        KeyStore keyStore = new KeyStore(new NativeRootsKeyStoreSpi(snapshot::get), new NativeTrustedRootsProvider(), NativeTrustedRootsProvider.KEY_STORE_TYPE) {
+        };
+        keyStore.load(null, null);
+        return keyStore;
+    }
+
+    @Test
+    public void entriesAreServedFromCurrentSnapshot() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        AtomicReference<NativeTrustedCertificatesSnapshot> snapshot =
+                new AtomicReference<>(NativeTrustedCertificatesSnapshot.of(Map.of("bundle", bundle.subList(0, 10))));
+        KeyStore keyStore = createKeyStore(snapshot);
+
+        Assert.assertEquals(10, keyStore.size());
+        for (String alias : Collections.list(keyStore.aliases())) {
+            Assert.assertTrue(keyStore.isCertificateEntry(alias));
+            Assert.assertFalse(keyStore.isKeyEntry(alias));
+            X509Certificate certificate = (X509Certificate) keyStore.getCertificate(alias);
+            Assert.assertEquals(NativeTrustedRootsInternalUtils.sha256hex(certificate.getEncoded()), alias);
+            Assert.assertEquals(alias, keyStore.getCertificateAlias(certificate));
+            Assert.assertTrue(keyStore.getEntry(alias, null) instanceof KeyStore.TrustedCertificateEntry);
+        }
+
+        Assert.assertNull(keyStore.getCertificateAlias(bundle.get(10)));
+        Assert.assertFalse(keyStore.containsAlias("not a fingerprint"));
+
+        // no reload is needed to see a new snapshot
+        snapshot.set(NativeTrustedCertificatesSnapshot.of(Map.of("bundle", bundle)));
+        Assert.assertEquals(128, keyStore.size());
+        Assert.assertNotNull(keyStore.getCertificateAlias(bundle.get(10)));
+
+        try {
+            keyStore.deleteEntry(keyStore.aliases().nextElement());
+            Assert.fail("Key store must be read-only");
+        } catch (KeyStoreException ignored) {
+        }
+
+        try {
+            keyStore.store(new ByteArrayOutputStream(), null);
+            Assert.fail("Key store must be read-only");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void trustManager() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        KeyStore keyStore = createKeyStore(new AtomicReference<>(NativeTrustedCertificatesSnapshot.of(Map.of("bundle", bundle))));
+
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init(keyStore);
+        X509TrustManager trustManager = (X509TrustManager) factory.getTrustManagers()[0];
+
+        Set<X509Certificate> acceptedIssuers = new HashSet<>(List.of(trustManager.getAcceptedIssuers()));
+        Assert.assertEquals(new HashSet<>(bundle), acceptedIssuers);
+    }
+
+    @Test
+    public void registeredProvider() throws Exception {
+        NativeTrustedRootsProvider.install();
+        NativeTrustedRootsProvider.install();
+
+        KeyStore keyStore = KeyStore.getInstance(NativeTrustedRootsProvider.KEY_STORE_TYPE);
+        Assert.assertEquals(NativeTrustedRootsProvider.NAME, keyStore.getProvider().getName());
+    }
+}
@@ -0,0 +1,197 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class SharedTrustedCertificatesSnapshotFileTest {
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    private static Supplier<NativeTrustedCertificatesSnapshot> discovery(AtomicInteger counter, List<X509Certificate> certificates) {
+        return () -> {
+            counter.incrementAndGet();
+            return NativeTrustedCertificatesSnapshot.of(Map.of("bundle", certificates));
+        };
+    }
+
+    @Test
+    public void processesShareDiscovery() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path file = temporaryFolder.getRoot().toPath().resolve("snapshot.bin");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        SharedTrustedCertificatesSnapshotFile first = new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE);
+        NativeTrustedCertificatesSnapshot written = first.load(discovery(discoveries, bundle));
+        Assert.assertEquals(1, discoveries.get());
+
+        SharedTrustedCertificatesSnapshotFile second = new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE);
+        NativeTrustedCertificatesSnapshot read = second.load(discovery(discoveries, bundle));
+        Assert.assertEquals(1, discoveries.get());
+        Assert.assertTrue(NativeTrustedCertificatesSnapshot.diff(written, read).isEmpty());
+        Assert.assertEquals(written.getSources(), read.getSources());
+        // the header did not change, nothing is parsed again
+        Assert.assertSame(read, second.load(discovery(discoveries, bundle)));
+
+        // a stale snapshot is refreshed, other processes pick up the new generation
+        SharedTrustedCertificatesSnapshotFile refresher = new SharedTrustedCertificatesSnapshotFile(file, -1);
+        refresher.load(discovery(discoveries, bundle.subList(0, 10)));
+        Assert.assertEquals(2, discoveries.get());
+        Assert.assertEquals(10, second.load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(10, first.load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(2, discoveries.get());
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void corruptedSnapshotIsRewritten() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path file = temporaryFolder.getRoot().toPath().resolve("snapshot.bin");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), SharedTrustedCertificatesSnapshotFile.HEADER_SIZE + 100);
+        }
+
+        Assert.assertEquals(128, new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(2, discoveries.get());
+        Assert.assertTrue(loggingRule.numberOfWarningsOrAbove() > 0);
+
+        Assert.assertEquals(128, new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(2, discoveries.get());
+    }
+
+    @Test
+    public void unusableFileFallsBackToLocalDiscovery() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path notDirectory = Files.createFile(temporaryFolder.getRoot().toPath().resolve("file"));
+        AtomicInteger discoveries = new AtomicInteger();
+
+        SharedTrustedCertificatesSnapshotFile shared = new SharedTrustedCertificatesSnapshotFile(notDirectory.resolve("snapshot.bin"), MAX_AGE);
+        Assert.assertEquals(128, shared.load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(1, discoveries.get());
+        Assert.assertTrue(loggingRule.numberOfWarningsOrAbove() > 0);
+    }
+
+    @Test
+    public void fileIsWritableByOwnerOnly() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        Assume.assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        Path file = directory.resolve("snapshot.bin");
+        new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle));
+        Assert.assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(file));
+        Assert.assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(directory.resolve("snapshot.bin.lock")));
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+
+        // anyone could have put trust anchors there
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-rw-"));
+        long size = Files.size(file);
+        Assert.assertEquals(10, new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle.subList(0, 10))).size());
+        Assert.assertEquals(2, discoveries.get());
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+        Assert.assertEquals(size, Files.size(file));
+    }
+
+    @Test
+    public void lockWritableByOthersIsRejected() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        Assume.assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        // anyone could hold it forever
+        Path lockFile = Files.createFile(directory.resolve("snapshot.bin.lock"));
+        Files.setPosixFilePermissions(lockFile, PosixFilePermissions.fromString("rw-rw-rw-"));
+
+        Path file = directory.resolve("snapshot.bin");
+        Assert.assertEquals(128, new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(1, discoveries.get());
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+        Assert.assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void heldLockFallsBackToLocalDiscovery() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path file = temporaryFolder.getRoot().toPath().resolve("snapshot.bin");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        try (FileChannel lockChannel = FileChannel.open(file.resolveSibling("snapshot.bin.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            SharedTrustedCertificatesSnapshotFile shared = new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE, 100);
+            Assert.assertEquals(128, shared.load(discovery(discoveries, bundle)).size());
+        }
+        Assert.assertEquals(1, discoveries.get());
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+        Assert.assertFalse(Files.exists(file));
+
+        // the lock is released, the result is shared again
+        Assert.assertEquals(128, new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE, 100).load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(2, discoveries.get());
+        Assert.assertTrue(Files.exists(file));
+    }
+
+    @Test
+    public void readersDoNotNeedWriteAccess() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        Assume.assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        Path file = directory.resolve("snapshot.bin");
+        new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("r--------"));
+        // the owner's permissions are not enforced for root
+        Assume.assumeFalse(Files.isWritable(file));
+
+        Assert.assertEquals(128, new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(discovery(discoveries, bundle)).size());
+        Assert.assertEquals(1, discoveries.get());
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void failedDiscoveryIsNotRepeated() {
+        Path file = temporaryFolder.getRoot().toPath().resolve("snapshot.bin");
+        AtomicInteger discoveries = new AtomicInteger();
+
+        try {
+            new SharedTrustedCertificatesSnapshotFile(file, MAX_AGE).load(() -> {
+                discoveries.incrementAndGet();
+                throw new IllegalStateException("discovery failed");
+            });
+            Assert.fail("Exception expected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("discovery failed", e.getMessage());
+        }
+        Assert.assertEquals(1, discoveries.get());
+    }
+}
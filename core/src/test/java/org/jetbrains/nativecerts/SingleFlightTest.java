@@ -0,0 +1,97 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        List<Thread> callers = new ArrayList<>();
+        CountDownLatch callersStarted = new CountDownLatch(8);
+
+        SingleFlight<Integer> singleFlight = new SingleFlight<>(() -> {
+            if (callers.contains(Thread.currentThread())) {
+                // complete only after every other caller has joined this load
+                try {
+                    Assert.assertTrue(callersStarted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (Thread caller : callers) {
+                    if (caller != Thread.currentThread()) {
+                        awaitWaiting(caller);
+                    }
+                }
+            }
+            return loads.incrementAndGet();
+        });
+
+        Assert.assertNull(singleFlight.getLatest());
+
+        Integer[] results = new Integer[8];
+        for (int i = 0; i < results.length; i++) {
+            int index = i;
+            callers.add(new Thread(() -> {
+                callersStarted.countDown();
+                results[index] = singleFlight.load();
+            }, "SingleFlightTest caller " + i));
+        }
+        for (Thread caller : callers) {
+            caller.start();
+        }
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(10));
+            Assert.assertFalse(caller.getName(), caller.isAlive());
+        }
+
+        for (Integer result : results) {
+            Assert.assertEquals(Integer.valueOf(1), result);
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(Integer.valueOf(1), singleFlight.getLatest());
+        Assert.assertEquals(Integer.valueOf(1), singleFlight.get());
+
+        // a call after completion performs a new load
+        Assert.assertEquals(Integer.valueOf(2), singleFlight.load());
+        Assert.assertEquals(Integer.valueOf(2), singleFlight.getLatest());
+    }
+
+    /**
+     * A started caller blocks in {@link SingleFlight#load()} only while waiting for the in-flight load
+     */
+    private static void awaitWaiting(Thread caller) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (caller.getState() != Thread.State.WAITING) {
+            Assert.assertTrue(caller.getName() + " is " + caller.getState(), System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void failureIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        SingleFlight<Integer> singleFlight = new SingleFlight<>(() -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("first load fails");
+            }
+            return loads.get();
+        });
+
+        try {
+            singleFlight.load();
+            Assert.fail("Exception expected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("first load fails", e.getMessage());
+        }
+
+        Assert.assertNull(singleFlight.getLatest());
+        Assert.assertEquals(Integer.valueOf(2), singleFlight.get());
+    }
+}
@@ -0,0 +1,113 @@
+package org.jetbrains.nativecerts;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class TrustedCertificatesPrunerTest {
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static KeyPair generateRsaKeyPair(int bits) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(bits);
+        return generator.generateKeyPair();
+    }
+
+    private static X509Certificate selfSigned(String cn, KeyPair keyPair, Instant notBefore, Instant notAfter) throws Exception {
+        X500Name name = new X500Name("CN=" + cn);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                name, BigInteger.valueOf(notBefore.getEpochSecond()), Date.from(notBefore), Date.from(notAfter), name, keyPair.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+
+    @Test
+    public void prune() throws Exception {
+        KeyPair strong = generateRsaKeyPair(2048);
+        KeyPair weak = generateRsaKeyPair(1024);
+
+        X509Certificate valid = selfSigned("Valid", strong, NOW.minus(100, ChronoUnit.DAYS), NOW.plus(100, ChronoUnit.DAYS));
+        X509Certificate expired = selfSigned("Expired", strong, NOW.minus(100, ChronoUnit.DAYS), NOW.minus(1, ChronoUnit.DAYS));
+        X509Certificate notYetValid = selfSigned("NotYetValid", strong, NOW.plus(1, ChronoUnit.DAYS), NOW.plus(100, ChronoUnit.DAYS));
+        X509Certificate weakKey = selfSigned("Weak", weak, NOW.minus(100, ChronoUnit.DAYS), NOW.plus(100, ChronoUnit.DAYS));
+        X509Certificate reissued = selfSigned("Valid", strong, NOW.minus(10, ChronoUnit.DAYS), NOW.plus(1000, ChronoUnit.DAYS));
+
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(Map.of(
+                "a", List.of(valid, expired, notYetValid),
+                "b", List.of(weakKey, reissued)));
+
+        TrustedCertificatesPruningResult result = snapshot.prune(TrustedCertificatesPruningPolicy.DEFAULT, Date.from(NOW));
+
+        Assert.assertEquals(List.of(reissued), result.getSnapshot().getCertificates());
+        Assert.assertTrue(result.getSnapshot().getCertificates("a").isEmpty());
+        Assert.assertEquals(List.of(reissued), result.getSnapshot().getCertificates("b"));
+
+        Map<TrustedCertificatesPruningResult.Reason, X509Certificate> reasons = result.getPruned().stream().collect(Collectors.toMap(
+                TrustedCertificatesPruningResult.PrunedCertificate::getReason,
+                TrustedCertificatesPruningResult.PrunedCertificate::getCertificate));
+        Assert.assertEquals(Map.of(
+                TrustedCertificatesPruningResult.Reason.EXPIRED, expired,
+                TrustedCertificatesPruningResult.Reason.NOT_YET_VALID, notYetValid,
+                TrustedCertificatesPruningResult.Reason.WEAK_KEY, weakKey,
+                TrustedCertificatesPruningResult.Reason.DUPLICATE_KEY, valid), reasons);
+    }
+
+    @Test
+    public void sameCertificateInDifferentInstances() throws Exception {
+        KeyPair strong = generateRsaKeyPair(2048);
+        X509Certificate valid = selfSigned("Valid", strong, NOW.minus(100, ChronoUnit.DAYS), NOW.plus(100, ChronoUnit.DAYS));
+        X509Certificate expired = selfSigned("Expired", strong, NOW.minus(100, ChronoUnit.DAYS), NOW.minus(1, ChronoUnit.DAYS));
+        // the JDK factory caches parsed certificates, so another provider is used to get a distinct instance
+        X509Certificate expiredCopy = (X509Certificate) CertificateFactory.getInstance("X.509", new BouncyCastleProvider())
+                .generateCertificate(new ByteArrayInputStream(expired.getEncoded()));
+        Assert.assertNotSame(expired, expiredCopy);
+
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(Map.of(
+                "a", List.of(valid, expired),
+                "b", List.of(expiredCopy)));
+
+        TrustedCertificatesPruningResult result = snapshot.prune(TrustedCertificatesPruningPolicy.DEFAULT, Date.from(NOW));
+        Assert.assertEquals(1, result.getPruned().size());
+        Assert.assertEquals(List.of(valid), result.getSnapshot().getCertificates());
+        Assert.assertEquals(List.of(valid), result.getSnapshot().getCertificates("a"));
+        Assert.assertTrue(result.getSnapshot().getCertificates("b").isEmpty());
+    }
+
+    @Test
+    public void configurablePolicy() throws Exception {
+        KeyPair weak = generateRsaKeyPair(1024);
+        X509Certificate expiredWeak = selfSigned("Weak", weak, NOW.minus(100, ChronoUnit.DAYS), NOW.minus(1, ChronoUnit.DAYS));
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(Map.of("a", List.of(expiredWeak)));
+
+        Assert.assertTrue(snapshot.prune(TrustedCertificatesPruningPolicy.NONE, Date.from(NOW)).getPruned().isEmpty());
+
+        TrustedCertificatesPruningPolicy policy = TrustedCertificatesPruningPolicy.DEFAULT
+                .withRemoveInvalidAtLoadTime(false)
+                .withMinimumKeySize("RSA", 0);
+        TrustedCertificatesPruningResult result = snapshot.prune(policy, Date.from(NOW));
+        Assert.assertTrue(result.getPruned().isEmpty());
+        Assert.assertSame(snapshot, result.getSnapshot());
+
+        result = snapshot.prune(policy.withMinimumKeySize("rsa", 4096), Date.from(NOW));
+        Assert.assertEquals(1, result.getPruned().size());
+        Assert.assertEquals(TrustedCertificatesPruningResult.Reason.WEAK_KEY, result.getPruned().get(0).getReason());
+        Assert.assertTrue(result.getSnapshot().isEmpty());
+    }
+}
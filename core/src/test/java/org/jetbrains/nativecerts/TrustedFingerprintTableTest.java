@@ -0,0 +1,53 @@
+package org.jetbrains.nativecerts;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+
+public class TrustedFingerprintTableTest {
+    @Test
+    public void membership() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        NativeTrustedCertificatesSnapshot snapshot = NativeTrustedCertificatesSnapshot.of(Map.of("a", bundle.subList(0, 100)));
+        TrustedFingerprintTable table = TrustedFingerprintTable.of(snapshot);
+        Assert.assertEquals(100, table.size());
+
+        for (int i = 0; i < bundle.size(); i++) {
+            byte[] der = bundle.get(i).getEncoded();
+            byte[] sha256 = NativeTrustedRootsInternalUtils.sha256(der);
+            boolean expected = i < 100;
+            Assert.assertEquals(expected, table.contains(der));
+            Assert.assertEquals(expected, table.containsFingerprint(sha256, 0));
+            Assert.assertEquals(expected, table.contains(TrustedFingerprintTable.prefix(sha256, 0)));
+        }
+
+        Assert.assertFalse(TrustedFingerprintTable.of(NativeTrustedCertificatesSnapshot.empty()).contains(bundle.get(0).getEncoded()));
+    }
+
+    @Test
+    public void samePrefixIsConfirmedByFullFingerprint() {
+        byte[] fingerprints = new byte[3 * NativeTrustedCertificatesSnapshot.FINGERPRINT_LENGTH];
+        // the first two fingerprints share a prefix, the third one lands into the same probe sequence
+        fingerprints[31] = 1;
+        fingerprints[32 + 31] = 2;
+        fingerprints[64 + 31] = 3;
+        fingerprints[64 + 4] = 1;
+        TrustedFingerprintTable table = new TrustedFingerprintTable(fingerprints);
+
+        byte[] query = new byte[40];
+        for (int last = 0; last < 5; last++) {
+            query[4 + 31] = (byte) last;
+            Assert.assertEquals(last == 1 || last == 2, table.containsFingerprint(query, 4));
+        }
+        Assert.assertTrue(table.contains(0L));
+
+        query[4 + 4] = 1;
+        query[4 + 31] = 3;
+        Assert.assertTrue(table.containsFingerprint(query, 4));
+        Assert.assertTrue(table.contains(TrustedFingerprintTable.prefix(query, 4)));
+        Assert.assertFalse(table.contains(TrustedFingerprintTable.prefix(query, 4) + 1));
+    }
+}
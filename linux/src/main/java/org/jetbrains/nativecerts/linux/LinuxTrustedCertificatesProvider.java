@@ -0,0 +1,21 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.NativeTrustedCertificatesProvider;
+import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+
+/**
+ * Reads system-wide certificate bundles and stores, see {@link LinuxTrustedCertificatesUtil#visitSystemCertificates}
+ */
+public final class LinuxTrustedCertificatesProvider implements NativeTrustedCertificatesProvider {
+    @Override
+    public boolean isSupported() {
+        return NativeTrustedRootsInternalUtils.isLinux;
+    }
+
+    @Override
+    public boolean visit(@NotNull TrustedCertificateVisitor visitor) {
+        return LinuxTrustedCertificatesUtil.visitSystemCertificates(visitor);
+    }
+}
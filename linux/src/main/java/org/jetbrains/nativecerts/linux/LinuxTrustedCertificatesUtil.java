@@ -0,0 +1,520 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.nativecerts.TrustedCertificatePurpose;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.internCertificate;
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.renderExceptionMessage;
+
+public class LinuxTrustedCertificatesUtil {
+    private final static Logger LOGGER = Logger.getLogger(LinuxTrustedCertificatesUtil.class.getName());
+
+    // The same discovery logic as in Go
+    // https://github.com/golang/go/blob/0668e3cb1a8407547f1b4e316748d3b898564f8e/src/crypto/x509/root_linux.go
+
+    // Deduplicated trust stores extracted by the distribution tooling from the same configuration as the files below.
+    // If one of them is readable and none of those files and directories was modified after it, they are not scanned at all.
+    // Otherwise the store may be stale, e.g. a certificate was dropped into /etc/ssl/certs
+    // or Debian's java/cacerts was not refreshed by the ca-certificates-java hook
+    private static final List<String> possibleExtractedStores = List.of(
+            "/etc/pki/ca-trust/extracted/java/cacerts",                // Fedora/RHEL, p11-kit binary keystore
+            "/etc/ssl/certs/java/cacerts",                             // Debian/Ubuntu, ca-certificates-java binary keystore
+            "/etc/pki/ca-trust/extracted/openssl/ca-bundle.trust.crt"  // Fedora/RHEL, p11-kit OpenSSL TRUSTED CERTIFICATE bundle
+    );
+
+    // The keystores above are created with a well-known default password
+    private static final char[] extractedKeyStorePassword = "changeit".toCharArray();
+
+    // Stores and bundles extracted by p11-kit for a specific purpose only, see update-ca-trust(8).
+    // Certificates from other files are trusted for any purpose allowed by their extended key usage extension
+    private static final Map<String, Set<TrustedCertificatePurpose>> purposeSpecificPaths = Map.of(
+            "/etc/pki/ca-trust/extracted/java/cacerts", EnumSet.of(TrustedCertificatePurpose.SERVER_AUTH)
+    );
+    private static final Map<String, Set<TrustedCertificatePurpose>> purposeSpecificFileNames = Map.of(
+            "tls-ca-bundle.pem", EnumSet.of(TrustedCertificatePurpose.SERVER_AUTH),
+            "email-ca-bundle.pem", EnumSet.of(TrustedCertificatePurpose.EMAIL_PROTECTION),
+            "objsign-ca-bundle.pem", EnumSet.of(TrustedCertificatePurpose.CODE_SIGNING)
+    );
+
+    private static final List<String> possibleFiles = List.of(
+            "/etc/ssl/certs/ca-certificates.crt",                // Debian/Ubuntu/Gentoo etc.
+            "/etc/pki/tls/certs/ca-bundle.crt",                  // Fedora/RHEL 6
+            "/etc/ssl/ca-bundle.pem",                            // OpenSUSE
+            "/etc/pki/tls/cacert.pem",                           // OpenELEC
+            "/etc/pki/ca-trust/extracted/pem/tls-ca-bundle.pem", // CentOS/RHEL 7
+            "/etc/ssl/cert.pem"                                  // Alpine Linux
+    );
+
+    private static final List<String> possibleDirectories = List.of(
+            "/etc/ssl/certs",               // SLES10/SLES11, https://golang.org/issue/12139
+            "/etc/pki/tls/certs",           // Fedora/RHEL
+            "/system/etc/security/cacerts"  // Android
+    );
+
+    /**
+     * Set to {@code true} to read anchors from the p11-kit trust PKCS#11 module if it's installed, instead of extracted stores,
+     * bundles and directories. Requires JNA on the classpath
+     */
+    public static final String P11KIT_PROPERTY = "org.jetbrains.nativecerts.linux.p11kit";
+
+    /**
+     * Number of files in a certificates directory read concurrently, {@code 1} reads them one by one on the calling thread
+     */
+    public static final String DIRECTORY_READ_PARALLELISM_PROPERTY = "org.jetbrains.nativecerts.linux.directoryReadParallelism";
+    static final int DEFAULT_DIRECTORY_READ_PARALLELISM = 8;
+
+    /**
+     * Directory to look up system locations in instead of {@code /}, e.g. a mounted image or a synthetic tree in benchmarks.
+     * The p11-kit module is not affected
+     */
+    public static final String SYSTEM_ROOT_PROPERTY = "org.jetbrains.nativecerts.linux.systemRoot";
+
+    public static Collection<X509Certificate> getSystemCertificates() {
+        Set<X509Certificate> result = new HashSet<>();
+        for (List<X509Certificate> list : getSystemCertificatesBySource().values()) {
+            result.addAll(list);
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            StringBuilder message = new StringBuilder();
+            message.append(result.size()).append(" certificates were read from various system locations");
+            for (X509Certificate certificate : result) {
+                message.append("\n  ").append(certificate.getSubjectDN());
+            }
+            LOGGER.fine(message.toString());
+        }
+
+        return result;
+    }
+
+    /**
+     * Same discovery as {@link #getSystemCertificates()}, but certificates are grouped by the file they were read from.
+     * Files without any certificates are omitted, every file is read only once.
+     *
+     * @return file path to certificates map in discovery order
+     */
+    public static Map<String, List<X509Certificate>> getSystemCertificatesBySource() {
+        Map<String, List<X509Certificate>> result = new LinkedHashMap<>();
+        visitSystemCertificates((source, certificate) -> {
+            result.computeIfAbsent(source, s -> new ArrayList<>()).add(certificate);
+            return true;
+        });
+        return result;
+    }
+
+    /**
+     * Same discovery as {@link #getSystemCertificates()}, but certificates are passed to {@code visitor}
+     * as soon as they are decoded and are not retained. Every file is read only once,
+     * but the same certificate from different files is visited several times.
+     *
+     * @return {@code false} if enumeration was stopped by {@code visitor}
+     */
+    public static boolean visitSystemCertificates(@NotNull TrustedCertificateVisitor visitor) {
+        if (Boolean.getBoolean(P11KIT_PROPERTY)) {
+            List<P11KitTrustModule.Anchor> anchors = tryReadFromP11Kit(P11KitTrustModule.possibleModulePaths);
+            if (anchors != null) {
+                for (P11KitTrustModule.Anchor anchor : anchors) {
+                    if (!visitor.visit(anchor.source, anchor.certificate, anchor.purposes)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        String systemRoot = System.getProperty(SYSTEM_ROOT_PROPERTY);
+
+        List<Path> scannedLocations = new ArrayList<>();
+        for (String file : possibleFiles) {
+            scannedLocations.add(resolveSystemPath(systemRoot, file));
+        }
+        for (String dir : possibleDirectories) {
+            scannedLocations.add(resolveSystemPath(systemRoot, dir));
+        }
+
+        for (String store : possibleExtractedStores) {
+            Path storePath = resolveSystemPath(systemRoot, store);
+            Path newerLocation = findModifiedLater(storePath, scannedLocations);
+            if (newerLocation != null) {
+                LOGGER.fine("Not reading certificates from extracted trust store " + storePath + ": " + newerLocation +
+                        " was modified later, the store may be stale");
+                continue;
+            }
+
+            Map<X509Certificate, Set<TrustedCertificatePurpose>> certificates = tryReadFromExtractedStore(storePath, getSourcePurposes(store));
+            if (!certificates.isEmpty()) {
+                for (Map.Entry<X509Certificate, Set<TrustedCertificatePurpose>> entry : certificates.entrySet()) {
+                    if (!visitor.visit(storePath.toString(), entry.getKey(), entry.getValue())) {
+                        return false;
+                    }
+                }
+                visitor.sourceCompleted(storePath.toString());
+                return true;
+            }
+        }
+
+        Set<String> visitedFiles = new HashSet<>();
+        int directoryReadParallelism = Integer.getInteger(DIRECTORY_READ_PARALLELISM_PROPERTY, DEFAULT_DIRECTORY_READ_PARALLELISM);
+
+        for (String file : possibleFiles) {
+            Path path = resolveSystemPath(systemRoot, file);
+            visitedFiles.add(path.toString());
+            if (!tryReadFromFile(path, visitor)) {
+                return false;
+            }
+        }
+
+        for (String dir : possibleDirectories) {
+            if (!tryReadFromDirectory(resolveSystemPath(systemRoot, dir), visitedFiles, directoryReadParallelism, visitor)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Path resolveSystemPath(@Nullable String systemRoot, @NotNull String path) {
+        return systemRoot == null || systemRoot.isEmpty() ? Path.of(path) : Path.of(systemRoot, path);
+    }
+
+    /**
+     * @return the first of existing {@code locations} modified after {@code store},
+     * {@code null} if there is none or {@code store} does not exist
+     */
+    private static @Nullable Path findModifiedLater(@NotNull Path store, @NotNull List<Path> locations) {
+        FileTime storeModified;
+        try {
+            storeModified = Files.getLastModifiedTime(store);
+        } catch (IOException e) {
+            // a missing or unreadable store is reported when it's read
+            return null;
+        }
+
+        for (Path location : locations) {
+            try {
+                if (Files.getLastModifiedTime(location).compareTo(storeModified) > 0) {
+                    return location;
+                }
+            } catch (NoSuchFileException e) {
+                // nothing to compare with
+            } catch (IOException e) {
+                LOGGER.fine("Unable to get modification time of " + location + ": " + e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return anchors of the first available module, {@code null} to fall back to other system locations
+     */
+    static @Nullable List<P11KitTrustModule.Anchor> tryReadFromP11Kit(@NotNull List<String> modulePaths) {
+        for (String module : modulePaths) {
+            if (!Files.isRegularFile(Path.of(module))) {
+                LOGGER.fine("Not reading certificates from " + module + ": file does not exist");
+                continue;
+            }
+
+            try {
+                List<P11KitTrustModule.Anchor> anchors = P11KitTrustModule.readAnchors(module);
+                if (anchors.isEmpty()) {
+                    LOGGER.fine("No anchors were received from " + module + ", falling back to other system locations");
+                    return null;
+                }
+                return anchors;
+            } catch (NoClassDefFoundError e) {
+                LOGGER.warning("Unable to read certificates from " + module + ": JNA is not on the classpath, falling back to other system locations");
+                return null;
+            } catch (Throwable t) {
+                LOGGER.warning(renderExceptionMessage("Unable to read certificates from " + module + ", falling back to other system locations", t));
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Map<X509Certificate, Set<TrustedCertificatePurpose>> tryReadFromExtractedStore(@NotNull Path file,
+                                                                                                   @NotNull Set<TrustedCertificatePurpose> sourcePurposes) {
+        if (!Files.isRegularFile(file)) {
+            LOGGER.fine("Not reading certificates from " + file + ": file does not exist");
+            return Collections.emptyMap();
+        }
+
+        try {
+            Map<X509Certificate, Set<TrustedCertificatePurpose>> result = new LinkedHashMap<>();
+            if (file.getFileName().toString().endsWith(".crt")) {
+                try (InputStream stream = Files.newInputStream(file)) {
+                    PemReaderUtil.visitPemBundle(stream, file.toString(), new TrustedCertificateVisitor() {
+                        @Override
+                        public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+                            return visit(source, certificate, TrustedCertificatePurpose.all());
+                        }
+
+                        @Override
+                        public boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+                            result.put(certificate, intersect(sourcePurposes, purposes));
+                            return true;
+                        }
+                    });
+                }
+            } else {
+                List<X509Certificate> list = readKeyStore(file, null);
+                if (list.isEmpty()) {
+                    // PKCS#12 keystores may keep certificates encrypted
+                    list = readKeyStore(file, extractedKeyStorePassword);
+                }
+                for (X509Certificate certificate : list) {
+                    result.put(certificate, sourcePurposes);
+                }
+            }
+
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Received " + result.size() + " certificates from extracted trust store " + file +
+                        (result.isEmpty() ? "" : ", other system locations will not be read"));
+            }
+
+            return result;
+        } catch (AccessDeniedException t) {
+            LOGGER.fine("Not reading certificates from " + file + ": access denied");
+            return Collections.emptyMap();
+        } catch (Throwable t) {
+            LOGGER.warning(renderExceptionMessage("Unable to read certificates from extracted trust store " + file + ", falling back to other system locations", t));
+            return Collections.emptyMap();
+        }
+    }
+
+    private static Set<TrustedCertificatePurpose> getSourcePurposes(@NotNull String path) {
+        Set<TrustedCertificatePurpose> purposes = purposeSpecificPaths.get(path);
+        if (purposes == null) {
+            purposes = purposeSpecificFileNames.get(path.substring(path.lastIndexOf('/') + 1));
+        }
+        return purposes == null ? TrustedCertificatePurpose.all() : purposes;
+    }
+
+    private static Set<TrustedCertificatePurpose> intersect(@NotNull Set<TrustedCertificatePurpose> a, @NotNull Set<TrustedCertificatePurpose> b) {
+        if (a.containsAll(b)) {
+            return b;
+        }
+        Set<TrustedCertificatePurpose> result = EnumSet.noneOf(TrustedCertificatePurpose.class);
+        result.addAll(a);
+        result.retainAll(b);
+        return result;
+    }
+
+    private static List<X509Certificate> readKeyStore(@NotNull Path file, char[] password) throws IOException, GeneralSecurityException {
+        // JKS keystore type also loads PKCS#12 files, see keystore.type.compat security property
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream stream = Files.newInputStream(file)) {
+            keyStore.load(stream, password);
+        }
+
+        List<X509Certificate> result = new ArrayList<>();
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isCertificateEntry(alias) && keyStore.getCertificate(alias) instanceof X509Certificate) {
+                result.add(internCertificate((X509Certificate) keyStore.getCertificate(alias)));
+            }
+        }
+        return result;
+    }
+
+    static boolean tryReadFromDirectory(@NotNull Path dir, @NotNull Set<String> visitedFiles, int parallelism, @NotNull TrustedCertificateVisitor visitor) {
+        if (!Files.isDirectory(dir)) {
+            LOGGER.fine("Not reading certificates from " + dir + ": not a directory");
+            return true;
+        }
+
+        LOGGER.fine("Reading certificates from " + dir);
+        List<Path> paths;
+        try (Stream<Path> filesStream = Files.list(dir)) {
+            paths = filesStream.sorted().collect(Collectors.toList());
+        } catch (Throwable t) {
+            LOGGER.warning(renderExceptionMessage("Unable to read certificates from directory " + dir, t));
+            return true;
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (visitedFiles.add(path.toString())) {
+                files.add(path);
+            }
+        }
+
+        if (parallelism <= 1 || files.size() <= 1) {
+            for (Path file : files) {
+                byte[] bytes;
+                try {
+                    bytes = readFile(file, true);
+                } catch (Throwable t) {
+                    logReadFailure(file, t);
+                    continue;
+                }
+                if (bytes != null && !visitFile(file, bytes, visitor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        return readFilesConcurrently(files, parallelism, visitor);
+    }
+
+    /**
+     * Reads files on a bounded pool, at most {@code 2 * parallelism} files ahead of the visitor, since
+     * on network filesystems every file costs several round-trips. Certificates are still decoded and visited
+     * on the calling thread in the order of {@code files}, so the result does not depend on the parallelism.
+     */
+    private static boolean readFilesConcurrently(@NotNull List<Path> files, int parallelism, @NotNull TrustedCertificateVisitor visitor) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, files.size()), runnable -> {
+            Thread thread = new Thread(runnable, "Native trusted roots directory reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            int submitted = 0;
+            for (Path file : files) {
+                while (submitted < files.size() && pending.size() < 2 * parallelism) {
+                    Path next = files.get(submitted++);
+                    pending.add(executor.submit(() -> readFile(next, true)));
+                }
+
+                byte[] bytes;
+                try {
+                    bytes = pending.remove().get();
+                } catch (ExecutionException e) {
+                    logReadFailure(file, e.getCause());
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warning("Interrupted while reading certificates from " + file);
+                    return true;
+                }
+
+                if (bytes != null && !visitFile(file, bytes, visitor)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return {@code false} if enumeration was stopped by {@code visitor}
+     */
+    private static boolean tryReadFromFile(@NotNull Path file, @NotNull TrustedCertificateVisitor visitor) {
+        byte[] bytes;
+        try {
+            bytes = readFile(file, false);
+        } catch (Throwable t) {
+            logReadFailure(file, t);
+            return true;
+        }
+        return bytes == null || visitFile(file, bytes, visitor);
+    }
+
+    /**
+     * @param directoryEntry whether {@code file} was listed in a directory, other entries than regular files are expected there
+     * @return file contents, {@code null} if it's not a regular file
+     */
+    private static @Nullable byte[] readFile(@NotNull Path file, boolean directoryEntry) throws IOException {
+        if (!Files.exists(file)) {
+            LOGGER.fine("Not reading certificates from " + file + ": file does not exist");
+            return null;
+        }
+
+        if (!Files.isRegularFile(file)) {
+            if (!directoryEntry) {
+                LOGGER.warning("Not reading certificates from " + file + ": not a regular file");
+            }
+            return null;
+        }
+
+        return Files.readAllBytes(file);
+    }
+
+    private static void logReadFailure(@NotNull Path file, @NotNull Throwable t) {
+        if (t instanceof AccessDeniedException) {
+            LOGGER.warning("Not reading certificates from " + file + ": access denied");
+        } else {
+            LOGGER.warning(renderExceptionMessage("Unable to read certificates from " + file, t));
+        }
+    }
+
+    /**
+     * Malformed blocks of the file are skipped, exceptions thrown by {@code visitor} are propagated
+     *
+     * @return {@code false} if enumeration was stopped by {@code visitor}
+     */
+    private static boolean visitFile(@NotNull Path file, @NotNull byte[] bytes, @NotNull TrustedCertificateVisitor visitor) {
+        String source = file.toString();
+        Set<TrustedCertificatePurpose> sourcePurposes = getSourcePurposes(source);
+        StringBuilder message = LOGGER.isLoggable(Level.FINE) ? new StringBuilder() : null;
+        int[] count = new int[1];
+
+        boolean completed;
+        try {
+            completed = PemReaderUtil.visitPemBundle(new ByteArrayInputStream(bytes), source, new TrustedCertificateVisitor() {
+                @Override
+                public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+                    return visit(source, certificate, TrustedCertificatePurpose.all());
+                }
+
+                @Override
+                public boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+                    count[0]++;
+                    if (message != null) {
+                        message.append("\n  ").append(certificate.getSubjectDN());
+                    }
+                    return visitor.visit(source, certificate, intersect(sourcePurposes, purposes));
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warning(renderExceptionMessage("Unable to read certificates from " + file, e));
+            return true;
+        }
+
+        if (message != null) {
+            LOGGER.fine("Received " + count[0] + " certificates from " + file + message);
+        }
+
+        if (completed && count[0] > 0) {
+            visitor.sourceCompleted(source);
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,271 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.nativecerts.DerReader;
+import org.jetbrains.nativecerts.TrustedCertificatePurpose;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.renderExceptionMessage;
+
+/**
+ * Lazy trust source over a directory indexed by OpenSSL subject name hashes, e.g. {@code /etc/ssl/certs}
+ * maintained by c_rehash(1) or {@code openssl rehash}: a certificate with a given subject lives in
+ * {@code <hash>.0}, {@code <hash>.1} and so on.
+ * <p>
+ * Only files matching the requested subject are parsed, on the first request, results are memoized.
+ * Processes which talk to a few endpoints never parse the rest of the roots. Use {@link #getTrustAnchors}
+ * to build {@link java.security.cert.PKIXParameters} for a particular chain. Thread-safe.
+ * </p>
+ */
+public final class OpenSslHashedDirectory {
+    private static final Logger LOGGER = Logger.getLogger(OpenSslHashedDirectory.class.getName());
+
+    private static final int TAG_PRINTABLE_STRING = 0x13;
+    private static final int TAG_T61_STRING = 0x14;
+    private static final int TAG_IA5_STRING = 0x16;
+    private static final int TAG_VISIBLE_STRING = 0x1A;
+    private static final int TAG_UNIVERSAL_STRING = 0x1C;
+    private static final int TAG_BMP_STRING = 0x1E;
+
+    private final Path directory;
+    private final Map<X500Principal, List<X509Certificate>> bySubject = new ConcurrentHashMap<>();
+    private final AtomicInteger parsedFiles = new AtomicInteger();
+
+    public OpenSslHashedDirectory(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return certificates from the directory with exactly this subject, an empty list if there are none
+     * or the directory can't be read. Certificates rejected for all purposes by OpenSSL trust settings are skipped
+     */
+    public List<X509Certificate> findBySubject(@NotNull X500Principal subject) {
+        List<X509Certificate> result = bySubject.get(subject);
+        if (result != null) {
+            return result;
+        }
+
+        result = load(subject);
+        if (result == null) {
+            // do not memoize failures, they may be caused by a temporarily unavailable filesystem
+            return Collections.emptyList();
+        }
+        List<X509Certificate> existing = bySubject.putIfAbsent(subject, result);
+        return existing != null ? existing : result;
+    }
+
+    /**
+     * @return trust anchors which may terminate {@code chain}: certificates from the directory with the subject
+     * equal to the issuer of any certificate of the chain, or to the subject of its last certificate
+     */
+    public Set<TrustAnchor> getTrustAnchors(@NotNull X509Certificate[] chain) {
+        Set<X509Certificate> certificates = new LinkedHashSet<>();
+        for (X509Certificate certificate : chain) {
+            certificates.addAll(findBySubject(certificate.getIssuerX500Principal()));
+        }
+        if (chain.length > 0) {
+            certificates.addAll(findBySubject(chain[chain.length - 1].getSubjectX500Principal()));
+        }
+
+        Set<TrustAnchor> result = new LinkedHashSet<>();
+        for (X509Certificate certificate : certificates) {
+            result.add(new TrustAnchor(certificate, null));
+        }
+        return result;
+    }
+
+    /**
+     * Forgets memoized lookups, e.g. after the directory was rehashed
+     */
+    public void clear() {
+        bySubject.clear();
+    }
+
+    int getParsedFileCount() {
+        return parsedFiles.get();
+    }
+
+    private @Nullable List<X509Certificate> load(@NotNull X500Principal subject) {
+        String hash = subjectNameHash(subject);
+        List<X509Certificate> result = new ArrayList<>();
+        // the same lookup as X509_LOOKUP_hash_dir: files are numbered from 0 without gaps
+        for (int i = 0; ; i++) {
+            Path file = directory.resolve(hash + "." + i);
+            if (!Files.isRegularFile(file)) {
+                break;
+            }
+
+            parsedFiles.incrementAndGet();
+            try (InputStream stream = Files.newInputStream(file)) {
+                PemReaderUtil.visitPemBundle(stream, file.toString(), new TrustedCertificateVisitor() {
+                    @Override
+                    public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+                        return visit(source, certificate, TrustedCertificatePurpose.all());
+                    }
+
+                    @Override
+                    public boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+                        // the hash is 32 bits, different subjects may collide
+                        if (!purposes.isEmpty() && certificate.getSubjectX500Principal().equals(subject)) {
+                            result.add(certificate);
+                        }
+                        return true;
+                    }
+                });
+            } catch (Throwable t) {
+                LOGGER.warning(renderExceptionMessage("Unable to read certificates from " + file, t));
+                return null;
+            }
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Received " + result.size() + " certificates for " + subject + " from " + directory.resolve(hash + ".*"));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Same as {@code X509_NAME_hash} of OpenSSL 1.0.0 and later, e.g. {@code openssl x509 -subject_hash}:
+     * first 4 bytes of SHA-1 of the canonical name encoding as a little-endian number.
+     *
+     * @return 8 lowercase hex digits
+     */
+    static String subjectNameHash(@NotNull X500Principal name) {
+        byte[] sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1").digest(canonicalEncoding(name.getEncoded()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        long hash = (sha1[0] & 0xFFL) | (sha1[1] & 0xFFL) << 8 | (sha1[2] & 0xFFL) << 16 | (sha1[3] & 0xFFL) << 24;
+        return String.format(Locale.ROOT, "%08x", hash);
+    }
+
+    /**
+     * Same as {@code x509_name_canon} of OpenSSL: relative distinguished names without the outer SEQUENCE,
+     * string values are converted to lowercase UTF8String with whitespace trimmed and collapsed
+     */
+    static byte[] canonicalEncoding(@NotNull byte[] name) {
+        DerReader rdns = new DerReader(name).readConstructed(DerReader.TAG_SEQUENCE);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        while (rdns.hasMore()) {
+            DerReader rdn = rdns.readConstructed(DerReader.TAG_SET);
+            List<byte[]> attributes = new ArrayList<>();
+            while (rdn.hasMore()) {
+                DerReader attribute = rdn.readConstructed(DerReader.TAG_SEQUENCE);
+                byte[] type = attribute.readElement();
+                byte[] value = canonicalValue(attribute.peekTag(), attribute.readElement());
+                attributes.add(encode(DerReader.TAG_SEQUENCE, type, value));
+            }
+            // DER orders SET OF elements by their encodings
+            attributes.sort(Arrays::compareUnsigned);
+            byte[] set = encode(DerReader.TAG_SET, attributes.toArray(new byte[0][]));
+            result.write(set, 0, set.length);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] canonicalValue(int tag, @NotNull byte[] element) {
+        Charset charset;
+        switch (tag) {
+            case DerReader.TAG_UTF8_STRING:
+                charset = StandardCharsets.UTF_8;
+                break;
+            case TAG_PRINTABLE_STRING:
+            case TAG_T61_STRING:
+            case TAG_IA5_STRING:
+            case TAG_VISIBLE_STRING:
+                // OpenSSL converts T61String as Latin-1 as well
+                charset = StandardCharsets.ISO_8859_1;
+                break;
+            case TAG_BMP_STRING:
+                charset = StandardCharsets.UTF_16BE;
+                break;
+            case TAG_UNIVERSAL_STRING:
+                charset = Charset.forName("UTF-32BE");
+                break;
+            default:
+                return element;
+        }
+
+        byte[] content = new DerReader(element).readContent(tag);
+        byte[] utf8 = new String(content, charset).getBytes(StandardCharsets.UTF_8);
+
+        int start = 0;
+        int end = utf8.length;
+        while (start < end && isSpace(utf8[start])) {
+            start++;
+        }
+        while (end > start && isSpace(utf8[end - 1])) {
+            end--;
+        }
+
+        ByteArrayOutputStream canonical = new ByteArrayOutputStream(end - start);
+        for (int i = start; i < end; i++) {
+            byte b = utf8[i];
+            if (isSpace(b)) {
+                canonical.write(' ');
+                while (i + 1 < end && isSpace(utf8[i + 1])) {
+                    i++;
+                }
+            } else if (b >= 'A' && b <= 'Z') {
+                canonical.write(b + ('a' - 'A'));
+            } else {
+                canonical.write(b);
+            }
+        }
+        return encode(DerReader.TAG_UTF8_STRING, canonical.toByteArray());
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    private static byte[] encode(int tag, @NotNull byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(length + 6);
+        result.write(tag);
+        if (length < 0x80) {
+            result.write(length);
+        } else {
+            int bytes = (Integer.SIZE - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            result.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                result.write(length >>> (i * 8));
+            }
+        }
+        for (byte[] part : parts) {
+            result.write(part, 0, part.length);
+        }
+        return result.toByteArray();
+    }
+}
@@ -0,0 +1,321 @@
+package org.jetbrains.nativecerts.linux;
+
+import com.sun.jna.Function;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.TrustedCertificatePurpose;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads trust anchors from the p11-kit trust PKCS#11 module, which already merged anchors, blocklists and purposes
+ * of all trust sources configured on the system, see trust(1).
+ * Certificates are enumerated via CKO_CERTIFICATE objects with CKA_TRUSTED set, purposes come from the NSS trust objects
+ * which the module builds for every certificate.
+ * <p>
+ * Uses JNA. The module exports only {@code C_GetFunctionList}, so functions are called via the function list.
+ * </p>
+ */
+final class P11KitTrustModule {
+    private static final Logger LOGGER = Logger.getLogger(P11KitTrustModule.class.getName());
+
+    static final List<String> possibleModulePaths = List.of(
+            "/usr/lib64/pkcs11/p11-kit-trust.so",                   // Fedora/RHEL/OpenSUSE
+            "/usr/lib/x86_64-linux-gnu/pkcs11/p11-kit-trust.so",    // Debian/Ubuntu
+            "/usr/lib/aarch64-linux-gnu/pkcs11/p11-kit-trust.so",   // Debian/Ubuntu
+            "/usr/lib/pkcs11/p11-kit-trust.so"                      // Arch, Alpine
+    );
+
+    private static final long CKR_OK = 0;
+    private static final long CKR_ATTRIBUTE_SENSITIVE = 0x11;
+    private static final long CKR_ATTRIBUTE_TYPE_INVALID = 0x12;
+    private static final long CKR_CRYPTOKI_ALREADY_INITIALIZED = 0x191;
+    private static final long CK_UNAVAILABLE_INFORMATION = NativeLong.SIZE == 4 ? 0xFFFFFFFFL : -1L;
+
+    private static final long CKF_SERIAL_SESSION = 0x4;
+
+    private static final long CKO_CERTIFICATE = 0x1;
+    private static final long CKO_NSS_TRUST = 0xCE534353L;
+    private static final long CKC_X_509 = 0x0;
+
+    private static final long CKA_CLASS = 0x0;
+    private static final long CKA_VALUE = 0x11;
+    private static final long CKA_CERTIFICATE_TYPE = 0x80;
+    private static final long CKA_TRUSTED = 0x86;
+    private static final long CKA_X_DISTRUSTED = 0xD8444764L;
+    private static final long CKA_CERT_SHA1_HASH = 0xCE5363B4L;
+    private static final Map<TrustedCertificatePurpose, Long> CKA_TRUST_BY_PURPOSE = Map.of(
+            TrustedCertificatePurpose.SERVER_AUTH, 0xCE536358L,
+            TrustedCertificatePurpose.CLIENT_AUTH, 0xCE536359L,
+            TrustedCertificatePurpose.CODE_SIGNING, 0xCE53635AL,
+            TrustedCertificatePurpose.EMAIL_PROTECTION, 0xCE53635BL
+    );
+    private static final long CKT_NSS_TRUSTED_DELEGATOR = 0xCE534352L;
+
+    // CK_FUNCTION_LIST starts with CK_VERSION, function pointers follow with natural alignment
+    private static final int C_INITIALIZE = 0;
+    private static final int C_FINALIZE = 1;
+    private static final int C_GET_SLOT_LIST = 4;
+    private static final int C_GET_TOKEN_INFO = 6;
+    private static final int C_OPEN_SESSION = 12;
+    private static final int C_CLOSE_SESSION = 13;
+    private static final int C_GET_ATTRIBUTE_VALUE = 24;
+    private static final int C_FIND_OBJECTS_INIT = 26;
+    private static final int C_FIND_OBJECTS = 27;
+    private static final int C_FIND_OBJECTS_FINAL = 28;
+
+    private static final int ATTRIBUTE_SIZE = 2 * NativeLong.SIZE + Native.POINTER_SIZE;
+
+    static final class Anchor {
+        final String source;
+        final X509Certificate certificate;
+        final Set<TrustedCertificatePurpose> purposes;
+
+        Anchor(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+            this.source = source;
+            this.certificate = certificate;
+            this.purposes = purposes;
+        }
+    }
+
+    private final String modulePath;
+    private final Pointer functionList;
+
+    private P11KitTrustModule(@NotNull String modulePath, @NotNull Pointer functionList) {
+        this.modulePath = modulePath;
+        this.functionList = functionList;
+    }
+
+    /**
+     * Reads all anchors of all tokens of the module, blocklisted certificates and certificates not trusted
+     * for any purpose are skipped. Certificates are returned only if the entire module was read.
+     *
+     * @return anchors in token order
+     */
+    static List<Anchor> readAnchors(@NotNull String modulePath) throws IOException {
+        NativeLibrary library = NativeLibrary.getInstance(modulePath);
+        PointerByReference functionList = new PointerByReference();
+        check(library.getFunction("C_GetFunctionList").invoke(NativeLong.class, new Object[]{functionList}), "C_GetFunctionList");
+        return new P11KitTrustModule(modulePath, functionList.getValue()).readAnchors();
+    }
+
+    private List<Anchor> readAnchors() throws IOException {
+        long initialized = call(C_INITIALIZE, (Object) null);
+        if (initialized != CKR_OK && initialized != CKR_CRYPTOKI_ALREADY_INITIALIZED) {
+            check(initialized, "C_Initialize");
+        }
+
+        try {
+            List<Anchor> result = new ArrayList<>();
+            for (long slot : getSlots()) {
+                readAnchors(slot, result);
+            }
+            return result;
+        } finally {
+            // do not finalize the module for other users in this process which have initialized it before
+            if (initialized == CKR_OK) {
+                call(C_FINALIZE, (Object) null);
+            }
+        }
+    }
+
+    private long[] getSlots() throws IOException {
+        NativeLongByReference count = new NativeLongByReference();
+        check(call(C_GET_SLOT_LIST, (byte) 1, null, count), "C_GetSlotList");
+        if (count.getValue().longValue() == 0) {
+            return new long[0];
+        }
+
+        Memory slots = new Memory((long) count.getValue().intValue() * NativeLong.SIZE);
+        check(call(C_GET_SLOT_LIST, (byte) 1, slots, count), "C_GetSlotList");
+        long[] result = new long[count.getValue().intValue()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getULong(slots, (long) i * NativeLong.SIZE);
+        }
+        return result;
+    }
+
+    private void readAnchors(long slot, @NotNull List<Anchor> result) throws IOException {
+        // CK_TOKEN_INFO starts with a 32-byte blank-padded label, the rest of the structure is not used
+        Memory tokenInfo = new Memory(512);
+        check(call(C_GET_TOKEN_INFO, ulong(slot), tokenInfo), "C_GetTokenInfo");
+        String source = modulePath + ": " + new String(tokenInfo.getByteArray(0, 32), StandardCharsets.UTF_8).trim();
+
+        NativeLongByReference sessionReference = new NativeLongByReference();
+        check(call(C_OPEN_SESSION, ulong(slot), ulong(CKF_SERIAL_SESSION), null, null, sessionReference), "C_OpenSession");
+        NativeLong session = sessionReference.getValue();
+        try {
+            Map<String, Set<TrustedCertificatePurpose>> purposesBySha1 = new HashMap<>();
+            for (long trust : findObjects(session, CKO_NSS_TRUST)) {
+                List<TrustedCertificatePurpose> purposes = new ArrayList<>(CKA_TRUST_BY_PURPOSE.keySet());
+                long[] types = new long[purposes.size() + 1];
+                types[0] = CKA_CERT_SHA1_HASH;
+                for (int i = 0; i < purposes.size(); i++) {
+                    types[i + 1] = CKA_TRUST_BY_PURPOSE.get(purposes.get(i));
+                }
+
+                Memory[] values = getAttributes(session, trust, types);
+                if (values[0] == null) {
+                    continue;
+                }
+                Set<TrustedCertificatePurpose> trusted = EnumSet.noneOf(TrustedCertificatePurpose.class);
+                for (int i = 0; i < purposes.size(); i++) {
+                    if (values[i + 1] != null && getULong(values[i + 1], 0) == CKT_NSS_TRUSTED_DELEGATOR) {
+                        trusted.add(purposes.get(i));
+                    }
+                }
+                purposesBySha1.put(NativeTrustedRootsInternalUtils.toHex(values[0].getByteArray(0, (int) values[0].size())), trusted);
+            }
+
+            int received = 0;
+            int skipped = 0;
+            for (long object : findObjects(session, CKO_CERTIFICATE)) {
+                Memory[] values = getAttributes(session, object, CKA_VALUE, CKA_TRUSTED, CKA_X_DISTRUSTED);
+                if (values[0] == null || !isTrue(values[1]) || isTrue(values[2])) {
+                    skipped++;
+                    continue;
+                }
+
+                byte[] der = values[0].getByteArray(0, (int) values[0].size());
+                // without an NSS trust object the anchor is trusted for any purpose allowed by its extended key usage
+                Set<TrustedCertificatePurpose> purposes = purposesBySha1.getOrDefault(NativeTrustedRootsInternalUtils.sha1hex(der), TrustedCertificatePurpose.all());
+                if (purposes.isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+                result.add(new Anchor(source, NativeTrustedRootsInternalUtils.parseCertificate(der), Collections.unmodifiableSet(purposes)));
+                received++;
+            }
+
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Received " + received + " anchors from " + source + ", " + skipped + " certificates are not anchors or are distrusted");
+            }
+        } finally {
+            call(C_CLOSE_SESSION, session);
+        }
+    }
+
+    private List<Long> findObjects(@NotNull NativeLong session, long objectClass) throws IOException {
+        Memory classValue = new Memory(NativeLong.SIZE);
+        classValue.setNativeLong(0, ulong(objectClass));
+        Memory template;
+        if (objectClass == CKO_CERTIFICATE) {
+            Memory typeValue = new Memory(NativeLong.SIZE);
+            typeValue.setNativeLong(0, ulong(CKC_X_509));
+            template = attributes(new long[]{CKA_CLASS, CKA_CERTIFICATE_TYPE}, new Memory[]{classValue, typeValue});
+        } else {
+            template = attributes(new long[]{CKA_CLASS}, new Memory[]{classValue});
+        }
+
+        check(call(C_FIND_OBJECTS_INIT, session, template, ulong(objectClass == CKO_CERTIFICATE ? 2 : 1)), "C_FindObjectsInit");
+        try {
+            List<Long> result = new ArrayList<>();
+            Memory handles = new Memory(256L * NativeLong.SIZE);
+            NativeLongByReference count = new NativeLongByReference();
+            while (true) {
+                check(call(C_FIND_OBJECTS, session, handles, ulong(256), count), "C_FindObjects");
+                int found = count.getValue().intValue();
+                if (found == 0) {
+                    return result;
+                }
+                for (int i = 0; i < found; i++) {
+                    result.add(getULong(handles, (long) i * NativeLong.SIZE));
+                }
+            }
+        } finally {
+            call(C_FIND_OBJECTS_FINAL, session);
+        }
+    }
+
+    /**
+     * @return attribute values, {@code null} for attributes the object does not have
+     */
+    private Memory[] getAttributes(@NotNull NativeLong session, long object, long... types) throws IOException {
+        Memory template = attributes(types, new Memory[types.length]);
+        checkAttributes(call(C_GET_ATTRIBUTE_VALUE, session, ulong(object), template, ulong(types.length)));
+
+        Memory[] values = new Memory[types.length];
+        for (int i = 0; i < types.length; i++) {
+            long length = getULong(template, (long) i * ATTRIBUTE_SIZE + NativeLong.SIZE + Native.POINTER_SIZE);
+            if (length != CK_UNAVAILABLE_INFORMATION && length > 0) {
+                values[i] = new Memory(length);
+            }
+        }
+
+        template = attributes(types, values);
+        checkAttributes(call(C_GET_ATTRIBUTE_VALUE, session, ulong(object), template, ulong(types.length)));
+        return values;
+    }
+
+    /**
+     * @return CK_ATTRIBUTE array, lengths are sizes of {@code values}
+     */
+    private static Memory attributes(long[] types, Memory[] values) {
+        Memory template = new Memory((long) types.length * ATTRIBUTE_SIZE);
+        template.clear();
+        for (int i = 0; i < types.length; i++) {
+            long offset = (long) i * ATTRIBUTE_SIZE;
+            template.setNativeLong(offset, ulong(types[i]));
+            template.setPointer(offset + NativeLong.SIZE, values[i]);
+            template.setNativeLong(offset + NativeLong.SIZE + Native.POINTER_SIZE, ulong(values[i] == null ? 0 : values[i].size()));
+        }
+        return template;
+    }
+
+    private long call(int index, Object... args) {
+        Function function = Function.getFunction(functionList.getPointer((long) (index + 1) * Native.POINTER_SIZE));
+        NativeLong result = (NativeLong) function.invoke(NativeLong.class, args);
+        return unsigned(result.longValue());
+    }
+
+    private static void checkAttributes(long rv) throws IOException {
+        if (rv != CKR_ATTRIBUTE_SENSITIVE && rv != CKR_ATTRIBUTE_TYPE_INVALID) {
+            check(rv, "C_GetAttributeValue");
+        }
+    }
+
+    private static void check(Object rv, @NotNull String function) throws IOException {
+        check(unsigned(((NativeLong) rv).longValue()), function);
+    }
+
+    private static void check(long rv, @NotNull String function) throws IOException {
+        if (rv != CKR_OK) {
+            throw new IOException(function + " failed: 0x" + Long.toHexString(rv));
+        }
+    }
+
+    private static boolean isTrue(@Nullable Memory bbool) {
+        return bbool != null && bbool.getByte(0) != 0;
+    }
+
+    private static NativeLong ulong(long value) {
+        return new NativeLong(value, true);
+    }
+
+    private static long getULong(@NotNull Pointer pointer, long offset) {
+        return unsigned(pointer.getNativeLong(offset).longValue());
+    }
+
+    private static long unsigned(long value) {
+        return NativeLong.SIZE == 4 ? value & 0xFFFFFFFFL : value;
+    }
+}
@@ -0,0 +1,125 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Malformed blocks met while reading a PEM bundle, see {@link PemReaderUtil#visitPemBundle(java.io.InputStream, String, org.jetbrains.nativecerts.TrustedCertificateVisitor, PemBundleFailures)}.
+ * Every failure is counted, but only the first few are kept with details, so a badly corrupted bundle
+ * does not cost much memory.
+ */
+public final class PemBundleFailures {
+    public enum Kind {
+        /**
+         * A block without an end marker, either at the end of the file or followed by another block
+         */
+        NON_CLOSED_BLOCK,
+        /**
+         * Invalid base64 content
+         */
+        INVALID_ENCODING,
+        /**
+         * Malformed OpenSSL trust settings of a {@code TRUSTED CERTIFICATE} block
+         */
+        INVALID_TRUST_SETTINGS,
+        /**
+         * Certificate which could not be parsed
+         */
+        INVALID_CERTIFICATE,
+    }
+
+    public static final class Failure {
+        private final Kind kind;
+        private final int line;
+        private final String message;
+
+        Failure(@NotNull Kind kind, int line, @NotNull String message) {
+            this.kind = kind;
+            this.line = line;
+            this.message = message;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return 1-based number of the line where the block starts
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " at line " + line + ": " + message;
+        }
+    }
+
+    private static final int DEFAULT_MAX_DETAILED = 10;
+
+    private final int maxDetailed;
+    private final Map<Kind, Integer> counts = new EnumMap<>(Kind.class);
+    private final List<Failure> failures = new ArrayList<>();
+    private int count;
+
+    public PemBundleFailures() {
+        this(DEFAULT_MAX_DETAILED);
+    }
+
+    /**
+     * @param maxDetailed how many failures to keep with details
+     */
+    public PemBundleFailures(int maxDetailed) {
+        this.maxDetailed = maxDetailed;
+    }
+
+    void add(@NotNull Kind kind, int line, @NotNull String message) {
+        count++;
+        counts.merge(kind, 1, Integer::sum);
+        if (failures.size() < maxDetailed) {
+            failures.add(new Failure(kind, line, message));
+        }
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCount(@NotNull Kind kind) {
+        return counts.getOrDefault(kind, 0);
+    }
+
+    /**
+     * @return the first failures in the order they were met
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder message = new StringBuilder();
+        message.append(count).append(" malformed blocks ").append(counts);
+        for (Failure failure : failures) {
+            message.append("\n  ").append(failure);
+        }
+        if (failures.size() < count) {
+            message.append("\n  ...");
+        }
+        return message.toString();
+    }
+}
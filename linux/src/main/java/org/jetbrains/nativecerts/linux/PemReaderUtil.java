@@ -0,0 +1,230 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.DerReader;
+import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.RateLimitedLogger;
+import org.jetbrains.nativecerts.TrustedCertificatePurpose;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+public class PemReaderUtil {
+    private static final Logger LOGGER = Logger.getLogger(PemReaderUtil.class.getName());
+    // a corrupted bundle is read on every discovery, do not flood the log with the same report
+    private static final RateLimitedLogger FAILURES_LOGGER = new RateLimitedLogger(LOGGER, 10, 1, TimeUnit.MINUTES);
+
+    private static final String BEGIN_CERT = "-----BEGIN CERTIFICATE-----";
+    private static final String END_CERT = "-----END CERTIFICATE-----";
+
+    // OpenSSL-specific format: a certificate followed by X509_CERT_AUX trust settings,
+    // e.g. /etc/pki/ca-trust/extracted/openssl/ca-bundle.trust.crt produced by p11-kit
+    private static final String BEGIN_TRUSTED_CERT = "-----BEGIN TRUSTED CERTIFICATE-----";
+    private static final String END_TRUSTED_CERT = "-----END TRUSTED CERTIFICATE-----";
+    private static final int REJECT_TAG = 0xA0; // [0] IMPLICIT SEQUENCE
+
+    public static List<X509Certificate> readPemBundle(@NotNull InputStream inputStream, @NotNull String moniker) throws IOException {
+        List<X509Certificate> result = new ArrayList<>();
+        readPemBundle(inputStream, moniker, result::add);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Reads certificates one by one passing each of them to {@code consumer} right after it was decoded,
+     * so only one certificate is held in memory at a time.
+     * <p>
+     * Besides regular {@code CERTIFICATE} blocks, OpenSSL {@code TRUSTED CERTIFICATE} blocks are supported as well.
+     * Since certificates are passed without purposes, trusted certificates which trust settings
+     * do not allow TLS server authentication are skipped, use {@link #visitPemBundle} to get them all.
+     * </p>
+     * <p>
+     * A malformed block does not fail reading, it's skipped and logged.
+     * </p>
+     *
+     * @param consumer returns {@code false} to stop reading
+     * @return {@code false} if reading was stopped by {@code consumer}, {@code true} if the entire bundle was read
+     */
+    public static boolean readPemBundle(@NotNull InputStream inputStream, @NotNull String moniker, @NotNull Predicate<X509Certificate> consumer) throws IOException {
+        return visitPemBundle(inputStream, moniker, new TrustedCertificateVisitor() {
+            @Override
+            public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+                return consumer.test(certificate);
+            }
+
+            @Override
+            public boolean visit(@NotNull String source, @NotNull X509Certificate certificate, @NotNull Set<TrustedCertificatePurpose> purposes) {
+                return !purposes.contains(TrustedCertificatePurpose.SERVER_AUTH) || consumer.test(certificate);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #readPemBundle(InputStream, String, Predicate)}, but passes {@code moniker} as a source
+     * and purposes from OpenSSL trust settings (all purposes for regular {@code CERTIFICATE} blocks) to {@code visitor}.
+     * Trusted certificates which trust settings reject all known purposes are skipped.
+     * Malformed blocks are skipped as well, a summary of them is logged.
+     *
+     * @param visitor returns {@code false} to stop reading
+     * @return {@code false} if reading was stopped by {@code visitor}, {@code true} if the entire bundle was read
+     */
+    public static boolean visitPemBundle(@NotNull InputStream inputStream, @NotNull String moniker, @NotNull TrustedCertificateVisitor visitor) throws IOException {
+        PemBundleFailures failures = new PemBundleFailures();
+        boolean completed = visitPemBundle(inputStream, moniker, visitor, failures);
+        if (!failures.isEmpty()) {
+            FAILURES_LOGGER.warning(() -> "Skipped malformed certificates in " + moniker + ": " + failures);
+        }
+        return completed;
+    }
+
+    /**
+     * Same as {@link #visitPemBundle(InputStream, String, TrustedCertificateVisitor)}, but does not log malformed blocks.
+     * Every malformed block is skipped and recorded to {@code failures} instead, certificates in other blocks are still read.
+     *
+     * @param failures receives malformed blocks
+     * @return {@code false} if reading was stopped by {@code visitor}, {@code true} if the entire bundle was read
+     */
+    public static boolean visitPemBundle(@NotNull InputStream inputStream,
+                                         @NotNull String moniker,
+                                         @NotNull TrustedCertificateVisitor visitor,
+                                         @NotNull PemBundleFailures failures) throws IOException {
+        try (LineNumberReader reader = new LineNumberReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII))) {
+            String line = reader.readLine();
+            while (line != null) {
+                String outerTrimmed = line.trim();
+                boolean trusted = outerTrimmed.equals(BEGIN_TRUSTED_CERT);
+                if (!trusted && !outerTrimmed.equals(BEGIN_CERT)) {
+                    // skip all non-certificate lines
+                    line = reader.readLine();
+                    continue;
+                }
+
+                int blockLine = reader.getLineNumber();
+                String end = trusted ? END_TRUSTED_CERT : END_CERT;
+                StringBuilder base64encoded = new StringBuilder();
+                boolean closed = false;
+                while ((line = reader.readLine()) != null) {
+                    String innerTrimmed = line.trim();
+                    if (innerTrimmed.equals(end)) {
+                        closed = true;
+                        break;
+                    }
+
+                    if (innerTrimmed.equals(BEGIN_CERT) || innerTrimmed.equals(BEGIN_TRUSTED_CERT)) {
+                        // the end marker is missing, the line starts the next block
+                        break;
+                    }
+
+                    base64encoded.append(innerTrimmed);
+                }
+
+                if (!closed) {
+                    failures.add(PemBundleFailures.Kind.NON_CLOSED_BLOCK, blockLine, "Non-closed '" + outerTrimmed + "' block");
+                    continue;
+                }
+
+                line = reader.readLine();
+                if (!visitBlock(base64encoded.toString(), trusted, blockLine, moniker, visitor, failures)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean visitBlock(@NotNull String base64encoded,
+                                      boolean trusted,
+                                      int blockLine,
+                                      @NotNull String moniker,
+                                      @NotNull TrustedCertificateVisitor visitor,
+                                      @NotNull PemBundleFailures failures) {
+        byte[] derEncoding;
+        try {
+            derEncoding = Base64.getDecoder().decode(base64encoded);
+        } catch (IllegalArgumentException e) {
+            failures.add(PemBundleFailures.Kind.INVALID_ENCODING, blockLine, String.valueOf(e.getMessage()));
+            return true;
+        }
+
+        Set<TrustedCertificatePurpose> purposes = TrustedCertificatePurpose.all();
+        if (trusted) {
+            try {
+                DerReader der = new DerReader(derEncoding);
+                derEncoding = der.readElement();
+                purposes = readTrustSettings(der);
+            } catch (RuntimeException e) {
+                failures.add(PemBundleFailures.Kind.INVALID_TRUST_SETTINGS, blockLine, String.valueOf(e.getMessage()));
+                return true;
+            }
+
+            if (purposes.isEmpty()) {
+                LOGGER.fine("Skipping certificate distrusted for all known purposes at line " + blockLine + " : " + moniker);
+                return true;
+            }
+        }
+
+        X509Certificate certificate;
+        try {
+            certificate = NativeTrustedRootsInternalUtils.parseCertificate(derEncoding);
+        } catch (RuntimeException e) {
+            failures.add(PemBundleFailures.Kind.INVALID_CERTIFICATE, blockLine, String.valueOf(e.getMessage()));
+            return true;
+        }
+
+        return visitor.visit(moniker, certificate, purposes);
+    }
+
+    /**
+     * @param der positioned right after the certificate of a {@code TRUSTED CERTIFICATE} block
+     * @return purposes the certificate is trusted for
+     */
+    private static Set<TrustedCertificatePurpose> readTrustSettings(@NotNull DerReader der) {
+        if (!der.hasMore()) {
+            return TrustedCertificatePurpose.all();
+        }
+
+        // X509_CERT_AUX ::= SEQUENCE {
+        //     trust       SEQUENCE OF OBJECT IDENTIFIER OPTIONAL,
+        //     reject  [0] SEQUENCE OF OBJECT IDENTIFIER OPTIONAL,
+        //     alias       UTF8String OPTIONAL,
+        //     keyid       OCTET STRING OPTIONAL,
+        //     other   [1] SEQUENCE OF AlgorithmIdentifier OPTIONAL
+        // }
+        DerReader aux = der.readConstructed(DerReader.TAG_SEQUENCE);
+
+        Set<TrustedCertificatePurpose> result = EnumSet.allOf(TrustedCertificatePurpose.class);
+        if (aux.peekTag() == DerReader.TAG_SEQUENCE) {
+            List<String> trust = readOids(aux.readConstructed(DerReader.TAG_SEQUENCE));
+            if (!trust.isEmpty()) {
+                result.retainAll(TrustedCertificatePurpose.fromOids(trust));
+            }
+        }
+        if (aux.peekTag() == REJECT_TAG) {
+            result.removeAll(TrustedCertificatePurpose.fromOids(readOids(aux.readConstructed(REJECT_TAG))));
+        }
+
+        return result;
+    }
+
+    private static List<String> readOids(@NotNull DerReader der) {
+        List<String> result = new ArrayList<>();
+        while (der.hasMore()) {
+            result.add(der.readOid());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,300 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.NativeCertsSetupLoggingRule;
+import org.jetbrains.nativecerts.NativeCertsTestUtil;
+import org.jetbrains.nativecerts.NativeTrustedCertificates;
+import org.jetbrains.nativecerts.NativeTrustedRootsProvider;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+import org.jetbrains.nativecerts.fixtures.OperationCost;
+import org.jetbrains.nativecerts.fixtures.SyntheticCorpus;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.isLinux;
+
+public class LinuxTrustedCertificatesUtilTest {
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void smoke() {
+        Assume.assumeTrue(isLinux);
+
+        Collection<X509Certificate> list = LinuxTrustedCertificatesUtil.getSystemCertificates();
+        Assert.assertTrue(String.valueOf(list.size()), list.size() > 100);
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void visit() {
+        Assume.assumeTrue(isLinux);
+
+        Map<String, List<X509Certificate>> bySource = LinuxTrustedCertificatesUtil.getSystemCertificatesBySource();
+        Assert.assertFalse(bySource.isEmpty());
+
+        Set<String> visitedSources = new HashSet<>();
+        int[] count = new int[1];
+        Assert.assertTrue(LinuxTrustedCertificatesUtil.visitSystemCertificates((source, certificate) -> {
+            visitedSources.add(source);
+            count[0]++;
+            return true;
+        }));
+        Assert.assertEquals(bySource.keySet(), visitedSources);
+        Assert.assertEquals(bySource.values().stream().mapToInt(List::size).sum(), count[0]);
+
+        count[0] = 0;
+        Assert.assertFalse(LinuxTrustedCertificatesUtil.visitSystemCertificates((source, certificate) -> ++count[0] < 5));
+        Assert.assertEquals(5, count[0]);
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void concurrentDirectoryRead() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path dir = temporaryFolder.getRoot().toPath();
+        for (int i = 0; i < bundle.size(); i++) {
+            String pem = "-----BEGIN CERTIFICATE-----\n" +
+                    Base64.getMimeEncoder().encodeToString(bundle.get(i).getEncoded()) +
+                    "\n-----END CERTIFICATE-----\n";
+            Files.writeString(dir.resolve(String.format("%03d.pem", i)), pem);
+        }
+        // a broken file must not affect others
+        Files.writeString(dir.resolve("050-broken.pem"), "-----BEGIN CERTIFICATE-----\nAAAA\n-----END CERTIFICATE-----\n");
+        Files.createDirectory(dir.resolve("subdirectory"));
+
+        for (int parallelism : new int[]{1, 2, 8, 1000}) {
+            List<X509Certificate> visited = new ArrayList<>();
+            List<String> visitedSources = new ArrayList<>();
+            List<String> completedSources = new ArrayList<>();
+            Assert.assertTrue(LinuxTrustedCertificatesUtil.tryReadFromDirectory(dir, new HashSet<>(), parallelism, new TrustedCertificateVisitor() {
+                @Override
+                public boolean visit(@NotNull String source, @NotNull X509Certificate certificate) {
+                    visited.add(certificate);
+                    visitedSources.add(source);
+                    return true;
+                }
+
+                @Override
+                public void sourceCompleted(@NotNull String source) {
+                    Assert.assertEquals(visitedSources.get(visitedSources.size() - 1), source);
+                    completedSources.add(source);
+                }
+            }));
+            Assert.assertEquals("parallelism " + parallelism, bundle, visited);
+            Assert.assertEquals(visitedSources, completedSources);
+
+            visited.clear();
+            Assert.assertFalse(LinuxTrustedCertificatesUtil.tryReadFromDirectory(dir, new HashSet<>(), parallelism, (source, certificate) -> {
+                visited.add(certificate);
+                return visited.size() < 5;
+            }));
+            Assert.assertEquals(bundle.subList(0, 5), visited);
+        }
+
+        Assert.assertEquals(4, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void visitorFailureIsPropagated() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path dir = temporaryFolder.getRoot().toPath();
+        for (int i = 0; i < 3; i++) {
+            String pem = "-----BEGIN CERTIFICATE-----\n" +
+                    Base64.getMimeEncoder().encodeToString(bundle.get(i).getEncoded()) +
+                    "\n-----END CERTIFICATE-----\n";
+            Files.writeString(dir.resolve(String.format("%03d.pem", i)), pem);
+        }
+
+        for (int parallelism : new int[]{1, 8}) {
+            try {
+                LinuxTrustedCertificatesUtil.tryReadFromDirectory(dir, new HashSet<>(), parallelism, (source, certificate) -> {
+                    throw new IllegalStateException("visitor bug");
+                });
+                Assert.fail("parallelism " + parallelism);
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("visitor bug", e.getMessage());
+            }
+        }
+
+        // not blamed on the files
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void p11KitFallback() throws Exception {
+        Assume.assumeTrue(isLinux);
+
+        Assert.assertNull(LinuxTrustedCertificatesUtil.tryReadFromP11Kit(List.of("/nonexistent/p11-kit-trust.so")));
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+
+        Path notModule = temporaryFolder.newFile("p11-kit-trust.so").toPath();
+        Files.writeString(notModule, "not a shared library");
+        Assert.assertNull(LinuxTrustedCertificatesUtil.tryReadFromP11Kit(List.of(notModule.toString())));
+        Assert.assertEquals(1, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void p11Kit() {
+        Assume.assumeTrue(isLinux);
+        Assume.assumeTrue(P11KitTrustModule.possibleModulePaths.stream().anyMatch(path -> Files.isRegularFile(Path.of(path))));
+
+        List<P11KitTrustModule.Anchor> anchors = LinuxTrustedCertificatesUtil.tryReadFromP11Kit(P11KitTrustModule.possibleModulePaths);
+        Assert.assertNotNull(anchors);
+        Assert.assertTrue(String.valueOf(anchors.size()), anchors.size() > 100);
+        Assert.assertTrue(anchors.stream().allMatch(anchor -> !anchor.purposes.isEmpty()));
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void providerIsDiscovered() {
+        Assume.assumeTrue(isLinux);
+
+        Collection<X509Certificate> certificates = NativeTrustedCertificates.getCustomOsSpecificTrustedCertificates();
+        Assert.assertEquals(new HashSet<>(LinuxTrustedCertificatesUtil.getSystemCertificates()), certificates);
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void keyStore() throws Exception {
+        Assume.assumeTrue(isLinux);
+
+        KeyStore keyStore = KeyStore.getInstance(NativeTrustedRootsProvider.KEY_STORE_TYPE, new NativeTrustedRootsProvider());
+        keyStore.load(null, null);
+        Assert.assertEquals(NativeTrustedCertificates.getLatestCustomOsSpecificTrustedCertificatesSnapshot().size(), keyStore.size());
+        Assert.assertTrue(String.valueOf(keyStore.size()), keyStore.size() > 100);
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void syntheticTree() throws Exception {
+        Assume.assumeTrue(isLinux);
+
+        SyntheticCorpus.Tree tree = new SyntheticCorpus(1).createTree(temporaryFolder.getRoot().toPath(), 500);
+        Map<String, List<X509Certificate>> bySource = withSystemRoot(tree.getRoot(), LinuxTrustedCertificatesUtil::getSystemCertificatesBySource);
+
+        Path bundle = tree.getRoot().resolve("etc/ssl/certs/ca-certificates.crt");
+        Assert.assertEquals(tree.getBundle().getCertificates(), bySource.get(bundle.toString()));
+        Assert.assertEquals(tree.getBundle().getCertificates().size() + tree.getDirectoryCertificates(),
+                bySource.values().stream().mapToInt(List::size).sum());
+        Assert.assertEquals(new HashSet<>(tree.getRoots()), withSystemRoot(tree.getRoot(), LinuxTrustedCertificatesUtil::getSystemCertificates));
+
+        // malformed blocks of the bundle, reported once per read
+        Assert.assertEquals(2, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void staleExtractedStore() throws Exception {
+        Assume.assumeTrue(isLinux);
+
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        Path root = temporaryFolder.getRoot().toPath();
+        Path certs = Files.createDirectories(root.resolve("etc/ssl/certs"));
+        Path store = Files.createDirectories(certs.resolve("java")).resolve("cacerts");
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        for (int i = 0; i < 10; i++) {
+            keyStore.setCertificateEntry("ca" + i, bundle.get(i));
+        }
+        try (OutputStream stream = Files.newOutputStream(store)) {
+            keyStore.store(stream, "changeit".toCharArray());
+        }
+
+        Path pemBundle = certs.resolve("ca-certificates.crt");
+        StringBuilder pem = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            pem.append(toPem(bundle.get(i)));
+        }
+        Files.writeString(pemBundle, pem);
+
+        FileTime extracted = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(pemBundle, FileTime.fromMillis(extracted.toMillis() - 1000));
+        Files.setLastModifiedTime(certs, FileTime.fromMillis(extracted.toMillis() - 1000));
+        Files.setLastModifiedTime(store, extracted);
+
+        Map<String, List<X509Certificate>> bySource = withSystemRoot(root, LinuxTrustedCertificatesUtil::getSystemCertificatesBySource);
+        Assert.assertEquals(List.of(store.toString()), new ArrayList<>(bySource.keySet()));
+        Assert.assertEquals(new HashSet<>(bundle.subList(0, 10)), new HashSet<>(bySource.get(store.toString())));
+
+        // a certificate dropped into the directory after the store was extracted
+        Path added = certs.resolve("added.pem");
+        Files.writeString(added, toPem(bundle.get(10)));
+        Files.setLastModifiedTime(certs, FileTime.fromMillis(extracted.toMillis() + 1000));
+
+        bySource = withSystemRoot(root, LinuxTrustedCertificatesUtil::getSystemCertificatesBySource);
+        Assert.assertEquals(List.of(pemBundle.toString(), added.toString()), new ArrayList<>(bySource.keySet()));
+        Assert.assertEquals(new HashSet<>(bundle.subList(0, 11)), withSystemRoot(root, LinuxTrustedCertificatesUtil::getSystemCertificates));
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    @Test
+    public void linearScaling() throws Exception {
+        Assume.assumeTrue(isLinux);
+
+        SyntheticCorpus corpus = new SyntheticCorpus(2);
+        SyntheticCorpus.Tree small = corpus.createTree(temporaryFolder.newFolder().toPath(), 250);
+        SyntheticCorpus.Tree large = corpus.createTree(temporaryFolder.newFolder().toPath(), 1000);
+
+        // read directories on the calling thread, so all allocations are measured
+        String parallelism = System.setProperty(LinuxTrustedCertificatesUtil.DIRECTORY_READ_PARALLELISM_PROPERTY, "1");
+        try {
+            OperationCost smallCost = OperationCost.measure(5, () -> withSystemRoot(small.getRoot(), LinuxTrustedCertificatesUtil::getSystemCertificates));
+            OperationCost largeCost = OperationCost.measure(5, () -> withSystemRoot(large.getRoot(), LinuxTrustedCertificatesUtil::getSystemCertificates));
+            String violation = OperationCost.checkLinear(smallCost, countCertificates(small), largeCost, countCertificates(large));
+            Assert.assertNull(violation, violation);
+        } finally {
+            if (parallelism == null) {
+                System.clearProperty(LinuxTrustedCertificatesUtil.DIRECTORY_READ_PARALLELISM_PROPERTY);
+            } else {
+                System.setProperty(LinuxTrustedCertificatesUtil.DIRECTORY_READ_PARALLELISM_PROPERTY, parallelism);
+            }
+        }
+    }
+
+    private static String toPem(X509Certificate certificate) throws Exception {
+        return "-----BEGIN CERTIFICATE-----\n" +
+                Base64.getMimeEncoder().encodeToString(certificate.getEncoded()) +
+                "\n-----END CERTIFICATE-----\n";
+    }
+
+    private static int countCertificates(SyntheticCorpus.Tree tree) {
+        return tree.getBundle().getCertificates().size() + tree.getDirectoryCertificates();
+    }
+
+    private static <T> T withSystemRoot(Path root, Supplier<T> discovery) {
+        System.setProperty(LinuxTrustedCertificatesUtil.SYSTEM_ROOT_PROPERTY, root.toString());
+        try {
+            return discovery.get();
+        } finally {
+            System.clearProperty(LinuxTrustedCertificatesUtil.SYSTEM_ROOT_PROPERTY);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.jetbrains.nativecerts.linux;
+
+import org.jetbrains.nativecerts.NativeCertsSetupLoggingRule;
+import org.jetbrains.nativecerts.NativeCertsTestUtil;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils.isLinux;
+
+public class OpenSslHashedDirectoryTest {
+    @Rule
+    public final NativeCertsSetupLoggingRule loggingRule = new NativeCertsSetupLoggingRule();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void subjectNameHash() {
+        // expected values are printed by openssl x509 -subject_hash
+        // C=US, O=Acme  Corp, CN=  Mixed   CASE\tName  (UTF8String values with extra whitespace)
+        Assert.assertEquals("32fcdba0", OpenSslHashedDirectory.subjectNameHash(new X500Principal(Base64.getDecoder().decode(
+                "MEExCzAJBgNVBAYTAlVTMRMwEQYDVQQKDApBY21lICBDb3JwMR0wGwYDVQQDDBQgIE1peGVkICAgQ0FTRQlOYW1lIA=="))));
+        // CN=b+OU=A Unit, O=Ümläut  GmbH, DC=Example (multi-valued RDN, non-ASCII and IA5String values)
+        Assert.assertEquals("a4c33dc1", OpenSslHashedDirectory.subjectNameHash(new X500Principal(Base64.getDecoder().decode(
+                "ME0xGTAIBgNVBAMMAWIwDQYDVQQLDAZBIFVuaXQxFzAVBgNVBAoMDsOcbWzDpHV0ICBHbWJIMRcwFQYKCZImiZPyLGQBGRYHRXhhbXBsZQ=="))));
+    }
+
+    @Test
+    public void systemHashedDirectory() throws Exception {
+        Path dir = Path.of("/etc/ssl/certs");
+        Assume.assumeTrue(isLinux && Files.isDirectory(dir));
+
+        Pattern hashed = Pattern.compile("([0-9a-f]{8})\\.([0-9]+)");
+        int checked = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = hashed.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                try (InputStream stream = Files.newInputStream(file)) {
+                    for (X509Certificate certificate : PemReaderUtil.readPemBundle(stream, file.toString())) {
+                        Assert.assertEquals(file.toString(), matcher.group(1), OpenSslHashedDirectory.subjectNameHash(certificate.getSubjectX500Principal()));
+                        checked++;
+                    }
+                }
+            }
+        }
+        Assume.assumeTrue(checked > 0);
+
+        OpenSslHashedDirectory directory = new OpenSslHashedDirectory(dir);
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        X509Certificate root = bundle.get(0);
+        List<X509Certificate> found = directory.findBySubject(root.getSubjectX500Principal());
+        Assume.assumeFalse(found.isEmpty());
+        Assert.assertTrue(directory.getParsedFileCount() <= 2);
+    }
+
+    @Test
+    public void lazyLookup() throws Exception {
+        List<X509Certificate> bundle = NativeCertsTestUtil.readCertificateBundle("/ca-certificates.crt");
+        X509Certificate root = bundle.get(0);
+        X509Certificate other = bundle.get(1);
+        Path dir = temporaryFolder.getRoot().toPath();
+        String hash = OpenSslHashedDirectory.subjectNameHash(root.getSubjectX500Principal());
+        // a hash collision: a certificate with another subject in the next file
+        writePem(dir.resolve(hash + ".0"), other);
+        writePem(dir.resolve(hash + ".1"), root);
+        // not reachable, numbering has a gap
+        writePem(dir.resolve(hash + ".3"), root);
+
+        OpenSslHashedDirectory directory = new OpenSslHashedDirectory(dir);
+        Assert.assertEquals(List.of(root), directory.findBySubject(root.getSubjectX500Principal()));
+        Assert.assertEquals(2, directory.getParsedFileCount());
+        Assert.assertEquals(List.of(root), directory.findBySubject(root.getSubjectX500Principal()));
+        Assert.assertEquals(2, directory.getParsedFileCount());
+
+        Set<TrustAnchor> anchors = directory.getTrustAnchors(new X509Certificate[]{root});
+        Assert.assertEquals(1, anchors.size());
+        Assert.assertSame(root, anchors.iterator().next().getTrustedCert());
+        Assert.assertTrue(directory.findBySubject(other.getSubjectX500Principal()).isEmpty());
+
+        directory.clear();
+        directory.findBySubject(root.getSubjectX500Principal());
+        Assert.assertEquals(4, directory.getParsedFileCount());
+
+        Assert.assertEquals(0, loggingRule.numberOfWarningsOrAbove());
+    }
+
+    private static void writePem(Path file, X509Certificate certificate) throws Exception {
+        Files.writeString(file, "-----BEGIN CERTIFICATE-----\n" +
+                Base64.getMimeEncoder().encodeToString(certificate.getEncoded()) +
+                "\n-----END CERTIFICATE-----\n");
+    }
+}
@@ -0,0 +1,22 @@
+package org.jetbrains.nativecerts.mac;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.NativeTrustedCertificatesProvider;
+import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+
+/**
+ * Reads trust settings of admin and user domains via Security Framework. JNA is not loaded until {@link #visit} is called
+ */
+public final class MacTrustedCertificatesProvider implements NativeTrustedCertificatesProvider {
+    @Override
+    public boolean isSupported() {
+        return NativeTrustedRootsInternalUtils.isMac;
+    }
+
+    @Override
+    public boolean visit(@NotNull TrustedCertificateVisitor visitor) {
+        return SecurityFrameworkUtil.visitTrustedRoots(SecurityFramework.SecTrustSettingsDomain.admin, "admin", visitor) &&
+                SecurityFrameworkUtil.visitTrustedRoots(SecurityFramework.SecTrustSettingsDomain.user, "user", visitor);
+    }
+}
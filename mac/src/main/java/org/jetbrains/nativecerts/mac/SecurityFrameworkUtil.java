@@ -4,11 +4,16 @@ import com.sun.jna.Pointer;
 import com.sun.jna.platform.mac.CoreFoundation;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.TrustedCertificatePurpose;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
 
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,10 +52,46 @@ public class SecurityFrameworkUtil {
     public static List<X509Certificate> SecTrustSettingsCopyCertificates(
             @NotNull SecurityFramework.SecTrustSettingsDomain domain,
             Predicate<SecurityFramework.SecCertificateRef> predicate) {
+        List<X509Certificate> result = new ArrayList<>();
+        SecTrustSettingsCopyCertificates(domain, predicate, result::add);
+        return result;
+    }
+
+    /**
+     * Same as {@link #getTrustedRoots}, but certificates are passed to {@code visitor} one by one
+     * as soon as they are decoded and are not retained, together with the purposes their trust settings allow.
+     *
+     * @param source source name to pass to {@code visitor}
+     * @return {@code false} if enumeration was stopped by {@code visitor}
+     */
+    public static boolean visitTrustedRoots(@NotNull SecurityFramework.SecTrustSettingsDomain domain,
+                                            @NotNull String source,
+                                            @NotNull TrustedCertificateVisitor visitor) {
+        AtomicReference<Set<TrustedCertificatePurpose>> purposes = new AtomicReference<>();
+        boolean completed = SecTrustSettingsCopyCertificates(domain,
+                cert -> {
+                    purposes.set(getTrustedRootPurposes(domain, cert));
+                    return !purposes.get().isEmpty();
+                },
+                certificate -> visitor.visit(source, certificate, purposes.get()));
+        if (completed) {
+            visitor.sourceCompleted(source);
+        }
+        return completed;
+    }
+
+    /**
+     * @param consumer returns {@code false} to stop enumeration
+     * @return {@code false} if enumeration was stopped by {@code consumer}
+     */
+    public static boolean SecTrustSettingsCopyCertificates(
+            @NotNull SecurityFramework.SecTrustSettingsDomain domain,
+            @NotNull Predicate<SecurityFramework.SecCertificateRef> predicate,
+            @NotNull Predicate<X509Certificate> consumer) {
         CFArrayRefByReference returnedCertArray = new CFArrayRefByReference();
         SecurityFramework.OSStatus rc = SecurityFramework.INSTANCE.SecTrustSettingsCopyCertificates(domain, returnedCertArray);
         if (SecurityFramework.OSStatus.errSecNoTrustSettings.equals(rc)) {
-            return Collections.emptyList();
+            return true;
         }
 
         if (!SecurityFramework.OSStatus.errSecSuccess.equals(rc)) {
@@ -60,27 +101,31 @@ public class SecurityFrameworkUtil {
 
         CoreFoundation.CFArrayRef certArray = returnedCertArray.getArray();
         if (certArray == null) {
-            return Collections.emptyList();
+            return true;
         }
 
         try {
-            List<X509Certificate> result = new ArrayList<>();
-
             for (int i = 0; i < certArray.getCount(); i++) {
                 SecurityFramework.SecCertificateRef secCertificateRef = new SecurityFramework.SecCertificateRef(certArray.getValueAtIndex(i));
                 if (!predicate.test(secCertificateRef)) {
                     continue;
                 }
 
+                X509Certificate certificate;
                 try {
-                    result.add(getX509Certificate(secCertificateRef));
+                    certificate = getX509Certificate(secCertificateRef);
                 } catch (Throwable parsingError) {
                     String certificateDescription = CoreFoundation.INSTANCE.CFCopyDescription(secCertificateRef).stringValue();
                     LOGGER.warning(renderExceptionMessage("Unable to parse certificate '" + certificateDescription + "'", parsingError));
+                    continue;
+                }
+
+                if (!consumer.test(certificate)) {
+                    return false;
                 }
             }
 
-            return result;
+            return true;
         } finally {
             certArray.release();
         }
@@ -113,6 +158,17 @@ public class SecurityFrameworkUtil {
     }
 
     public static boolean isTrustedRoot(SecurityFramework.SecTrustSettingsDomain domain, SecurityFramework.SecCertificateRef certificateRef) {
+        return !getTrustedRootPurposes(domain, certificateRef).isEmpty();
+    }
+
+    /**
+     * Evaluates certificate trust settings in the same way as {@link #isTrustedRoot}, but keeps the policy constraints
+     * of every matched usage constraints dictionary: a dictionary without a policy allows all purposes,
+     * a {@code kSecPolicyAppleSSL} one allows TLS server and client authentication.
+     *
+     * @return purposes the certificate is trusted for as a root, an empty set if it's not a trusted root
+     */
+    public static Set<TrustedCertificatePurpose> getTrustedRootPurposes(SecurityFramework.SecTrustSettingsDomain domain, SecurityFramework.SecCertificateRef certificateRef) {
         boolean selfSignedCertificate = isSelfSignedCertificate(getX509Certificate(certificateRef));
 
         CFArrayRefByReference trustedSettingsRef = new CFArrayRefByReference();
@@ -121,7 +177,7 @@ public class SecurityFrameworkUtil {
         CoreFoundation.CFArrayRef trustedSettingsArray = trustedSettingsRef.getArray();
         if (SecurityFramework.OSStatus.errSecItemNotFound.equals(rc) || trustedSettingsArray == null) {
             // No trust record => do not trust
-            return false;
+            return Collections.emptySet();
         }
 
         String certificateDescription = CoreFoundation.INSTANCE.CFCopyDescription(certificateRef).stringValue();
@@ -139,9 +195,10 @@ public class SecurityFrameworkUtil {
             if (trustedSettingsArray.getCount() == 0) {
                 // https://developer.apple.com/documentation/security/1400261-sectrustsettingscopytrustsetting
                 // An empty trust settings array (that is, the trustSettings parameter returns a valid but empty CFArray) means "always trust this certificate" with an overall trust setting for the certificate of kSecTrustSettingsResultTrustRoot
-                return true;
+                return TrustedCertificatePurpose.all();
             }
 
+            Set<TrustedCertificatePurpose> purposes = EnumSet.noneOf(TrustedCertificatePurpose.class);
             for (int i = 0; i < trustedSettingsArray.getCount(); i++) {
                 CoreFoundation.CFDictionaryRef constraints = new CoreFoundation.CFDictionaryRef(trustedSettingsArray.getValueAtIndex(i));
                 CoreFoundation.CFIndex constraintsCount = CoreFoundationExt.INSTANCE.CFDictionaryGetCount(constraints);
@@ -195,6 +252,7 @@ public class SecurityFrameworkUtil {
                 }
 
                 // kSecTrustSettingsPolicy
+                Set<TrustedCertificatePurpose> constraintsPurposes = TrustedCertificatePurpose.all();
                 {
                     Pointer value = constraints.getValue(SecurityFramework.INSTANCE.kSecTrustSettingsPolicy);
                     if (value != null) {
@@ -217,6 +275,7 @@ public class SecurityFrameworkUtil {
                             policyDictionaryRef.release();
                         }
 
+                        constraintsPurposes = EnumSet.of(TrustedCertificatePurpose.SERVER_AUTH, TrustedCertificatePurpose.CLIENT_AUTH);
                         processedConstrains++;
                     }
                 }
@@ -225,12 +284,12 @@ public class SecurityFrameworkUtil {
                     // return only certificates with known and checked constraints attached to them
                     // this way we'll probably miss some valid trusted roots, but
                     // there is no way to evaluate other and possibly unknown constraints
-                    return true;
+                    purposes.addAll(constraintsPurposes);
                 }
             }
 
             // No matched constraints => not a trusted root
-            return false;
+            return purposes;
         } finally {
             trustedSettingsArray.release();
         }
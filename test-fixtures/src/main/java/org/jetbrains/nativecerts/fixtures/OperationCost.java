@@ -0,0 +1,92 @@
+package org.jetbrains.nativecerts.fixtures;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Time and bytes allocated by the calling thread for an operation, used by scale tests
+ * to check that costs grow linearly with the input size.
+ * <p>
+ * Allocations are checked by default, since they barely depend on the machine load.
+ * Wall-clock time is checked only with {@code -D}{@value #TIMING_PROPERTY}{@code =true}, e.g. on a dedicated machine.
+ * </p>
+ */
+public final class OperationCost {
+    public static final String TIMING_PROPERTY = "scale.timing";
+
+    private final long nanos;
+    private final long allocatedBytes;
+
+    private OperationCost(long nanos, long allocatedBytes) {
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Runs {@code operation} once to warm up, then {@code repetitions} times
+     *
+     * @return minimal time and allocations among repetitions, which are the least affected by GC and JIT
+     */
+    public static OperationCost measure(int repetitions, @NotNull Callable<?> operation) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        operation.call();
+        long nanos = Long.MAX_VALUE;
+        long allocatedBytes = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            operation.call();
+            nanos = Math.min(nanos, System.nanoTime() - start);
+            allocatedBytes = Math.min(allocatedBytes, threads.getThreadAllocatedBytes(threadId) - allocatedBefore);
+        }
+        return new OperationCost(nanos, allocatedBytes);
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Allocated bytes per certificate may grow at most 1.5 times, time per certificate 2.5 times since it's noisy.
+     * A quadratic operation exceeds both limits once the input grows 4 times.
+     * Time is compared only if {@value #TIMING_PROPERTY} system property is {@code true}.
+     *
+     * @param smallerCertificates number of certificates processed by the {@code smaller} operation
+     * @param largerCertificates  number of certificates processed by the {@code larger} operation
+     * @return {@code null} if costs grow linearly, a description of the violation otherwise
+     */
+    public static @Nullable String checkLinear(@NotNull OperationCost smaller, int smallerCertificates,
+                                               @NotNull OperationCost larger, int largerCertificates) {
+        double smallerBytes = (double) smaller.allocatedBytes / smallerCertificates;
+        double largerBytes = (double) larger.allocatedBytes / largerCertificates;
+        if (largerBytes > smallerBytes * 1.5) {
+            return String.format(Locale.ROOT, "allocations per certificate grew from %.0f to %.0f bytes: %s -> %s",
+                    smallerBytes, largerBytes, smaller, larger);
+        }
+
+        if (Boolean.getBoolean(TIMING_PROPERTY)) {
+            double smallerNanos = (double) Math.max(1, smaller.nanos) / smallerCertificates;
+            double largerNanos = (double) larger.nanos / largerCertificates;
+            if (largerNanos > smallerNanos * 2.5) {
+                return String.format(Locale.ROOT, "time per certificate grew from %.0f to %.0f ns: %s -> %s",
+                        smallerNanos, largerNanos, smaller, larger);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%.3fms, %d bytes", nanos / 1_000_000.0, allocatedBytes);
+    }
+}
@@ -0,0 +1,124 @@
+package org.jetbrains.nativecerts.fixtures;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates EC P-256 certificates for tests and benchmarks
+ */
+public class SyntheticCertificates {
+    private static final AtomicLong serialNumbers = new AtomicLong(System.currentTimeMillis());
+
+    public static KeyPair generateKeyPair() {
+        return generateKeyPair(null);
+    }
+
+    /**
+     * @param random source of the key, {@code null} for the default one
+     */
+    static KeyPair generateKeyPair(@Nullable SecureRandom random) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            if (random == null) {
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            } else {
+                generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+            }
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static X509Certificate createCaCertificate(@NotNull String commonName, @NotNull KeyPair keyPair) {
+        return createCertificate(commonName, keyPair, commonName, keyPair, true, null);
+    }
+
+    /**
+     * @param dnsName subject alternative name for a server certificate, {@code null} for none
+     */
+    public static X509Certificate createCertificate(@NotNull String commonName,
+                                                    @NotNull KeyPair keyPair,
+                                                    @NotNull String issuerCommonName,
+                                                    @NotNull KeyPair issuerKeyPair,
+                                                    boolean ca,
+                                                    @Nullable String dnsName) {
+        Instant now = Instant.now();
+        return createCertificate(new X500Name("CN=" + commonName), keyPair, new X500Name("CN=" + issuerCommonName), issuerKeyPair, ca, dnsName,
+                BigInteger.valueOf(serialNumbers.incrementAndGet()),
+                Date.from(now.minus(1, ChronoUnit.DAYS)),
+                Date.from(now.plus(365, ChronoUnit.DAYS)),
+                null);
+    }
+
+    /**
+     * @param random source of signature nonces, {@code null} for the default one
+     */
+    static X509Certificate createCertificate(@NotNull X500Name subject,
+                                             @NotNull KeyPair keyPair,
+                                             @NotNull X500Name issuer,
+                                             @NotNull KeyPair issuerKeyPair,
+                                             boolean ca,
+                                             @Nullable String dnsName,
+                                             @NotNull BigInteger serialNumber,
+                                             @NotNull Date notBefore,
+                                             @NotNull Date notAfter,
+                                             @Nullable SecureRandom random) {
+        try {
+            JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                    issuer, serialNumber, notBefore, notAfter, subject, keyPair.getPublic());
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+            builder.addExtension(Extension.keyUsage, true, new KeyUsage(ca
+                    ? KeyUsage.keyCertSign | KeyUsage.cRLSign
+                    : KeyUsage.digitalSignature));
+            if (dnsName != null) {
+                builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName(GeneralName.dNSName, dnsName)));
+            }
+
+            JcaContentSignerBuilder signerBuilder = new JcaContentSignerBuilder("SHA256withECDSA");
+            if (random != null) {
+                signerBuilder.setSecureRandom(random);
+            }
+            ContentSigner signer = signerBuilder.build(issuerKeyPair.getPrivate());
+            return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return {@code count} distinct self-signed CA certificates sharing a single key pair,
+     * which is enough for trust anchors that never sign anything
+     */
+    public static List<X509Certificate> createAnchors(@NotNull String prefix, int count) {
+        KeyPair keyPair = generateKeyPair();
+        List<X509Certificate> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(createCaCertificate(prefix + " " + i, keyPair));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,279 @@
+package org.jetbrains.nativecerts.fixtures;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic generator of trust anchors, PEM bundles and {@code /etc/ssl}-like trees for scale tests:
+ * the same seed always produces byte-identical output, so failures are reproducible.
+ * <p>
+ * Bundles mix the PEM variants seen in distribution bundles (CRLF line endings, unusual line lengths, indentation,
+ * comments with non-ASCII characters, OpenSSL {@code TRUSTED CERTIFICATE} blocks) with duplicates and malformed blocks.
+ * </p>
+ */
+public final class SyntheticCorpus {
+    private static final Date NOT_BEFORE = Date.from(Instant.parse("2020-01-01T00:00:00Z"));
+    private static final Date NOT_AFTER = Date.from(Instant.parse("2050-01-01T00:00:00Z"));
+
+    private static final int STYLES = 7;
+    private static final int MALFORMED_STYLES = 3;
+
+    private final long seed;
+    private final SecureRandom secureRandom;
+    private final Random random;
+    private final KeyPair keyPair;
+    private long serialNumber;
+
+    public SyntheticCorpus(long seed) {
+        this.seed = seed;
+        try {
+            secureRandom = SecureRandom.getInstance("SHA1PRNG");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        // seeding before the first use makes SHA1PRNG output fully determined by the seed
+        secureRandom.setSeed(seed);
+        random = new Random(seed);
+        keyPair = SyntheticCertificates.generateKeyPair(secureRandom);
+    }
+
+    /**
+     * @return {@code count} distinct self-signed CA certificates sharing a single key pair
+     */
+    public List<X509Certificate> createRoots(@NotNull String prefix, int count) {
+        List<X509Certificate> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            X500Name name = new X500Name("CN=" + prefix + " " + i + ", O=Synthetic Corpus " + seed);
+            result.add(SyntheticCertificates.createCertificate(name, keyPair, name, keyPair, true, null,
+                    BigInteger.valueOf(++serialNumber), NOT_BEFORE, NOT_AFTER, secureRandom));
+        }
+        return result;
+    }
+
+    /**
+     * @param duplicates      number of additional blocks repeating random certificates of {@code certificates}
+     * @param malformedBlocks number of blocks with invalid base64, truncated certificates or missing end markers
+     */
+    public Bundle createBundle(@NotNull List<X509Certificate> certificates, int duplicates, int malformedBlocks) {
+        List<X509Certificate> blocks = new ArrayList<>(certificates);
+        for (int i = 0; i < duplicates; i++) {
+            blocks.add(random.nextInt(blocks.size() + 1), certificates.get(random.nextInt(certificates.size())));
+        }
+
+        // null stands for a malformed block
+        for (int i = 0; i < malformedBlocks; i++) {
+            blocks.add(random.nextInt(blocks.size() + 1), null);
+        }
+
+        StringBuilder text = new StringBuilder();
+        List<X509Certificate> expected = new ArrayList<>(blocks.size());
+        for (X509Certificate certificate : blocks) {
+            if (certificate == null) {
+                appendMalformedBlock(text, random.nextInt(MALFORMED_STYLES));
+            } else {
+                appendBlock(text, certificate, random.nextInt(STYLES));
+                expected.add(certificate);
+            }
+        }
+        return new Bundle(text.toString().getBytes(StandardCharsets.UTF_8), expected, malformedBlocks);
+    }
+
+    /**
+     * Creates a Debian-like layout under {@code root}: {@code etc/ssl/certs/ca-certificates.crt} bundle
+     * of all roots with duplicates and malformed blocks, one file per root in {@code usr/share/ca-certificates/synthetic}
+     * symlinked from {@code etc/ssl/certs}, additional symlinks to every tenth root, a dangling symlink,
+     * a subdirectory and a file without certificates.
+     */
+    public Tree createTree(@NotNull Path root, int roots) throws IOException {
+        List<X509Certificate> certificates = createRoots("Synthetic Tree Root", roots);
+        Path certs = Files.createDirectories(root.resolve("etc/ssl/certs"));
+        Path shared = Files.createDirectories(root.resolve("usr/share/ca-certificates/synthetic"));
+
+        Bundle bundle = createBundle(certificates, roots / 20, roots / 50);
+        Files.write(certs.resolve("ca-certificates.crt"), bundle.getBytes());
+
+        int directoryCertificates = 0;
+        for (int i = 0; i < certificates.size(); i++) {
+            String name = String.format(Locale.ROOT, "root-%05d", i);
+            StringBuilder pem = new StringBuilder();
+            appendBlock(pem, certificates.get(i), random.nextInt(STYLES));
+            Files.writeString(shared.resolve(name + ".crt"), pem);
+
+            Path target = certs.relativize(shared.resolve(name + ".crt"));
+            Files.createSymbolicLink(certs.resolve(name + ".pem"), target);
+            directoryCertificates++;
+            if (i % 10 == 0) {
+                Files.createSymbolicLink(certs.resolve("alias-" + name + ".pem"), target);
+                directoryCertificates++;
+            }
+        }
+
+        Files.createSymbolicLink(certs.resolve("dangling.pem"), certs.relativize(shared.resolve("removed.crt")));
+        Files.createDirectories(certs.resolve("private"));
+        Files.writeString(certs.resolve("README"), "Synthetic trust store, seed " + seed + "\n");
+
+        return new Tree(root, certificates, bundle, directoryCertificates);
+    }
+
+    private void appendBlock(@NotNull StringBuilder text, @NotNull X509Certificate certificate, int style) {
+        String base64 = Base64.getEncoder().encodeToString(getEncoded(certificate));
+        String begin = "-----BEGIN CERTIFICATE-----";
+        String end = "-----END CERTIFICATE-----";
+        String newline = "\n";
+        String indent = "";
+        int lineLength = 64;
+        switch (style) {
+            case 0:
+                break;
+            case 1:
+                newline = "\r\n";
+                break;
+            case 2:
+                lineLength = 76;
+                break;
+            case 3:
+                lineLength = Integer.MAX_VALUE;
+                break;
+            case 4:
+                indent = " \t";
+                break;
+            case 5:
+                // Mozilla certdata-like comments, non-ASCII and not necessarily valid in any charset
+                text.append("# Issuer: ").append(certificate.getIssuerX500Principal().getName()).append(" Ümläut\n");
+                text.append("# Serial: ").append(certificate.getSerialNumber()).append("\n\n");
+                break;
+            case 6:
+                // OpenSSL trusted certificate without trust settings, trusted for all purposes
+                begin = "-----BEGIN TRUSTED CERTIFICATE-----";
+                end = "-----END TRUSTED CERTIFICATE-----";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown style " + style);
+        }
+
+        text.append(indent).append(begin).append(indent).append(newline);
+        for (int i = 0; i < base64.length(); i += lineLength) {
+            text.append(indent).append(base64, i, (int) Math.min(base64.length(), (long) i + lineLength)).append(indent).append(newline);
+        }
+        text.append(indent).append(end).append(indent).append(newline);
+    }
+
+    private void appendMalformedBlock(@NotNull StringBuilder text, int style) {
+        byte[] garbage = new byte[64 + random.nextInt(512)];
+        random.nextBytes(garbage);
+        // a DER SEQUENCE header promising more bytes than there are
+        garbage[0] = 0x30;
+        garbage[1] = (byte) 0x82;
+        garbage[2] = 0x7F;
+        String base64 = Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(garbage);
+        switch (style) {
+            case 0:
+                // invalid base64
+                text.append("-----BEGIN CERTIFICATE-----\n").append(base64.replace('A', '!')).append("!\n-----END CERTIFICATE-----\n");
+                break;
+            case 1:
+                // valid base64, truncated certificate
+                text.append("-----BEGIN CERTIFICATE-----\n").append(base64).append("\n-----END CERTIFICATE-----\n");
+                break;
+            case 2:
+                // no end marker, the next block is still read
+                text.append("-----BEGIN CERTIFICATE-----\n").append(base64).append("\n");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown malformed style " + style);
+        }
+    }
+
+    private static byte[] getEncoded(@NotNull X509Certificate certificate) {
+        try {
+            return certificate.getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static final class Bundle {
+        private final byte[] bytes;
+        private final List<X509Certificate> certificates;
+        private final int malformedBlocks;
+
+        Bundle(byte[] bytes, List<X509Certificate> certificates, int malformedBlocks) {
+            this.bytes = bytes;
+            this.certificates = Collections.unmodifiableList(certificates);
+            this.malformedBlocks = malformedBlocks;
+        }
+
+        public byte[] getBytes() {
+            return bytes.clone();
+        }
+
+        /**
+         * @return certificates of well-formed blocks in the bundle order, including duplicates
+         */
+        public List<X509Certificate> getCertificates() {
+            return certificates;
+        }
+
+        public int getMalformedBlocks() {
+            return malformedBlocks;
+        }
+    }
+
+    public static final class Tree {
+        private final Path root;
+        private final List<X509Certificate> roots;
+        private final Bundle bundle;
+        private final int directoryCertificates;
+
+        Tree(Path root, List<X509Certificate> roots, Bundle bundle, int directoryCertificates) {
+            this.root = root;
+            this.roots = Collections.unmodifiableList(roots);
+            this.bundle = bundle;
+            this.directoryCertificates = directoryCertificates;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        /**
+         * @return distinct certificates of the tree
+         */
+        public List<X509Certificate> getRoots() {
+            return roots;
+        }
+
+        /**
+         * @return contents of {@code etc/ssl/certs/ca-certificates.crt}
+         */
+        public Bundle getBundle() {
+            return bundle;
+        }
+
+        /**
+         * @return number of certificates in {@code etc/ssl/certs} files other than the bundle, symlinks included
+         */
+        public int getDirectoryCertificates() {
+            return directoryCertificates;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.jetbrains.nativecerts.fixtures;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.List;
+
+public class SyntheticCorpusTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void deterministic() {
+        SyntheticCorpus.Bundle first = createBundle(42);
+        SyntheticCorpus.Bundle second = createBundle(42);
+        Assert.assertArrayEquals(first.getBytes(), second.getBytes());
+        Assert.assertEquals(first.getCertificates(), second.getCertificates());
+        Assert.assertFalse(first.getCertificates().equals(createBundle(43).getCertificates()));
+
+        Assert.assertEquals(110, first.getCertificates().size());
+        Assert.assertEquals(100, new HashSet<>(first.getCertificates()).size());
+        Assert.assertEquals(5, first.getMalformedBlocks());
+    }
+
+    @Test
+    public void tree() throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        SyntheticCorpus.Tree tree = new SyntheticCorpus(1).createTree(root, 100);
+
+        Path certs = root.resolve("etc/ssl/certs");
+        Assert.assertEquals(100, tree.getRoots().size());
+        Assert.assertEquals(110, tree.getDirectoryCertificates());
+        Assert.assertTrue(Files.isSymbolicLink(certs.resolve("root-00042.pem")));
+        Assert.assertTrue(Files.isRegularFile(certs.resolve("alias-root-00040.pem")));
+        Assert.assertFalse(Files.exists(certs.resolve("dangling.pem")));
+        Assert.assertArrayEquals(tree.getBundle().getBytes(), Files.readAllBytes(certs.resolve("ca-certificates.crt")));
+    }
+
+    private static SyntheticCorpus.Bundle createBundle(long seed) {
+        SyntheticCorpus corpus = new SyntheticCorpus(seed);
+        List<X509Certificate> roots = corpus.createRoots("Root", 100);
+        return corpus.createBundle(roots, 10, 5);
+    }
+}
@@ -7,15 +7,20 @@ import com.sun.jna.platform.win32.Kernel32Util;
 import com.sun.jna.platform.win32.WTypes;
 import com.sun.jna.platform.win32.Win32Exception;
 import com.sun.jna.platform.win32.WinCrypt;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.TrustedCertificatePurpose;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
 
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +42,20 @@ public class Crypt32ExtUtil {
 
     public static Collection<X509Certificate> getCustomTrustedRootCertificates() {
         HashSet<X509Certificate> result = new HashSet<>();
+        for (List<X509Certificate> list : getCustomTrustedRootCertificatesBySource().values()) {
+            result.addAll(list);
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #getCustomTrustedRootCertificates()}, but certificates are grouped by the store
+     * they were read from, e.g. {@code ROOT/CERT_SYSTEM_STORE_LOCAL_MACHINE}. Empty stores are omitted.
+     *
+     * @return store name to certificates map
+     */
+    public static Map<String, List<X509Certificate>> getCustomTrustedRootCertificatesBySource() {
+        Map<String, List<X509Certificate>> result = new LinkedHashMap<>();
 
         for (Map.Entry<String, Integer> entry : customTrustedCertificatesLocations.entrySet()) {
             List<X509Certificate> list = gatherEnterpriseCertsForLocation(entry.getValue(), "ROOT");
@@ -52,7 +71,9 @@ public class Crypt32ExtUtil {
                 LOGGER.fine(message.toString());
             }
 
-            result.addAll(list);
+            if (!list.isEmpty()) {
+                result.put("ROOT/" + entry.getKey(), list);
+            }
         }
 
         return result;
@@ -65,6 +86,33 @@ public class Crypt32ExtUtil {
     }
 
     public static List<X509Certificate> gatherEnterpriseCertsForLocation(int location, String store_name) {
+        List<X509Certificate> result = new ArrayList<>();
+        visitEnterpriseCertsForLocation(location, store_name, result::add);
+        return result;
+    }
+
+    /**
+     * Same as {@link #getCustomTrustedRootCertificatesBySource()}, but certificates are passed to {@code visitor}
+     * one by one as soon as they are decoded and are not retained.
+     *
+     * @return {@code false} if enumeration was stopped by {@code visitor}
+     */
+    public static boolean visitCustomTrustedRootCertificates(@NotNull TrustedCertificateVisitor visitor) {
+        for (Map.Entry<String, Integer> entry : customTrustedCertificatesLocations.entrySet()) {
+            String source = "ROOT/" + entry.getKey();
+            if (!visitEnterpriseCertsForLocation(entry.getValue(), "ROOT", certificate -> visitor.visit(source, certificate, TrustedCertificatePurpose.all()))) {
+                return false;
+            }
+            visitor.sourceCompleted(source);
+        }
+        return true;
+    }
+
+    /**
+     * @param consumer returns {@code false} to stop enumeration
+     * @return {@code false} if enumeration was stopped by {@code consumer}
+     */
+    public static boolean visitEnterpriseCertsForLocation(int location, String store_name, @NotNull Predicate<X509Certificate> consumer) {
         int flags = location | Crypt32Ext.CERT_STORE_OPEN_EXISTING_FLAG | Crypt32Ext.CERT_STORE_READONLY_FLAG;
 
         WinCrypt.HCERTSTORE hcertstore =
@@ -78,15 +126,13 @@ public class Crypt32ExtUtil {
             int errorCode = Native.getLastError();
 
             if (errorCode == ERROR_NO_MORE_FILES || errorCode == ERROR_FILE_NOT_FOUND) {
-                return Collections.emptyList();
+                return true;
             } else {
                 throw new Win32Exception(errorCode);
             }
         }
 
         try {
-            List<X509Certificate> result = new ArrayList<>();
-
             WinCrypt.CERT_CONTEXT.ByReference prev = null;
             while (true) {
                 WinCrypt.CERT_CONTEXT.ByReference certificate =
@@ -103,20 +149,29 @@ public class Crypt32ExtUtil {
 
                 byte[] bytes = certificate.pbCertEncoded.getByteArray(0, certificate.cbCertEncoded);
 
+                X509Certificate x509;
                 try {
-                    X509Certificate x509 = NativeTrustedRootsInternalUtils.parseCertificate(bytes);
-                    result.add(x509);
+                    x509 = NativeTrustedRootsInternalUtils.parseCertificate(bytes);
                 } catch (Throwable parsingException) {
                     LOGGER.warning(renderExceptionMessage(
                             "Unable to parse one of the certificates" +
                                     "from store '" + store_name + "'",
                             parsingException));
+                    prev = certificate;
+                    continue;
+                }
+
+                if (!consumer.test(x509)) {
+                    // a context passed to CertEnumCertificatesInStore as a previous one is freed by the next call,
+                    // so free the last one explicitly when stopping early
+                    Crypt32.INSTANCE.CertFreeCertificateContext(certificate);
+                    return false;
                 }
 
                 prev = certificate;
             }
 
-            return result;
+            return true;
         } finally {
             CertCloseStore(hcertstore);
         }
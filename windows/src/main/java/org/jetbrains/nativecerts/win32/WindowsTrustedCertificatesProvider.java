@@ -0,0 +1,21 @@
+package org.jetbrains.nativecerts.win32;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.nativecerts.NativeTrustedCertificatesProvider;
+import org.jetbrains.nativecerts.NativeTrustedRootsInternalUtils;
+import org.jetbrains.nativecerts.TrustedCertificateVisitor;
+
+/**
+ * Reads custom trusted root certificates from CryptoAPI stores. JNA is not loaded until {@link #visit} is called
+ */
+public final class WindowsTrustedCertificatesProvider implements NativeTrustedCertificatesProvider {
+    @Override
+    public boolean isSupported() {
+        return NativeTrustedRootsInternalUtils.isWindows;
+    }
+
+    @Override
+    public boolean visit(@NotNull TrustedCertificateVisitor visitor) {
+        return Crypt32ExtUtil.visitCustomTrustedRootCertificates(visitor);
+    }
+}